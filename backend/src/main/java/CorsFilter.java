@@ -9,7 +9,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
 // Este filtro será aplicado a TODAS as requisições que começam com /api/*
-@WebFilter("/api/*")
+@WebFilter(urlPatterns = "/api/*", asyncSupported = true)
 public class CorsFilter implements Filter {
 
     @Override
@@ -26,7 +26,10 @@ public class CorsFilter implements Filter {
         httpResponse.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
         
         // Headers que o React pode enviar (incluindo o 'Authorization' para JWTs)
-        httpResponse.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Requested-With");
+        httpResponse.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Api-Key, Idempotency-Key, X-Requested-With, If-None-Match, If-Modified-Since");
+
+        // Deixa o JavaScript ler os validadores do GET condicional (ConditionalGetFilter), o Retry-After dos 429/503 e a marca de repetição idempotente
+        httpResponse.setHeader("Access-Control-Expose-Headers", "ETag, Last-Modified, Retry-After, Idempotent-Replayed");
 
         // Permite que o navegador pré-verifique a requisição (OPTIONS)
         if ("OPTIONS".equalsIgnoreCase(httpRequest.getMethod())) {
@@ -0,0 +1,249 @@
+package controller;
+
+import dao.DatabaseConnection;
+import dao.IdempotencyStore;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import util.Env;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Base dos servlets da API que vão ao banco.
+ *
+ * Nos modos assíncronos o servlet abre o startAsync() e roda doGet/doPost/... fora da
+ * thread do Tomcat, que volta na hora para o conector:
+ * - API_VIRTUAL_THREADS=true: uma thread virtual por requisição, bloqueando no JDBC sem
+ *   ocupar uma thread de plataforma.
+ * - API_ASYNC=true: um executor limitado, com uma thread por conexão do pool (DB_POOL_MAX)
+ *   e fila de API_ASYNC_QUEUE (padrão 100). Fila cheia = 503 com Retry-After
+ *   (API_RETRY_AFTER_SECONDS, padrão 1) na hora, em vez de empilhar requisições.
+ *   Com os dois ligados as threads do executor limitado são virtuais.
+ * Desligados, nada muda: o servlet roda na thread do container.
+ *
+ * O corpo sai pelo AsyncOutputFilter (WriteListener, sem bloquear a thread do executor).
+ * Filtros que terminam a resposta depois do servlet (CompressionFilter) registram um
+ * Finisher antes do chain.doFilter; ele roda na thread do executor antes do envio.
+ */
+public abstract class ApiServlet extends HttpServlet {
+
+    private static final boolean VIRTUAL = Env.getBoolean("API_VIRTUAL_THREADS", false);
+    private static final boolean BOUNDED = Env.getBoolean("API_ASYNC", false);
+    private static final int QUEUE_SIZE = Env.getInt("API_ASYNC_QUEUE", 100);
+    private static final int RETRY_AFTER_SECONDS = Env.getInt("API_RETRY_AFTER_SECONDS", 1);
+
+    private static final String DISPATCHED_ATTR = ApiServlet.class.getName() + ".dispatched";
+    private static final String FINISHERS_ATTR = ApiServlet.class.getName() + ".finishers";
+
+    // Criado no primeiro uso: o executor limitado depende do tamanho do pool
+    private static final class Holder {
+        static final ExecutorService EXECUTOR = createExecutor();
+    }
+
+    private static volatile boolean started;
+
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static final LongAdder rejected = new LongAdder();
+
+    /**
+     * Trabalho que um filtro precisa fazer depois que o servlet escreveu a resposta.
+     */
+    @FunctionalInterface
+    interface Finisher {
+        void finish() throws IOException;
+    }
+
+    public static boolean isVirtualThreads() {
+        return VIRTUAL;
+    }
+
+    // Algum modo assíncrono ligado: as requisições saem da thread do container
+    public static boolean isAsync() {
+        return VIRTUAL || BOUNDED;
+    }
+
+    // Requisições fora da thread do container agora, na fila ou rodando (gauge do /api/metrics)
+    public static int inFlight() {
+        return inFlight.get();
+    }
+
+    // Requisições recusadas com 503 porque a fila do executor estava cheia
+    public static long rejected() {
+        return rejected.sum();
+    }
+
+    // Requisições esperando uma thread do executor limitado (0 nos outros modos)
+    public static int queued() {
+        return started && Holder.EXECUTOR instanceof ThreadPoolExecutor pool ? pool.getQueue().size() : 0;
+    }
+
+    /**
+     * Registra o Finisher do filtro. Chamar antes do chain.doFilter: a thread do executor pode
+     * terminar antes de o chain voltar para o filtro.
+     */
+    static void beforeComplete(ServletRequest req, Finisher finisher) {
+        @SuppressWarnings("unchecked")
+        List<Finisher> finishers = (List<Finisher>) req.getAttribute(FINISHERS_ATTR);
+        if (finishers == null) {
+            finishers = new ArrayList<>(2);
+            req.setAttribute(FINISHERS_ATTR, finishers);
+        }
+        finishers.add(finisher);
+    }
+
+    /**
+     * true se a requisição foi entregue ao executor: o filtro não deve mais
+     * mexer na resposta quando o chain voltar (os Finishers cuidam disso).
+     */
+    static boolean isDispatched(ServletRequest req) {
+        return req.getAttribute(DISPATCHED_ATTR) != null;
+    }
+
+    /**
+     * Espera as requisições em andamento (chamado no desligamento, antes de fechar o pool).
+     */
+    public static void shutdown() {
+        if (!started) {
+            return;
+        }
+        ExecutorService executor = Holder.EXECUTOR;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!isAsync() || !req.isAsyncSupported() || req.getDispatcherType() != DispatcherType.REQUEST) {
+            run(req, resp);
+            return;
+        }
+
+        // Os wrappers dos filtros (ex.: resposta comprimida) seguem para a thread do executor
+        AsyncContext async = req.startAsync(req, resp);
+        // Sem timeout do container: o tempo é limitado pela espera do pool e pelo próprio servlet
+        // (um timeout aqui completaria a resposta com a thread do executor ainda escrevendo nela)
+        async.setTimeout(0);
+        req.setAttribute(DISPATCHED_ATTR, Boolean.TRUE);
+
+        started = true;
+        inFlight.incrementAndGet();
+        try {
+            Holder.EXECUTOR.execute(() -> {
+                try {
+                    run(req, resp);
+                } catch (ServletException | IOException | RuntimeException e) {
+                    fail(req, resp, e);
+                } finally {
+                    finish(req, async);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Fila cheia (ou desligando): recusa já, o cliente tenta de novo em instantes
+            rejected.increment();
+            reject(resp);
+            finish(req, async);
+        }
+    }
+
+    // --- MÉTODOS AJUDANTES ---
+
+    // Roda o doGet/doPost/... com a Idempotency-Key da requisição ligada à thread (para o DAO)
+    private void run(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        IdempotencyStore.Claim claim = IdempotencyFilter.claimOf(req);
+        if (claim == null) {
+            super.service(req, resp);
+            return;
+        }
+        IdempotencyStore.bind(claim);
+        try {
+            super.service(req, resp);
+        } finally {
+            IdempotencyStore.unbind();
+        }
+    }
+
+    private void finish(HttpServletRequest req, AsyncContext async) {
+        try {
+            @SuppressWarnings("unchecked")
+            List<Finisher> finishers = (List<Finisher>) req.getAttribute(FINISHERS_ATTR);
+            if (finishers != null) {
+                // O filtro mais interno termina primeiro, como no retorno do chain
+                for (int i = finishers.size() - 1; i >= 0; i--) {
+                    finishers.get(i).finish();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            getServletContext().log("Falha ao terminar a resposta de " + req.getRequestURI(), e);
+        } finally {
+            inFlight.decrementAndGet();
+            AsyncOutputFilter.complete(req, async);
+        }
+    }
+
+    private static ExecutorService createExecutor() {
+        ThreadFactory threads = VIRTUAL
+                ? Thread.ofVirtual().name("api-vt-", 0).factory()
+                : Thread.ofPlatform().name("api-db-", 0).daemon(true).factory();
+        if (!BOUNDED) {
+            return Executors.newThreadPerTaskExecutor(threads);
+        }
+        // Mais threads que conexões só faria as threads esperarem no pool
+        int workers = DatabaseConnection.getPoolStats().maxSize();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, QUEUE_SIZE)), threads); // AbortPolicy: fila cheia lança
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static void reject(HttpServletResponse resp) {
+        try {
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            resp.setHeader("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+            resp.setContentType("application/json");
+            resp.setCharacterEncoding("UTF-8");
+            resp.getWriter().print("{\"erro\": \"Servidor ocupado, tente novamente em instantes.\"}");
+        } catch (IOException | IllegalStateException ignored) {
+            // Cliente já foi embora
+        }
+    }
+
+    // Na thread do container a exceção iria para o Tomcat; aqui vira um 500 em JSON
+    private void fail(HttpServletRequest req, HttpServletResponse resp, Exception e) {
+        getServletContext().log("Erro em " + req.getMethod() + " " + req.getRequestURI(), e);
+        if (resp.isCommitted()) {
+            return;
+        }
+        try {
+            resp.reset();
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            resp.setContentType("application/json");
+            resp.setCharacterEncoding("UTF-8");
+            resp.getWriter().print("{\"erro\": \"Erro interno no servidor.\"}");
+        } catch (IOException | IllegalStateException ignored) {
+            // Cliente já foi embora
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package controller;
+
+import dao.DatabaseConnection;
+import dao.IdempotencyStore;
+import dao.ImageCache;
+import dao.SchemaMigrator;
+import dao.StockLedger;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Ciclo de vida da aplicação: sobe os componentes compartilhados (registro de JSON,
+ * migrações do esquema, ledger de estoque, cache de imagens) antes dos servlets e libera os recursos quando o Tomcat descarrega
+ * o WAR (evita conexões órfãs no PostgreSQL a cada redeploy).
+ */
+@WebListener
+public class AppContextListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        JsonCodecs.start();
+        if (ApiServlet.isAsync()) {
+            sce.getServletContext().log("API: requisições assíncronas" + (ApiServlet.isVirtualThreads() ? " em threads virtuais" : "")
+                    + " (pool de até " + DatabaseConnection.getPoolStats().maxSize() + " conexões)");
+        }
+        sce.getServletContext().log("JSON: acelerador Blackbird " + (JsonCodecs.isAccelerated() ? "ligado" : "desligado"));
+
+        try {
+            List<Integer> applied = SchemaMigrator.migrate();
+            if (!applied.isEmpty()) {
+                sce.getServletContext().log("Esquema: migrações aplicadas " + applied);
+            }
+        } catch (SQLException e) {
+            // Esquema desatualizado quebraria as escritas (ex.: resumos diários): melhor não subir
+            throw new IllegalStateException("Falha ao migrar o esquema do banco: " + e.getMessage(), e);
+        }
+
+        StockLedger ledger = StockLedger.getInstance();
+        if (ledger.isEnabled()) {
+            try {
+                ledger.start();
+                sce.getServletContext().log("Estoque: ledger em memória carregado (" + ledger.getStats().trackedItems() + " itens)");
+            } catch (SQLException e) {
+                // Sem o ledger carregado nenhuma venda passaria: melhor não subir
+                throw new IllegalStateException("Falha ao carregar o ledger de estoque: " + e.getMessage(), e);
+            }
+        }
+
+        IdempotencyStore idempotency = IdempotencyStore.getInstance();
+        if (idempotency.isEnabled()) {
+            try {
+                int purged = idempotency.purgeExpired();
+                if (purged > 0) {
+                    sce.getServletContext().log("Idempotência: " + purged + " chaves vencidas removidas");
+                }
+            } catch (SQLException e) {
+                // Só limpeza: as chaves vencidas são reaproveitadas mesmo assim
+                System.err.println("[idempotency] Falha ao limpar chaves vencidas: " + e.getMessage());
+            }
+        }
+
+        ImageCache images = ImageCache.getInstance();
+        if (images.isEnabled()) {
+            try {
+                images.start();
+                sce.getServletContext().log("Imagens: cache em disco com " + images.getStats().files() + " arquivos");
+            } catch (IOException e) {
+                // Sem o diretório o cache só perde os arquivos antigos; as imagens continuam vindo do banco
+                System.err.println("[image-cache] Falha ao abrir o diretório do cache: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        ApiServlet.shutdown(); // Requisições assíncronas terminam antes de o pool fechar
+        StockLedger.getInstance().stop(); // Último flush antes de fechar o pool
+        DatabaseConnection.shutdown();
+    }
+}
@@ -0,0 +1,238 @@
+package controller;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import util.Env;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+
+/**
+ * Saída não bloqueante das respostas que o ApiServlet entregou ao executor.
+ *
+ * O servlet (e o CompressionFilter) escrevem num buffer em memória; quando terminam, o
+ * corpo vai para o cliente por um WriteListener do container. A thread do executor (uma
+ * por conexão do pool) fica livre assim que o JSON está pronto, mesmo com cliente lento.
+ *
+ * Respostas acima de API_ASYNC_BUFFER_BYTES (padrão 1 MB) ou com flush() no meio
+ * (streaming NDJSON, arquivos) passam a sair direto, bloqueando como antes.
+ * Requisições que ficaram na thread do container não são tocadas.
+ *
+ * Vem logo depois do MetricsFilter no web.xml, por fora da compressão.
+ */
+@WebFilter(urlPatterns = "/api/*", asyncSupported = true)
+public class AsyncOutputFilter implements Filter {
+
+    private static final int MAX_BUFFER_BYTES = Env.getInt("API_ASYNC_BUFFER_BYTES", 1024 * 1024);
+    private static final int CHUNK_BYTES = 16 * 1024;
+
+    private static final String RESPONSE_ATTR = AsyncOutputFilter.class.getName() + ".response";
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        if (!ApiServlet.isAsync()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        BufferedResponse wrapper = new BufferedResponse(request, (HttpServletResponse) response);
+        request.setAttribute(RESPONSE_ATTR, wrapper);
+        chain.doFilter(request, wrapper);
+    }
+
+    /**
+     * Fim da requisição assíncrona (chamado pelo ApiServlet depois dos Finishers): manda o
+     * corpo guardado pelo WriteListener e só então completa.
+     */
+    static void complete(ServletRequest req, AsyncContext async) {
+        BufferedResponse wrapper = (BufferedResponse) req.getAttribute(RESPONSE_ATTR);
+        try {
+            if (wrapper != null && wrapper.drain(async)) {
+                return; // O WriteListener completa
+            }
+        } catch (IOException | RuntimeException e) {
+            req.getServletContext().log("Falha ao enviar a resposta de " + ((HttpServletRequest) req).getRequestURI(), e);
+        }
+        async.complete();
+    }
+
+    // --- MÉTODOS AJUDANTES ---
+
+    /**
+     * Guarda o corpo em memória enquanto a requisição está no executor do ApiServlet.
+     */
+    private static final class BufferedResponse extends HttpServletResponseWrapper {
+
+        private final ServletRequest request;
+        private final BufferingStream stream = new BufferingStream();
+        private PrintWriter writer;
+
+        BufferedResponse(ServletRequest request, HttpServletResponse response) {
+            super(response);
+            this.request = request;
+        }
+
+        // A decisão é tomada no primeiro acesso ao corpo: até lá o ApiServlet já despachou (ou não)
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            return ApiServlet.isDispatched(request) ? stream : super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (!ApiServlet.isDispatched(request)) {
+                return super.getWriter();
+            }
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(stream, Charset.forName(getCharacterEncoding())));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            stream.flush();
+            super.flushBuffer();
+        }
+
+        @Override
+        public boolean isCommitted() {
+            // Corpo ainda em memória: cabeçalhos e status continuam mudáveis
+            if (ApiServlet.isDispatched(request) && stream.direct == null) {
+                return false;
+            }
+            return super.isCommitted();
+        }
+
+        @Override
+        public void resetBuffer() {
+            stream.reset();
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            stream.reset();
+            super.reset();
+        }
+
+        /**
+         * Começa o envio não bloqueante do que ficou no buffer. false = nada pendente
+         * (corpo vazio ou já enviado direto): quem chamou completa.
+         */
+        boolean drain(AsyncContext async) throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (stream.direct != null || stream.buffer.size() == 0) {
+                return false;
+            }
+            byte[] body = stream.buffer.toByteArray();
+            stream.buffer = null;
+
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            if (!response.containsHeader("Content-Length")) {
+                response.setContentLengthLong(body.length);
+            }
+            ServletOutputStream out = response.getOutputStream();
+            out.setWriteListener(new WriteListener() {
+                private int position;
+
+                @Override
+                public void onWritePossible() throws IOException {
+                    while (out.isReady()) {
+                        if (position >= body.length) {
+                            async.complete();
+                            return;
+                        }
+                        int length = Math.min(CHUNK_BYTES, body.length - position);
+                        out.write(body, position, length);
+                        position += length;
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    // Cliente desconectou no meio: não há mais o que mandar
+                    async.complete();
+                }
+            });
+            return true;
+        }
+
+        private final class BufferingStream extends ServletOutputStream {
+
+            private ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+            private OutputStream direct; // saída do container depois que o buffer estourou
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (direct != null) {
+                    direct.write(b, off, len);
+                    return;
+                }
+                buffer.write(b, off, len);
+                if (buffer.size() > MAX_BUFFER_BYTES) {
+                    goDirect();
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (direct == null) {
+                    // flush() com corpo pela metade = streaming: o cliente quer ver os bytes já
+                    if (buffer.size() == 0) {
+                        return;
+                    }
+                    goDirect();
+                }
+                direct.flush();
+            }
+
+            void reset() {
+                if (direct == null) {
+                    buffer.reset();
+                }
+            }
+
+            private void goDirect() throws IOException {
+                direct = getResponse().getOutputStream();
+                buffer.writeTo(direct);
+                buffer = null;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                throw new IllegalStateException("A saída não bloqueante é feita pelo AsyncOutputFilter.");
+            }
+        }
+    }
+}
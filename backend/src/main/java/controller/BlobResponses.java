@@ -0,0 +1,276 @@
+package controller;
+
+import dao.BlobStore;
+import dao.ImageCache;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import util.Env;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.sql.SQLException;
+
+/**
+ * Respostas dos arquivos binários: licença da barraca, imagem do produto e foto do usuário.
+ *
+ * GET  /api/tents/{id}/license, /api/products/{id}/image, /api/usuarios/{cpf}/photo
+ * PUT  nas mesmas rotas, com o arquivo cru no corpo (não é JSON)
+ *
+ * O download é lido do banco em pedaços e só depois enviado (ver BlobStore), com Content-Length,
+ * ETag (MD5 do conteúdo), If-None-Match e Range de uma faixa (206/416). O upload vai do
+ * InputStream da requisição direto para o driver, limitado a BLOB_MAX_BYTES (padrão 20 MB).
+ *
+ * Imagens de produto e fotos de usuário passam pelo ImageCache (disco, por hash): o banco
+ * só é lido na falta, e ?size=128 (tamanhos de IMAGE_THUMB_SIZES) devolve a miniatura.
+ */
+final class BlobResponses {
+
+    static final long MAX_BLOB_BYTES = Env.getLong("BLOB_MAX_BYTES", 20L * 1024 * 1024);
+
+    // Atributos de sendfile do Tomcat (os mesmos que o DefaultServlet usa)
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private BlobResponses() {}
+
+    /**
+     * true para as rotas de arquivo (o ConditionalGetFilter não se aplica a elas).
+     */
+    static boolean isBlobPath(String path) {
+        return (path.startsWith("/api/tents/") && path.endsWith("/license"))
+                || (path.startsWith("/api/products/") && path.endsWith("/image"))
+                || (path.startsWith("/api/usuarios/") && path.endsWith("/photo"));
+    }
+
+    /**
+     * Chave da URL: "/12/image" com sufixo "/image" → "12".
+     */
+    static String key(String pathInfo, String suffix) {
+        return pathInfo.substring(1, pathInfo.length() - suffix.length());
+    }
+
+    static void get(HttpServletRequest req, HttpServletResponse resp, BlobStore.Blob blob, Object key)
+            throws IOException, SQLException {
+        ImageCache cache = ImageCache.getInstance();
+        if (cache.supports(blob)) {
+            getCached(req, resp, cache, blob, key);
+            return;
+        }
+
+        // Erro do banco sempre chega antes do primeiro byte (o BlobStore só escreve depois do commit)
+        boolean found = BlobStore.read(blob, key, info -> open(req, resp, info));
+        if (!found) {
+            writeError(resp, HttpServletResponse.SC_NOT_FOUND, "Arquivo não encontrado.");
+        }
+    }
+
+    static void put(HttpServletRequest req, HttpServletResponse resp, BlobStore.Blob blob, Object key)
+            throws IOException, SQLException {
+        ImageCache cache = ImageCache.getInstance();
+        boolean updated;
+        try (InputStream in = JsonBodyReader.open(req, MAX_BLOB_BYTES)) {
+            updated = cache.supports(blob)
+                    ? cache.write(blob, key, in, req.getContentLengthLong())
+                    : BlobStore.write(blob, key, in, req.getContentLengthLong());
+        } catch (SQLException e) {
+            // O driver embrulha a exceção do stream; o corpo grande demais continua sendo 413
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof JsonBodyReader.BodyTooLargeException tooLarge) {
+                    throw tooLarge;
+                }
+            }
+            throw e;
+        }
+        if (updated) {
+            resp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+        } else {
+            writeError(resp, HttpServletResponse.SC_NOT_FOUND, "Registro não encontrado.");
+        }
+    }
+
+    // --- MÉTODOS AJUDANTES ---
+
+    // Serve do disco. Com sendfile no conector o Tomcat manda o arquivo do kernel direto para o
+    // socket depois que o servlet volta; sem ele, o transferTo para o ServletOutputStream passa
+    // pelo buffer do Channels.newChannel (8 KB por vez, nunca o arquivo inteiro em memória).
+    private static void getCached(HttpServletRequest req, HttpServletResponse resp, ImageCache cache,
+                                  BlobStore.Blob blob, Object key) throws IOException, SQLException {
+        int size = 0;
+        String sizeParam = req.getParameter("size");
+        if (sizeParam != null) {
+            try {
+                size = Integer.parseInt(sizeParam);
+            } catch (NumberFormatException e) {
+                size = -1;
+            }
+            if (!cache.isThumbnailSize(size)) {
+                writeError(resp, HttpServletResponse.SC_BAD_REQUEST, "Tamanho de miniatura inválido: " + sizeParam);
+                return;
+            }
+        }
+
+        try (ImageCache.CachedFile file = cache.open(blob, key, size)) {
+            if (file == null) {
+                writeError(resp, HttpServletResponse.SC_NOT_FOUND, "Arquivo não encontrado.");
+                return;
+            }
+            BlobStore.Range range = open(req, resp, file.info());
+            if (range == null) {
+                return;
+            }
+            if (Boolean.TRUE.equals(req.getAttribute(SENDFILE_SUPPORT))) {
+                // O Tomcat reabre pelo nome: o arquivo acabou de ir para o topo do LRU
+                req.setAttribute(SENDFILE_FILENAME, file.path().toAbsolutePath().toString());
+                req.setAttribute(SENDFILE_START, range.start());
+                req.setAttribute(SENDFILE_END, range.end() + 1); // Exclusivo
+                return;
+            }
+            WritableByteChannel target = Channels.newChannel(range.out());
+            long position = range.start();
+            long remaining = range.end() - range.start() + 1;
+            while (remaining > 0) {
+                long sent = file.channel().transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    break; // Arquivo encolheu: não acontece com nomes por hash, mas evita laço infinito
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    // Cabeçalhos e status a partir do tamanho/hash; devolve a faixa a copiar ou null
+    private static BlobStore.Range open(HttpServletRequest req, HttpServletResponse resp, BlobStore.BlobInfo info)
+            throws IOException {
+        String etag = "\"" + info.md5() + "\"";
+        long length = info.length();
+
+        resp.setHeader("ETag", etag);
+        resp.setHeader("Accept-Ranges", "bytes");
+        resp.setHeader("Cache-Control", "no-cache");
+
+        if (matches(req.getHeader("If-None-Match"), etag)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return null;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String range = req.getHeader("Range");
+        String ifRange = req.getHeader("If-Range");
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            long[] parsed = parseRange(range, length);
+            if (parsed != null && parsed.length == 0) {
+                resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                resp.setHeader("Content-Range", "bytes */" + length);
+                return null;
+            }
+            if (parsed != null) {
+                start = parsed[0];
+                end = parsed[1];
+                resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                resp.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        resp.setContentType(contentType(info.head()));
+        resp.setContentLengthLong(end - start + 1);
+        if ("HEAD".equals(req.getMethod())) {
+            return null;
+        }
+        return new BlobStore.Range(start, end, resp.getOutputStream());
+    }
+
+    /**
+     * Uma faixa só ("bytes=0-99", "bytes=100-", "bytes=-100"). Devolve {início, fim},
+     * um array vazio se a faixa não cabe no arquivo (416), ou null para ignorar o
+     * cabeçalho e mandar tudo (sintaxe desconhecida ou várias faixas, como a RFC permite).
+     */
+    static long[] parseRange(String header, long length) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // Sufixo: os últimos N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || length == 0) {
+                    return new long[0];
+                }
+                return new long[] {Math.max(0, length - suffix), length - 1};
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            if (start < 0 || start > end) {
+                return start >= length ? new long[0] : null;
+            }
+            return new long[] {start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // O tipo não é gravado no banco: deduzido pela assinatura dos primeiros bytes
+    private static String contentType(byte[] head) {
+        if (startsWith(head, 0x89, 'P', 'N', 'G')) {
+            return "image/png";
+        }
+        if (startsWith(head, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(head, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        }
+        if (startsWith(head, 'R', 'I', 'F', 'F') && head.length >= 12
+                && head[8] == 'W' && head[9] == 'E' && head[10] == 'B' && head[11] == 'P') {
+            return "image/webp";
+        }
+        if (startsWith(head, '%', 'P', 'D', 'F')) {
+            return "application/pdf";
+        }
+        return "application/octet-stream";
+    }
+
+    private static boolean startsWith(byte[] head, int... signature) {
+        if (head == null || head.length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((head[i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void writeError(HttpServletResponse resp, int status, String message) throws IOException {
+        resp.setStatus(status);
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.getWriter().print("{\"erro\": \"" + message + "\"}");
+    }
+}
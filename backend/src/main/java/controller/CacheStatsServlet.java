@@ -0,0 +1,46 @@
+package controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dao.IdempotencyStore;
+import dao.ImageCache;
+import dao.ProductCatalogCache;
+import dao.SequenceBlockAllocator;
+import dao.TentStatsCache;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// GET /api/cache/stats -> acertos, faltas, remoções (LRU) e invalidações dos caches (memória, imagens em disco e respostas idempotentes) e blocos de IDs
+@WebServlet("/api/cache/stats")
+public class CacheStatsServlet extends HttpServlet {
+
+    private ObjectMapper mapper;
+
+    @Override
+    public void init() throws ServletException {
+        this.mapper = JsonCodecs.mapper();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("products", ProductCatalogCache.getInstance().getStats());
+        stats.put("tentStats", TentStatsCache.getInstance().getStats());
+        stats.put("images", ImageCache.getInstance().getStats());
+        stats.put("compression", CompressionFilter.getStats());
+        stats.put("idempotency", IdempotencyStore.getInstance().getStats());
+        stats.put("idBlocks", List.of(SequenceBlockAllocator.VENDA.getStats(), SequenceBlockAllocator.PAGAMENTO.getStats()));
+
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.getWriter().print(mapper.writeValueAsString(stats));
+    }
+}
@@ -0,0 +1,491 @@
+package controller;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import util.Env;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compressão gzip/deflate das respostas da API, negociada pelo Accept-Encoding.
+ *
+ * - Só comprime texto (JSON, NDJSON, text/*) com status 200/201 e corpo a partir de
+ *   COMPRESSION_MIN_BYTES (padrão 1024); abaixo disso a resposta sai como veio.
+ * - Respostas com ETag forte (as leituras do ConditionalGetFilter) são comprimidas uma vez:
+ *   os bytes ficam num LRU por (codificação, ETag, URL) limitado a COMPRESSION_CACHE_MAX_BYTES
+ *   (padrão 16 MB), e enquanto a tabela não muda a próxima resposta reaproveita o resultado.
+ *   O ETag comprimido vira fraco (W/"..."), que o ConditionalGetFilter já aceita no If-None-Match.
+ * - Respostas longas sem ETag (ou maiores que o cache) são comprimidas em streaming.
+ * - Arquivos (BlobResponses), HEAD e pedidos com Range passam direto.
+ *
+ * A ordem (depois do CorsFilter, antes do ConditionalGetFilter) está no web.xml.
+ * COMPRESSION_ENABLED=false desliga. Nos modos assíncronos do ApiServlet o fim da compressão
+ * roda na thread do executor, antes do envio (ApiServlet.beforeComplete).
+ */
+@WebFilter(urlPatterns = "/api/*", asyncSupported = true)
+public class CompressionFilter implements Filter {
+
+    private static final boolean ENABLED = Env.getBoolean("COMPRESSION_ENABLED", true);
+    private static final int MIN_BYTES = Env.getInt("COMPRESSION_MIN_BYTES", 1024);
+    private static final int LEVEL = Env.getInt("COMPRESSION_LEVEL", Deflater.DEFAULT_COMPRESSION);
+    private static final long CACHE_MAX_BYTES = Env.getLong("COMPRESSION_CACHE_MAX_BYTES", 16L * 1024 * 1024);
+    // Maior corpo segurado em memória para ir ao cache; acima disso comprime em streaming
+    private static final int CACHE_MAX_ENTRY_BYTES = (int) Math.min(CACHE_MAX_BYTES / 4, 4L * 1024 * 1024);
+
+    private static final CompressedCache CACHE = new CompressedCache(CACHE_MAX_BYTES);
+
+    private static final LongAdder compressed = new LongAdder();
+    private static final LongAdder bytesIn = new LongAdder();
+    private static final LongAdder bytesOut = new LongAdder();
+
+    public record CompressionStats(boolean enabled, long responses, long bytesIn, long bytesOut, long bytesSaved,
+                                   long cacheHits, long cacheMisses, long cacheEvictions, int cacheEntries,
+                                   long cacheBytes, long cacheMaxBytes) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+        String path = httpRequest.getRequestURI().substring(httpRequest.getContextPath().length());
+        if (!ENABLED || BlobResponses.isBlobPath(path)
+                || "HEAD".equals(httpRequest.getMethod()) || httpRequest.getHeader("Range") != null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        // Caches intermediários precisam separar as versões comprimida e crua
+        httpResponse.addHeader("Vary", "Accept-Encoding");
+
+        String encoding = negotiate(httpRequest.getHeader("Accept-Encoding"));
+        if (encoding == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String query = httpRequest.getQueryString();
+        String cacheKey = path + (query == null ? "" : "?" + query);
+        CompressingResponse wrapper = new CompressingResponse(httpResponse, encoding, cacheKey);
+        // Servlet no executor do ApiServlet: o corpo só fica pronto depois que o chain volta
+        ApiServlet.beforeComplete(request, wrapper::finish);
+        chain.doFilter(request, wrapper);
+        if (!ApiServlet.isDispatched(request)) {
+            wrapper.finish();
+        }
+    }
+
+    public static CompressionStats getStats() {
+        long in = bytesIn.sum();
+        long out = bytesOut.sum();
+        return CACHE.stats(in, out);
+    }
+
+    // --- MÉTODOS AJUDANTES ---
+
+    // gzip tem preferência; "identity" ou q=0 em tudo = sem compressão.
+    // "*" vale para as codificações que não aparecem com nome próprio.
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        Boolean gzip = null;
+        Boolean deflate = null;
+        boolean any = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            String name = tokens[0].trim().toLowerCase(Locale.ROOT);
+            boolean accepted = true;
+            for (int i = 1; i < tokens.length; i++) {
+                String param = tokens[i].trim().toLowerCase(Locale.ROOT);
+                if (param.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            switch (name) {
+                case "gzip", "x-gzip" -> gzip = accepted;
+                case "deflate" -> deflate = accepted;
+                case "*" -> any = accepted;
+                default -> { }
+            }
+        }
+        if (gzip != null ? gzip : any) {
+            return "gzip";
+        }
+        return (deflate != null ? deflate : any) ? "deflate" : null;
+    }
+
+    private static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("application/json") || type.startsWith("application/x-ndjson")
+                || type.startsWith("text/") || type.startsWith("application/xml")
+                || type.startsWith("application/javascript");
+    }
+
+    private static OutputStream compressor(String encoding, OutputStream out, int level) throws IOException {
+        if ("gzip".equals(encoding)) {
+            // syncFlush: flush() do servlet (ex.: ?stream=true) empurra o que já foi comprimido
+            return new GZIPOutputStream(out, 8192, true) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+        Deflater deflater = new Deflater(level); // "deflate" do HTTP é o formato zlib
+        return new DeflaterOutputStream(out, deflater, 8192, true) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    static byte[] compress(String encoding, byte[] body, int length, int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 4));
+        try (OutputStream zip = compressor(encoding, out, level)) {
+            zip.write(body, 0, length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Segura o corpo até saber se vale comprimir (tamanho, tipo, status) e então escolhe
+     * entre mandar cru, comprimir em streaming ou usar/gravar o cache.
+     */
+    private static final class CompressingResponse extends HttpServletResponseWrapper {
+
+        private final HttpServletResponse response;
+        private final String encoding;
+        private final String cacheKey;
+        private final CompressingStream stream = new CompressingStream();
+        private PrintWriter writer;
+        private long declaredLength = -1;
+
+        CompressingResponse(HttpServletResponse response, String encoding, String cacheKey) {
+            super(response);
+            this.response = response;
+            this.encoding = encoding;
+            this.cacheKey = cacheKey;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(stream, Charset.forName(getCharacterEncoding())));
+            }
+            return writer;
+        }
+
+        // O tamanho só é repassado se a resposta sair sem compressão
+        @Override
+        public void setContentLength(int len) {
+            declaredLength = len;
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            declaredLength = len;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                declaredLength = Long.parseLong(value);
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            stream.flush();
+        }
+
+        @Override
+        public void resetBuffer() {
+            stream.reset();
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            stream.reset();
+            declaredLength = -1;
+            super.reset();
+        }
+
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            stream.finish();
+        }
+
+        private boolean shouldCompress() {
+            int status = response.getStatus();
+            return (status == SC_OK || status == SC_CREATED)
+                    && response.getHeader("Content-Encoding") == null
+                    && isCompressible(response.getContentType());
+        }
+
+        // ETag forte das leituras; null se a resposta não é cacheável
+        private String strongEtag() {
+            String etag = response.getHeader("ETag");
+            return etag == null || etag.startsWith("W/") ? null : etag;
+        }
+
+        private void markCompressed() {
+            response.setHeader("Content-Encoding", encoding);
+            String etag = strongEtag();
+            if (etag != null) {
+                response.setHeader("ETag", "W/" + etag);
+            }
+        }
+
+        private final class CompressingStream extends ServletOutputStream {
+
+            private ByteArrayOutputStream buffer = new ByteArrayOutputStream(MIN_BYTES);
+            private OutputStream target; // null enquanto o corpo está sendo segurado
+            private boolean compressing;
+            private long written;
+            private boolean finished;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                written += len;
+                if (target != null) {
+                    target.write(b, off, len);
+                    return;
+                }
+                buffer.write(b, off, len);
+                if (buffer.size() >= MIN_BYTES) {
+                    // Cacheável: segura o corpo inteiro (até o limite) para comprimir uma vez só
+                    boolean cacheable = strongEtag() != null && shouldCompress();
+                    if (!cacheable || buffer.size() >= CACHE_MAX_ENTRY_BYTES) {
+                        startStreaming();
+                    }
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (target == null) {
+                    // O servlet quer empurrar o que já escreveu: decide agora
+                    if (buffer.size() == 0) {
+                        return;
+                    }
+                    startStreaming();
+                }
+                target.flush();
+            }
+
+            void reset() {
+                if (target == null) {
+                    buffer.reset();
+                    written = 0;
+                }
+            }
+
+            // Corpo grande (ou flush pedido): passa a comprimir, ou a mandar cru, direto na resposta
+            private void startStreaming() throws IOException {
+                OutputStream out = response.getOutputStream();
+                if (shouldCompress()) {
+                    markCompressed();
+                    compressed.increment();
+                    compressing = true;
+                    target = compressor(encoding, new CountingOutputStream(out), LEVEL);
+                } else {
+                    if (declaredLength >= 0) {
+                        response.setContentLengthLong(declaredLength);
+                    }
+                    target = out;
+                }
+                buffer.writeTo(target);
+                buffer = null;
+            }
+
+            void finish() throws IOException {
+                if (finished) {
+                    return;
+                }
+                finished = true;
+                if (target != null) {
+                    if (compressing) {
+                        bytesIn.add(written);
+                        target.close(); // Fecha o gzip/deflate (trailer); a saída real segue do Tomcat
+                    }
+                    return;
+                }
+
+                byte[] body = buffer.toByteArray();
+                if (body.length < MIN_BYTES || !shouldCompress()) {
+                    if (body.length > 0 || declaredLength >= 0) {
+                        response.setContentLengthLong(body.length);
+                    }
+                    if (body.length > 0) {
+                        response.getOutputStream().write(body);
+                    }
+                    return;
+                }
+
+                String etag = strongEtag();
+                byte[] zipped;
+                if (etag != null) {
+                    String key = encoding + " " + etag + " " + cacheKey;
+                    zipped = CACHE.get(key);
+                    if (zipped == null) {
+                        // Vai ser reaproveitado: vale o nível máximo
+                        zipped = compress(encoding, body, body.length, Deflater.BEST_COMPRESSION);
+                        CACHE.put(key, zipped);
+                    }
+                } else {
+                    zipped = compress(encoding, body, body.length, LEVEL);
+                }
+                markCompressed();
+                compressed.increment();
+                bytesIn.add(body.length);
+                bytesOut.add(zipped.length);
+                response.setContentLengthLong(zipped.length);
+                response.getOutputStream().write(zipped);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                throw new IllegalStateException("Escrita assíncrona não suportada na resposta comprimida.");
+            }
+        }
+    }
+
+    // Conta os bytes comprimidos que saem em streaming
+    private static final class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytesOut.increment();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytesOut.add(len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() {
+            // A saída real é fechada pelo container
+        }
+    }
+
+    /**
+     * LRU dos corpos já comprimidos, limitado pelo total de bytes.
+     */
+    private static final class CompressedCache {
+        private final long maxBytes;
+        private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+        private long bytes;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        CompressedCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized byte[] get(String key) {
+            byte[] value = entries.get(key);
+            if (value == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+            return value;
+        }
+
+        synchronized void put(String key, byte[] value) {
+            if (value.length > maxBytes) {
+                return;
+            }
+            byte[] previous = entries.put(key, value);
+            bytes += value.length - (previous == null ? 0 : previous.length);
+            Iterator<Map.Entry<String, byte[]>> it = entries.entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, byte[]> eldest = it.next();
+                if (eldest.getKey().equals(key)) {
+                    continue;
+                }
+                bytes -= eldest.getValue().length;
+                it.remove();
+                evictions++;
+            }
+        }
+
+        synchronized CompressionStats stats(long in, long out) {
+            return new CompressionStats(ENABLED, compressed.sum(), in, out, in - out,
+                    hits, misses, evictions, entries.size(), bytes, maxBytes);
+        }
+    }
+}
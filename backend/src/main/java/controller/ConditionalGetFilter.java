@@ -0,0 +1,131 @@
+package controller;
+
+import dao.TableVersions;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * GET condicional (ETag / If-None-Match e Last-Modified / If-Modified-Since).
+ *
+ * Antes do servlet: se o cliente já tem a versão atual da tabela da rota, responde
+ * 304 sem chegar no banco. Caso contrário guarda os validadores na requisição e o
+ * servlet chama addValidators() quando a resposta é 200.
+ *
+ * A ordem (depois do CorsFilter) está no web.xml.
+ */
+@WebFilter(urlPatterns = "/api/*", asyncSupported = true)
+public class ConditionalGetFilter implements Filter {
+
+    private static final String ETAG_ATTR = ConditionalGetFilter.class.getName() + ".etag";
+    private static final String LAST_MODIFIED_ATTR = ConditionalGetFilter.class.getName() + ".lastModified";
+
+    // Prefixo da rota -> tabela cuja versão decide o ETag
+    private static final Map<String, String> ROUTE_TABLES = Map.of(
+            "/api/products", TableVersions.PRODUTO,
+            "/api/tents", TableVersions.BARRACA,
+            "/api/sales", TableVersions.VENDA,
+            "/api/reservations", TableVersions.RESERVA,
+            "/api/payments", TableVersions.PAGAMENTO,
+            "/api/usuarios", TableVersions.USUARIO);
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+        String table = isReadMethod(httpRequest) ? tableFor(httpRequest) : null;
+        if (table == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        // Capturados ANTES da leitura no banco: se houver escrita no meio, o próximo GET busca de novo
+        String etag = TableVersions.etag(table);
+        long lastModified = TableVersions.lastModified(table);
+
+        if (isNotModified(httpRequest, table, etag)) {
+            httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            httpResponse.setHeader("ETag", etag);
+            httpResponse.setDateHeader("Last-Modified", lastModified);
+            return;
+        }
+
+        httpRequest.setAttribute(ETAG_ATTR, etag);
+        httpRequest.setAttribute(LAST_MODIFIED_ATTR, lastModified);
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * Gancho dos servlets: coloca ETag e Last-Modified numa resposta 200 de leitura.
+     * Deve ser chamado antes de escrever o corpo.
+     */
+    public static void addValidators(HttpServletRequest req, HttpServletResponse resp) {
+        Object etag = req.getAttribute(ETAG_ATTR);
+        Object lastModified = req.getAttribute(LAST_MODIFIED_ATTR);
+        if (etag != null && lastModified != null) {
+            resp.setHeader("ETag", (String) etag);
+            resp.setDateHeader("Last-Modified", (Long) lastModified);
+            // Pode guardar, mas sempre revalida
+            resp.setHeader("Cache-Control", "no-cache");
+        }
+    }
+
+    private static boolean isReadMethod(HttpServletRequest req) {
+        return "GET".equals(req.getMethod()) || "HEAD".equals(req.getMethod());
+    }
+
+    private static String tableFor(HttpServletRequest req) {
+        String path = req.getRequestURI().substring(req.getContextPath().length());
+        // Os totais da barraca mudam com as vendas, não com a barraca
+        if (path.startsWith("/api/tents/") && path.endsWith("/stats")) {
+            return TableVersions.VENDA;
+        }
+        // Arquivos binários têm ETag próprio (MD5 do conteúdo), dado pelo BlobResponses
+        if (BlobResponses.isBlobPath(path)) {
+            return null;
+        }
+        for (Map.Entry<String, String> route : ROUTE_TABLES.entrySet()) {
+            String prefix = route.getKey();
+            if (path.equals(prefix) || path.startsWith(prefix + "/")) {
+                return route.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isNotModified(HttpServletRequest req, String table, String etag) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-None-Match tem prioridade sobre If-Modified-Since (RFC 9110)
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        try {
+            long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+            return ifModifiedSince != -1 && TableVersions.notModifiedSince(table, ifModifiedSince);
+        } catch (IllegalArgumentException e) {
+            // Data mal formatada: ignora o cabeçalho
+            return false;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package controller;
+
+import dao.IdempotencyStore;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import util.Env;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.HexFormat;
+import java.util.Set;
+
+/**
+ * Idempotency-Key nos POST de criação de venda, pagamento e reserva.
+ *
+ * Com o cabeçalho, o corpo é lido inteiro (para o hash) e a chave é reservada no
+ * IdempotencyStore antes do servlet:
+ * - chave nova: o servlet roda e a resposta (status < 500) fica guardada; 5xx libera a chave;
+ * - repetição com o mesmo corpo: devolve a resposta guardada, com Idempotent-Replayed: true,
+ *   sem executar a transação;
+ * - mesma chave com outro corpo: 422; ainda em andamento: 409 com Retry-After;
+ * - efetivada sem resposta guardada (queda entre o commit e a gravação): 409, sem executar.
+ * Sem o cabeçalho nada muda. A reserva vai num atributo da requisição: o ApiServlet a liga à
+ * thread do servlet e o DAO marca a chave dentro da própria transação (markCommitted).
+ *
+ * Fica por dentro do CompressionFilter no web.xml: guarda o JSON cru e a repetição é
+ * comprimida como a original. Respostas acima de IDEMPOTENCY_MAX_RESPONSE_BYTES (padrão
+ * 1 MB) não são guardadas.
+ */
+@WebFilter(urlPatterns = "/api/*", asyncSupported = true)
+public class IdempotencyFilter implements Filter {
+
+    private static final int MAX_RESPONSE_BYTES = Env.getInt("IDEMPOTENCY_MAX_RESPONSE_BYTES", 1024 * 1024);
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private static final String CLAIM_ATTR = IdempotencyFilter.class.getName() + ".claim";
+
+    // Rotas de criação cujas repetições duplicariam linhas
+    private static final Set<String> ROUTES = Set.of("/api/sales", "/api/payments", "/api/reservations");
+
+    private final IdempotencyStore store = IdempotencyStore.getInstance();
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+        String key = httpRequest.getHeader("Idempotency-Key");
+        String route = "POST".equals(httpRequest.getMethod()) ? routeFor(httpRequest) : null;
+        if (key == null || route == null || !store.isEnabled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        key = key.trim();
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            writeError(httpResponse, HttpServletResponse.SC_BAD_REQUEST,
+                    "Idempotency-Key deve ter de 1 a " + MAX_KEY_LENGTH + " caracteres.");
+            return;
+        }
+
+        byte[] body;
+        try (InputStream in = JsonBodyReader.open(httpRequest, JsonBodyReader.MAX_BODY_BYTES)) {
+            body = in.readAllBytes();
+        } catch (JsonBodyReader.BodyTooLargeException e) {
+            writeError(httpResponse, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, e.getMessage());
+            return;
+        }
+        String hash = sha256(body);
+
+        IdempotencyStore.Begin begin;
+        try {
+            begin = store.begin(route, key, hash);
+        } catch (SQLException e) {
+            writeError(httpResponse, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Erro de Banco de Dados: " + e.getMessage());
+            e.printStackTrace();
+            return;
+        }
+
+        switch (begin.state()) {
+            case REPLAY -> {
+                replay(httpResponse, begin.response());
+                return;
+            }
+            case MISMATCH -> {
+                writeError(httpResponse, 422, "Idempotency-Key já usada com outro corpo de requisição.");
+                return;
+            }
+            case IN_PROGRESS -> {
+                httpResponse.setHeader("Retry-After", "1");
+                writeError(httpResponse, HttpServletResponse.SC_CONFLICT,
+                        "Requisição com esta Idempotency-Key ainda em andamento.");
+                return;
+            }
+            case COMMITTED -> {
+                writeError(httpResponse, HttpServletResponse.SC_CONFLICT,
+                        "Requisição com esta Idempotency-Key já foi gravada; a resposta original não está disponível.");
+                return;
+            }
+            case NEW -> {
+                // segue para o servlet
+            }
+        }
+
+        IdempotencyStore.Claim claim = begin.claim();
+        request.setAttribute(CLAIM_ATTR, claim);
+        CapturingResponse capture = new CapturingResponse(httpResponse);
+        // Servlet no executor do ApiServlet: a resposta só fica pronta depois que o chain volta
+        ApiServlet.beforeComplete(request, () -> finish(claim, hash, capture));
+        try {
+            chain.doFilter(new CachedBodyRequest(httpRequest, body), capture);
+        } catch (IOException | ServletException | RuntimeException e) {
+            release(claim);
+            throw e;
+        }
+        if (!ApiServlet.isDispatched(request)) {
+            finish(claim, hash, capture);
+        }
+    }
+
+    /**
+     * Reserva da Idempotency-Key desta requisição (null sem o cabeçalho).
+     */
+    static IdempotencyStore.Claim claimOf(ServletRequest request) {
+        return (IdempotencyStore.Claim) request.getAttribute(CLAIM_ATTR);
+    }
+
+    // --- MÉTODOS AJUDANTES ---
+
+    // "/api/sales" e "/api/sales/" (não "/api/sales/bulk" nem subrotas)
+    private static String routeFor(HttpServletRequest req) {
+        String path = req.getRequestURI().substring(req.getContextPath().length());
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return ROUTES.contains(path) ? path : null;
+    }
+
+    private void finish(IdempotencyStore.Claim claim, String hash, CapturingResponse capture) throws IOException {
+        capture.flushCapture();
+        int status = capture.getStatus();
+        if (status >= 500 || capture.overflow()) {
+            release(claim); // Não apaga chave já efetivada pelo DAO
+            return;
+        }
+        try {
+            store.complete(claim, hash,
+                    new IdempotencyStore.StoredResponse(status, capture.getContentType(), capture.captured()));
+        } catch (SQLException e) {
+            // A resposta já foi para o cliente; se o DAO efetivou a chave, a repetição recebe 409 sem executar
+            System.err.println("[idempotency] Falha ao guardar a resposta de " + claim.route() + ": " + e.getMessage());
+            release(claim);
+        }
+    }
+
+    private void release(IdempotencyStore.Claim claim) {
+        try {
+            store.release(claim);
+        } catch (SQLException e) {
+            // A reserva vence sozinha depois de IDEMPOTENCY_LOCK_SECONDS
+            System.err.println("[idempotency] Falha ao liberar a chave de " + claim.route() + ": " + e.getMessage());
+        }
+    }
+
+    private static void replay(HttpServletResponse resp, IdempotencyStore.StoredResponse stored) throws IOException {
+        resp.setStatus(stored.status());
+        resp.setHeader("Idempotent-Replayed", "true");
+        if (stored.contentType() != null) {
+            resp.setContentType(stored.contentType());
+        }
+        byte[] body = stored.body();
+        if (body != null && body.length > 0) {
+            resp.getOutputStream().write(body);
+        }
+    }
+
+    private static void writeError(HttpServletResponse resp, int status, String message) throws IOException {
+        resp.setStatus(status);
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.getWriter().print("{\"erro\": \"" + message + "\"}");
+    }
+
+    private static String sha256(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+
+    /**
+     * Requisição com o corpo já lido (o filtro precisou dele para o hash).
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new IllegalStateException("Corpo já lido pelo IdempotencyFilter.");
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+    }
+
+    /**
+     * Repassa a resposta normalmente e guarda uma cópia do corpo (até o limite).
+     */
+    private static final class CapturingResponse extends HttpServletResponseWrapper {
+        private final ByteArrayOutputStream copy = new ByteArrayOutputStream(1024);
+        private boolean overflow;
+        private ServletOutputStream stream;
+        private PrintWriter writer;
+
+        CapturingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (stream == null) {
+                ServletOutputStream out = super.getOutputStream();
+                stream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        out.write(b);
+                        keep(new byte[] {(byte) b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                        keep(b, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        out.flush();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return out.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        out.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), Charset.forName(getCharacterEncoding())));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            flushCapture();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void resetBuffer() {
+            copy.reset();
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            copy.reset();
+            overflow = false;
+            super.reset();
+        }
+
+        // O PrintWriter segura caracteres: sem o flush o corpo guardado sairia cortado
+        void flushCapture() {
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+
+        boolean overflow() {
+            return overflow;
+        }
+
+        byte[] captured() {
+            return copy.toByteArray();
+        }
+
+        private void keep(byte[] b, int off, int len) {
+            if (overflow) {
+                return;
+            }
+            if (copy.size() + len > MAX_RESPONSE_BYTES) {
+                overflow = true;
+                copy.reset();
+                return;
+            }
+            copy.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import util.Env;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Lê o corpo JSON das requisições direto do InputStream, sem montar uma String
+ * intermediária (o antigo lines().reduce(...) era quadrático e perdia as quebras de linha).
+ *
+ * Os ObjectReader vêm do JsonCodecs: imutáveis, thread-safe e criados uma vez por entidade.
+ * O tamanho do corpo é limitado por API_MAX_BODY_BYTES (padrão 10 MB).
+ */
+final class JsonBodyReader {
+
+    static final long MAX_BODY_BYTES = Env.getLong("API_MAX_BODY_BYTES", 10L * 1024 * 1024);
+
+    private JsonBodyReader() {}
+
+    /**
+     * Corpo maior que o permitido (o servlet responde 413).
+     */
+    static final class BodyTooLargeException extends IOException {
+        BodyTooLargeException(long max) {
+            super("Corpo da requisição maior que " + max + " bytes.");
+        }
+    }
+
+    static <T> T read(HttpServletRequest req, Class<T> type) throws IOException {
+        try (InputStream in = open(req, MAX_BODY_BYTES)) {
+            return JsonCodecs.reader(type).readValue(in);
+        }
+    }
+
+    /**
+     * Corpo bruto com limite próprio (ex.: carga NDJSON em lote, bem maior que um JSON comum).
+     */
+    static InputStream open(HttpServletRequest req, long maxBytes) throws IOException {
+        if (req.getContentLengthLong() > maxBytes) {
+            throw new BodyTooLargeException(maxBytes);
+        }
+        return new BoundedInputStream(req.getInputStream(), maxBytes);
+    }
+
+    // Conta os bytes lidos: cobre corpos chunked, que não informam Content-Length
+    private static final class BoundedInputStream extends FilterInputStream {
+        private final long max;
+        private long count;
+
+        BoundedInputStream(InputStream in, long max) {
+            super(in);
+            this.max = max;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long n) throws BodyTooLargeException {
+            count += n;
+            if (count > max) {
+                throw new BodyTooLargeException(max);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package controller;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.type.CollectionType;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import model.entities.Payment;
+import model.entities.Product;
+import model.entities.Reservation;
+import model.entities.Sale;
+import model.entities.Tent;
+import model.entities.User;
+import util.Env;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro único de JSON da aplicação: um ObjectMapper com a mesma configuração
+ * para todos os servlets, mais ObjectReader/ObjectWriter já resolvidos por entidade.
+ *
+ * Iniciado pelo AppContextListener. O acelerador Blackbird (acessores gerados em
+ * vez de reflexão) vem ligado e pode ser desligado com JSON_BLACKBIRD=false.
+ */
+final class JsonCodecs {
+
+    private static final Class<?>[] ENTITIES = {
+            Sale.class, Product.class, Tent.class, User.class, Payment.class, Reservation.class
+    };
+
+    private static volatile JsonCodecs instance;
+
+    // A licença (BYTEA) só é lida quando pedida em ?fields=: fora isso vem null e não aparece,
+    // e a listagem padrão sai direto do objeto, sem o recorte do JsonFields
+    private abstract static class TentJson {
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        abstract byte[] getUserLicense();
+    }
+
+    private final ObjectMapper mapper;
+    private final boolean accelerated;
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectWriter> listWriters = new ConcurrentHashMap<>();
+    private final ObjectWriter streamWriter;
+
+    private JsonCodecs(boolean accelerated) {
+        this.accelerated = accelerated;
+        this.mapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .addMixIn(Tent.class, TentJson.class);
+        if (accelerated) {
+            this.mapper.registerModule(new BlackbirdModule());
+        }
+        // Usado linha a linha no streaming: o flush fica por conta do buffer do container
+        this.streamWriter = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        // Resolve os (de)serializadores das entidades já na subida, não na primeira requisição
+        for (Class<?> type : ENTITIES) {
+            readerFor(type);
+            writerFor(type);
+            listWriterFor(type);
+        }
+    }
+
+    private ObjectReader readerFor(Class<?> type) {
+        return readers.computeIfAbsent(type, mapper::readerFor);
+    }
+
+    private ObjectWriter writerFor(Class<?> type) {
+        return writers.computeIfAbsent(type, mapper::writerFor);
+    }
+
+    private ObjectWriter listWriterFor(Class<?> type) {
+        return listWriters.computeIfAbsent(type, t -> {
+            CollectionType listType = mapper.getTypeFactory().constructCollectionType(List.class, t);
+            return mapper.writerFor(listType);
+        });
+    }
+
+    /**
+     * Cria o registro (chamado no contextInitialized). Chamadas seguintes não fazem nada.
+     */
+    static void start() {
+        if (instance == null) {
+            synchronized (JsonCodecs.class) {
+                if (instance == null) {
+                    instance = new JsonCodecs(Env.getBoolean("JSON_BLACKBIRD", true));
+                }
+            }
+        }
+    }
+
+    private static JsonCodecs get() {
+        // Segurança para quando um servlet sobe antes do listener (ex.: testes manuais)
+        start();
+        return instance;
+    }
+
+    static ObjectMapper mapper() {
+        return get().mapper;
+    }
+
+    static boolean isAccelerated() {
+        return get().accelerated;
+    }
+
+    static ObjectReader reader(Class<?> type) {
+        return get().readerFor(type);
+    }
+
+    static ObjectWriter writer(Class<?> type) {
+        return get().writerFor(type);
+    }
+
+    /**
+     * Writer para List&lt;type&gt; (evita descobrir o tipo de cada elemento em tempo de execução).
+     */
+    static ObjectWriter listWriter(Class<?> type) {
+        return get().listWriterFor(type);
+    }
+
+    static ObjectWriter streamWriter() {
+        return get().streamWriter;
+    }
+}
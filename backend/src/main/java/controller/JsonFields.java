@@ -0,0 +1,50 @@
+package controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dao.Projection;
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.Set;
+
+/**
+ * ?fields=code,name nas rotas de leitura.
+ *
+ * O DAO já lê só as colunas pedidas; aqui a resposta é recortada para não mostrar os
+ * outros campos como null. Sem ?fields= valem os campos padrão da entidade (sem binários).
+ */
+final class JsonFields {
+
+    private JsonFields() {}
+
+    /**
+     * Campos pedidos. Lança IllegalArgumentException para campo desconhecido (o servlet responde 400).
+     */
+    static Set<String> parse(HttpServletRequest req, Projection projection) {
+        return projection.parse(req.getParameter("fields"));
+    }
+
+    /**
+     * Campos a manter na resposta, ou null se nada precisa ser recortado: todos os campos,
+     * ou os padrão (os binários fora do padrão vêm null e o JsonCodecs não os escreve).
+     */
+    static Set<String> output(Projection projection, Set<String> fields) {
+        return projection.isAll(fields) || fields.equals(projection.defaults()) ? null : fields;
+    }
+
+    /**
+     * Objeto (ou lista de objetos) só com os campos pedidos. Com fields null, devolve o próprio valor.
+     */
+    static Object trim(Object value, Set<String> fields) {
+        if (fields == null) {
+            return value;
+        }
+        JsonNode tree = JsonCodecs.mapper().valueToTree(value);
+        if (tree.isArray()) {
+            tree.forEach(node -> ((ObjectNode) node).retain(fields));
+        } else if (tree.isObject()) {
+            ((ObjectNode) tree).retain(fields);
+        }
+        return tree;
+    }
+}
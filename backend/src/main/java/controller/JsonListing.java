@@ -0,0 +1,133 @@
+package controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import dao.RowHandler;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Modos de listagem das rotas de coleção (GET /api/xxx):
+ *
+ *   ?after=&limit=  → página por chave primária: {"items":[...], "nextAfter": chave | null}
+ *   ?stream=true    → array JSON completo escrito linha a linha enquanto o banco é lido
+ *   ?fields=a,b     → combinável com os modos acima: só esses campos (ver JsonFields)
+ *   (sem parâmetros) → comportamento antigo, lista inteira via getAll()
+ */
+final class JsonListing {
+
+    static final int DEFAULT_LIMIT = 50;
+    static final int MAX_LIMIT = 500;
+
+    private JsonListing() {}
+
+    /**
+     * Fonte de linhas para o streaming (ex.: productDAO::streamAll).
+     */
+    @FunctionalInterface
+    interface RowSource<T> {
+        void forEach(RowHandler<T> handler) throws SQLException, IOException;
+    }
+
+    static boolean isStreamRequest(HttpServletRequest req) {
+        return "true".equalsIgnoreCase(req.getParameter("stream"));
+    }
+
+    static boolean isPageRequest(HttpServletRequest req) {
+        return req.getParameter("after") != null || req.getParameter("limit") != null;
+    }
+
+    /**
+     * Lê ?limit= (padrão 50, máximo 500). Lança NumberFormatException se inválido.
+     */
+    static int limit(HttpServletRequest req) {
+        String value = req.getParameter("limit");
+        if (value == null || value.isBlank()) {
+            return DEFAULT_LIMIT;
+        }
+        int limit = Integer.parseInt(value.trim());
+        if (limit <= 0) {
+            throw new NumberFormatException("limit deve ser maior que zero");
+        }
+        return Math.min(limit, MAX_LIMIT);
+    }
+
+    /**
+     * Lê ?after= para chaves inteiras. Sem o parâmetro, começa do início.
+     */
+    static int intAfter(HttpServletRequest req) {
+        String value = req.getParameter("after");
+        return (value == null || value.isBlank()) ? Integer.MIN_VALUE : Integer.parseInt(value.trim());
+    }
+
+    /**
+     * Lê ?after= para chaves texto (ex.: CPF). Sem o parâmetro, começa do início.
+     */
+    static String stringAfter(HttpServletRequest req) {
+        String value = req.getParameter("after");
+        return value == null ? "" : value.trim();
+    }
+
+    static <T> void writePage(ObjectMapper mapper, HttpServletResponse resp, List<T> items, int limit,
+                              Function<T, Object> keyOf) throws IOException {
+        writePage(mapper, resp, items, limit, keyOf, null);
+    }
+
+    /**
+     * Como writePage, mas com os itens recortados aos campos de ?fields= (null = sem recorte).
+     */
+    static <T> void writePage(ObjectMapper mapper, HttpServletResponse resp, List<T> items, int limit,
+                              Function<T, Object> keyOf, Set<String> fields) throws IOException {
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("items", JsonFields.trim(items, fields));
+        // Página cheia: pode haver mais linhas depois da última chave
+        page.put("nextAfter", items.size() == limit ? keyOf.apply(items.get(items.size() - 1)) : null);
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.getWriter().print(mapper.writeValueAsString(page));
+    }
+
+    /**
+     * Escreve um array JSON direto no OutputStream da resposta, uma linha por vez.
+     * Se o banco falhar antes de algo ser enviado, a resposta é limpa e a exceção
+     * volta para o servlet tratar normalmente (500). Depois que a resposta já foi
+     * enviada não há como mudar o status: a conexão é abortada.
+     */
+    static <T> void writeStream(ObjectMapper mapper, HttpServletResponse resp, RowSource<T> source)
+            throws SQLException, IOException {
+        writeStream(mapper, resp, source, null);
+    }
+
+    /**
+     * Como writeStream, mas com cada linha recortada aos campos de ?fields= (null = sem recorte).
+     */
+    static <T> void writeStream(ObjectMapper mapper, HttpServletResponse resp, RowSource<T> source,
+                                Set<String> fields) throws SQLException, IOException {
+        ObjectWriter rowWriter = JsonCodecs.streamWriter();
+        resp.setStatus(HttpServletResponse.SC_OK);
+
+        try {
+            JsonGenerator gen = mapper.getFactory().createGenerator(resp.getOutputStream());
+            gen.writeStartArray();
+            source.forEach(row -> rowWriter.writeValue(gen, JsonFields.trim(row, fields)));
+            gen.writeEndArray();
+            gen.close();
+        } catch (SQLException e) {
+            if (resp.isCommitted()) {
+                throw new IOException("Falha do banco durante o streaming: " + e.getMessage(), e);
+            }
+            resp.reset();
+            resp.setContentType("application/json");
+            resp.setCharacterEncoding("UTF-8");
+            throw e;
+        }
+    }
+}
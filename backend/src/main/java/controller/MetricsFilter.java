@@ -0,0 +1,69 @@
+package controller;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import util.Metrics;
+
+import java.io.IOException;
+
+/**
+ * Mede cada requisição da API (latência, status, exceções) por servlet e método HTTP.
+ * Custo por requisição: dois System.nanoTime(), uma busca num ConcurrentHashMap e a
+ * gravação no histograma.
+ *
+ * É o primeiro filtro do web.xml, para que o tempo inclua os outros filtros.
+ */
+@WebFilter(urlPatterns = "/api/*", asyncSupported = true)
+public class MetricsFilter implements Filter {
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            failed = false;
+        } finally {
+            if (!failed && httpRequest.isAsyncStarted()) {
+                // Resposta assíncrona: mede até o complete()
+                httpRequest.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        record(httpRequest, httpResponse, start, false);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                record(httpRequest, httpResponse, start, failed);
+            }
+        }
+    }
+
+    private static void record(HttpServletRequest req, HttpServletResponse resp, long start, boolean failed) {
+        Metrics.recordRequest(req.getHttpServletMapping().getServletName(), req.getMethod(),
+                resp.getStatus(), System.nanoTime() - start, failed);
+    }
+}
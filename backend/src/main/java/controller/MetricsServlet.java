@@ -0,0 +1,48 @@
+package controller;
+
+import dao.ConnectionPool;
+import dao.DatabaseConnection;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import util.Metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+// GET /api/metrics -> latência/contagem das requisições e consultas, e o pool, em formato Prometheus
+@WebServlet("/api/metrics")
+public class MetricsServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setContentType("text/plain; version=0.0.4");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setStatus(HttpServletResponse.SC_OK);
+
+        PrintWriter out = resp.getWriter();
+        Metrics.writePrometheus(out);
+
+        ConnectionPool.PoolStats pool = DatabaseConnection.getPoolStats();
+        Metrics.writeSingle(out, "feirinha_db_pool_active", "gauge", "Conexões emprestadas agora.", pool.active());
+        Metrics.writeSingle(out, "feirinha_db_pool_idle", "gauge", "Conexões livres no pool.", pool.idle());
+        Metrics.writeSingle(out, "feirinha_db_pool_waiting", "gauge", "Threads esperando conexão.", pool.waiting());
+        Metrics.writeSingle(out, "feirinha_db_pool_max", "gauge", "Tamanho máximo do pool.", pool.maxSize());
+        Metrics.writeSingle(out, "feirinha_db_pool_timeouts_total", "counter", "Esperas por conexão que estouraram o limite.", pool.timeouts());
+        Metrics.writeSingle(out, "feirinha_db_statement_cache_hits_total", "counter", "prepareStatement atendidos pelo cache da conexão.", pool.statementCacheHits());
+        Metrics.writeSingle(out, "feirinha_db_statement_cache_misses_total", "counter", "prepareStatement que prepararam um statement novo.", pool.statementCacheMisses());
+        RateLimitFilter.ThrottleStats throttle = RateLimitFilter.getStats();
+        Metrics.writeSingle(out, "feirinha_throttle_ip_total", "counter", "Requisições recusadas com 429 pelo limite por IP.", throttle.throttledByIp());
+        Metrics.writeSingle(out, "feirinha_throttle_api_key_total", "counter", "Requisições recusadas com 429 pelo limite por API key.", throttle.throttledByKey());
+        Metrics.writeSingle(out, "feirinha_throttle_concurrency_total", "counter", "Requisições recusadas com 503 pelo limite de concorrência no banco.", throttle.rejectedConcurrency());
+        Metrics.writeSingle(out, "feirinha_dao_in_flight", "gauge", "Requisições em andamento nas rotas que vão ao banco.", throttle.daoInFlight());
+
+        if (ApiServlet.isAsync()) {
+            Metrics.writeSingle(out, "feirinha_api_async_in_flight", "gauge", "Requisições fora da thread do container (na fila ou rodando).", ApiServlet.inFlight());
+            Metrics.writeSingle(out, "feirinha_api_async_queued", "gauge", "Requisições esperando uma thread do executor limitado.", ApiServlet.queued());
+            Metrics.writeSingle(out, "feirinha_api_async_rejected_total", "counter", "Requisições recusadas com 503 por fila cheia.", ApiServlet.rejected());
+        }
+    }
+}
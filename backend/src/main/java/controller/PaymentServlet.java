@@ -2,8 +2,6 @@ package controller;
 
 // Imports do Jackson (para JSON)
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
 import dao.PaymentDAO;
 import model.entities.Payment;
@@ -11,25 +9,23 @@ import model.entities.Payment;
 // Imports do Servlet (JAKARTA)
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
-import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Set;
 import java.io.IOException;
 
-@WebServlet(urlPatterns = {"/api/payments", "/api/payments/*"}) // URL em português
-public class PaymentServlet extends HttpServlet {
+@WebServlet(urlPatterns = {"/api/payments", "/api/payments/*"}, asyncSupported = true) // URL em português
+public class PaymentServlet extends ApiServlet {
 
     private ObjectMapper mapper; // 1. Mova a inicialização para o init()
     private PaymentDAO paymentDAO;
 
     @Override
     public void init() throws ServletException {
-        this.mapper = new ObjectMapper();
-        this.mapper.registerModule(new JavaTimeModule()); 
-        this.mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.mapper = JsonCodecs.mapper(); // Compartilhado entre os servlets (JavaTimeModule etc.)
         this.paymentDAO = new PaymentDAO(); // DAO é inicializado
     }
 
@@ -37,13 +33,12 @@ public class PaymentServlet extends HttpServlet {
     // POST /api/payments
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        String jsonBody = req.getReader().lines().reduce("", (a, b) -> a + b);
-
         try {
-            Payment newPayment = mapper.readValue(jsonBody, Payment.class);
+            Payment newPayment = JsonBodyReader.read(req, Payment.class);
             
             // Validação (Barreira 1) - O Servlet protege o DAO
-            if (newPayment.getId() == null || newPayment.getBuyerCpf() == null || newPayment.getPaymentForm() == null || newPayment.getPaymentDate() == null) {
+            // O id é gerado pelo servidor (volta na resposta)
+            if (newPayment.getBuyerCpf() == null || newPayment.getPaymentForm() == null || newPayment.getPaymentDate() == null) {
                  resp.setStatus(HttpServletResponse.SC_BAD_REQUEST); // 400
                  resp.getWriter().print("{\"erro\": \"Falta de campos obrigatórios.\"}");
                  return;
@@ -65,6 +60,9 @@ public class PaymentServlet extends HttpServlet {
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR); 
             resp.getWriter().print("{\"erro\": \"Erro de Banco de Dados: " + e.getMessage() + "\"}");
             e.printStackTrace();
+        } catch (JsonBodyReader.BodyTooLargeException e) {
+            resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            resp.getWriter().print("{\"erro\": \"" + e.getMessage() + "\"}");
         } catch (Exception e) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST); 
             resp.getWriter().print("{\"erro\": \"JSON inválido. " + e.getMessage() + "\"}");
@@ -83,17 +81,38 @@ public class PaymentServlet extends HttpServlet {
         resp.setCharacterEncoding("UTF-8");
 
         try {
+            // ?fields=id,paymentForm → só essas colunas
+            Set<String> fields = JsonFields.parse(req, PaymentDAO.FIELDS);
+            Set<String> output = JsonFields.output(PaymentDAO.FIELDS, fields);
+
             if (pathInfo == null || pathInfo.equals("/")) {
-                // --- Rota 1: Listar Todos (/api/payments) ---
-                List<Payment> payments = paymentDAO.getAll();
-                resp.getWriter().print(mapper.writeValueAsString(payments));
+                if (JsonListing.isStreamRequest(req)) {
+                    // --- Rota 1b: Listar Todos em streaming (/api/payments?stream=true) ---
+                    ConditionalGetFilter.addValidators(req, resp);
+                    JsonListing.<Payment>writeStream(mapper, resp, handler -> paymentDAO.streamAll(fields, handler), output);
+                } else if (JsonListing.isPageRequest(req)) {
+                    // --- Rota 1c: Página por chave (/api/payments?after=10&limit=50) ---
+                    int limit = JsonListing.limit(req);
+                    List<Payment> page = paymentDAO.getPage(JsonListing.intAfter(req), limit, fields);
+                    ConditionalGetFilter.addValidators(req, resp);
+                    JsonListing.writePage(mapper, resp, page, limit, Payment::getId, output);
+                } else {
+                    // --- Rota 1: Listar Todos (/api/payments) ---
+                    List<Payment> payments = paymentDAO.getAll(fields);
+                    ConditionalGetFilter.addValidators(req, resp);
+                    if (output == null) {
+                        resp.getWriter().print(JsonCodecs.listWriter(Payment.class).writeValueAsString(payments));
+                    } else {
+                        resp.getWriter().print(mapper.writeValueAsString(JsonFields.trim(payments, output)));
+                    }
+                }
             
             } else {
                 // --- Rota 2: Buscar Um por ID (/api/payments/1) ---
                 
                 // Extrai o "1" da URL "/1"
                 int id = Integer.parseInt(pathInfo.substring(1));
-                Payment payment = paymentDAO.getById(id);
+                Payment payment = paymentDAO.getById(id, fields);
                 
                 if (payment == null) {
                     // Não encontrou
@@ -101,14 +120,18 @@ public class PaymentServlet extends HttpServlet {
                     resp.getWriter().print("{\"erro\": \"Pagamento não encontrado\"}");
                 } else {
                     // Encontrou, retorna o produto
+                    ConditionalGetFilter.addValidators(req, resp);
                     resp.setStatus(HttpServletResponse.SC_OK); // 200
-                    resp.getWriter().print(mapper.writeValueAsString(payment));
+                    resp.getWriter().print(mapper.writeValueAsString(JsonFields.trim(payment, output)));
                 }
             }
         } catch (NumberFormatException e) {
             // Se a URL for /api/payments/abc (inválido)
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             resp.getWriter().print("{\"erro\": \"ID de pagamento inválido.\"}");
+        } catch (IllegalArgumentException e) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().print("{\"erro\": \"" + e.getMessage() + "\"}");
         } catch (SQLException e) {
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             resp.getWriter().print("{\"erro\": \"Erro de Banco de Dados: " + e.getMessage() + "\"}");
@@ -131,9 +154,8 @@ public class PaymentServlet extends HttpServlet {
 
         try {
             int id = Integer.parseInt(pathInfo.substring(1));
-            String jsonBody = req.getReader().lines().reduce("", (a, b) -> a + b);
             
-            Payment payment = mapper.readValue(jsonBody, Payment.class);
+            Payment payment = JsonBodyReader.read(req, Payment.class);
             
             // 2. Garante que o ID do objeto é o mesmo da URL
             payment.setId(id); 
@@ -155,6 +177,9 @@ public class PaymentServlet extends HttpServlet {
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             resp.getWriter().print("{\"erro\": \"Erro de Banco de Dados: " + e.getMessage() + "\"}");
             e.printStackTrace();
+        } catch (JsonBodyReader.BodyTooLargeException e) {
+            resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            resp.getWriter().print("{\"erro\": \"" + e.getMessage() + "\"}");
         } catch (Exception e) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             resp.getWriter().print("{\"erro\": \"JSON inválido. " + e.getMessage() + "\"}");
@@ -0,0 +1,31 @@
+package controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dao.DatabaseConnection;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+// GET /api/pool/stats -> conexões ativas, livres, em espera e tempos de espera do pool
+@WebServlet("/api/pool/stats")
+public class PoolStatsServlet extends HttpServlet {
+
+    private ObjectMapper mapper;
+
+    @Override
+    public void init() throws ServletException {
+        this.mapper = JsonCodecs.mapper();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.getWriter().print(mapper.writeValueAsString(DatabaseConnection.getPoolStats()));
+    }
+}
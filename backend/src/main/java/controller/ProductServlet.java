@@ -1,12 +1,10 @@
 package controller;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import dao.BlobStore;
 import dao.ProductDAO;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
-import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import model.entities.Product;
@@ -15,18 +13,17 @@ import java.io.IOException;
 import java.math.BigDecimal; 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Set;
 
-@WebServlet(urlPatterns = {"/api/products", "/api/products/*"})
-public class ProductServlet extends HttpServlet {
+@WebServlet(urlPatterns = {"/api/products", "/api/products/*"}, asyncSupported = true)
+public class ProductServlet extends ApiServlet {
 
     private ObjectMapper mapper;
     private ProductDAO productDAO;
 
     @Override
     public void init() throws ServletException {
-        this.mapper = new ObjectMapper();
-        this.mapper.registerModule(new JavaTimeModule()); 
-        this.mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.mapper = JsonCodecs.mapper(); // Compartilhado entre os servlets (JavaTimeModule etc.)
         this.productDAO = new ProductDAO(); // DAO é inicializado
     }
     
@@ -43,10 +40,8 @@ public class ProductServlet extends HttpServlet {
     // POST /api/products
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        String jsonBody = req.getReader().lines().reduce("", (a, b) -> a + b);
-
         try {
-            Product newProduct = mapper.readValue(jsonBody, Product.class);
+            Product newProduct = JsonBodyReader.read(req, Product.class);
             
             // --- VALIDAÇÃO (BARREIRA 1) ---
             
@@ -90,6 +85,8 @@ public class ProductServlet extends HttpServlet {
         } catch (SQLException e) {
             sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Erro de Banco de Dados: " + e.getMessage());
             e.printStackTrace();
+        } catch (JsonBodyReader.BodyTooLargeException e) {
+            sendError(resp, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, e.getMessage());
         } catch (Exception e) {
             sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "JSON inválido: " + e.getMessage());
             e.printStackTrace();
@@ -103,14 +100,43 @@ public class ProductServlet extends HttpServlet {
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         
         String pathInfo = req.getPathInfo();
+        if (pathInfo != null && pathInfo.endsWith("/image")) {
+            handleImage(req, resp, pathInfo);
+            return;
+        }
         resp.setContentType("application/json");
         resp.setCharacterEncoding("UTF-8");
 
         try {
+            // ?fields=code,name → só essas colunas (listagem completa e por ID saem do cache e são recortadas)
+            Set<String> fields = JsonFields.parse(req, ProductDAO.FIELDS);
+            Set<String> output = JsonFields.output(ProductDAO.FIELDS, fields);
+
             if (pathInfo == null || pathInfo.equals("/")) {
-                // --- Rota 1: Listar Todos (/api/products) ---
-                List<Product> products = productDAO.getAll();
-                resp.getWriter().print(mapper.writeValueAsString(products));
+                if (JsonListing.isStreamRequest(req)) {
+                    // --- Rota 1b: Listar Todos em streaming (/api/products?stream=true) ---
+                    ConditionalGetFilter.addValidators(req, resp);
+                    JsonListing.<Product>writeStream(mapper, resp, handler -> productDAO.streamAll(fields, handler), output);
+                } else if (JsonListing.isPageRequest(req)) {
+                    // --- Rota 1c: Página por chave (/api/products?after=10&limit=50) ---
+                    int limit = JsonListing.limit(req);
+                    List<Product> page = productDAO.getPage(JsonListing.intAfter(req), limit, fields);
+                    ConditionalGetFilter.addValidators(req, resp);
+                    JsonListing.writePage(mapper, resp, page, limit, Product::getCode, output);
+                } else if (output != null) {
+                    // --- Rota 1d: Listar Todos com ?fields= (recorta a listagem do cache) ---
+                    List<Product> products = productDAO.getAll();
+                    ConditionalGetFilter.addValidators(req, resp);
+                    resp.getWriter().print(mapper.writeValueAsString(JsonFields.trim(products, output)));
+                } else {
+                    // --- Rota 1: Listar Todos (/api/products) ---
+                    // O JSON da listagem vem pronto do cache do catálogo (serializado uma vez por versão)
+                    byte[] json = productDAO.getCatalogListing()
+                            .json(products -> JsonCodecs.listWriter(Product.class).writeValueAsBytes(products));
+                    ConditionalGetFilter.addValidators(req, resp);
+                    resp.setContentLength(json.length);
+                    resp.getOutputStream().write(json);
+                }
             
             } else {
                 // --- Rota 2: Buscar Um por ID (/api/products/1) ---
@@ -120,12 +146,35 @@ public class ProductServlet extends HttpServlet {
                 if (product == null) {
                     sendError(resp, HttpServletResponse.SC_NOT_FOUND, "Produto não encontrado.");
                 } else {
+                    ConditionalGetFilter.addValidators(req, resp);
                     resp.setStatus(HttpServletResponse.SC_OK); // 200
-                    resp.getWriter().print(mapper.writeValueAsString(product));
+                    resp.getWriter().print(mapper.writeValueAsString(JsonFields.trim(product, output)));
                 }
             }
         } catch (NumberFormatException e) {
             sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "ID de produto inválido.");
+        } catch (IllegalArgumentException e) {
+            sendError(resp, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        } catch (SQLException e) {
+            sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Erro de Banco de Dados: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // --- IMAGEM DO PRODUTO ---
+    // GET /api/products/1/image (baixa, com Range) | PUT /api/products/1/image (corpo = arquivo cru)
+    private void handleImage(HttpServletRequest req, HttpServletResponse resp, String pathInfo) throws IOException {
+        try {
+            int id = Integer.parseInt(BlobResponses.key(pathInfo, "/image"));
+            if ("PUT".equals(req.getMethod())) {
+                BlobResponses.put(req, resp, BlobStore.Blob.PRODUCT_IMAGE, id);
+            } else {
+                BlobResponses.get(req, resp, BlobStore.Blob.PRODUCT_IMAGE, id);
+            }
+        } catch (NumberFormatException e) {
+            sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "ID de produto inválido.");
+        } catch (JsonBodyReader.BodyTooLargeException e) {
+            sendError(resp, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, e.getMessage());
         } catch (SQLException e) {
             sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Erro de Banco de Dados: " + e.getMessage());
             e.printStackTrace();
@@ -137,6 +186,10 @@ public class ProductServlet extends HttpServlet {
     @Override
     protected void doPut(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String pathInfo = req.getPathInfo();
+        if (pathInfo != null && pathInfo.endsWith("/image")) {
+            handleImage(req, resp, pathInfo);
+            return;
+        }
         
         if (pathInfo == null || pathInfo.equals("/")) {
             sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "É preciso informar o ID do produto na URL para atualizar.");
@@ -145,9 +198,8 @@ public class ProductServlet extends HttpServlet {
 
         try {
             int id = Integer.parseInt(pathInfo.substring(1));
-            String jsonBody = req.getReader().lines().reduce("", (a, b) -> a + b);
             
-            Product product = mapper.readValue(jsonBody, Product.class);
+            Product product = JsonBodyReader.read(req, Product.class);
             product.setCode(id); 
             
             // (Validações do POST também deveriam estar aqui)
@@ -164,6 +216,8 @@ public class ProductServlet extends HttpServlet {
         } catch (SQLException e) {
             sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Erro de Banco de Dados: " + e.getMessage());
             e.printStackTrace();
+        } catch (JsonBodyReader.BodyTooLargeException e) {
+            sendError(resp, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, e.getMessage());
         } catch (Exception e) {
             sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "JSON inválido: " + e.getMessage());
             e.printStackTrace();
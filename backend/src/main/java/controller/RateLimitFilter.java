@@ -0,0 +1,288 @@
+package controller;
+
+import dao.DatabaseConnection;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import util.Env;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Controle de admissão da API: limite de taxa por cliente e de concorrência no banco.
+ *
+ * - Token bucket por API key (cabeçalho X-Api-Key) ou, sem chave, por IP:
+ *   RATE_LIMIT_KEY_PER_SECOND/RATE_LIMIT_KEY_BURST (padrão 100/200) e
+ *   RATE_LIMIT_IP_PER_SECOND/RATE_LIMIT_IP_BURST (padrão 50/100). Estourou = 429 com Retry-After.
+ *   Só as chaves cadastradas em RATE_LIMIT_API_KEYS (separadas por vírgula) têm balde próprio;
+ *   chave desconhecida conta no balde do IP (uma chave nova por requisição não ganha rajada nova).
+ *   O balde é um único AtomicLong (GCRA: "próximo instante livre"), atualizado por CAS,
+ *   sem lock no caminho da requisição.
+ * - Limite global de requisições em andamento nas rotas que vão aos DAOs: DAO_MAX_CONCURRENCY
+ *   (padrão 4 por conexão do pool; 0 desliga). Acima disso = 503 com Retry-After na hora, em
+ *   vez de esperar DB_POOL_MAX_WAIT_MS pela conexão. Contador AtomicInteger, sem semáforo.
+ *
+ * Rotas de monitoramento (métricas, estatísticas, /api/admin) não são limitadas.
+ * Contadores em /api/throttle/stats e /api/metrics. RATE_LIMIT_ENABLED=false desliga tudo.
+ * Vem depois do CorsFilter no web.xml: as respostas 429/503 também levam os cabeçalhos CORS.
+ */
+@WebFilter(urlPatterns = "/api/*", asyncSupported = true)
+public class RateLimitFilter implements Filter {
+
+    private static final boolean ENABLED = Env.getBoolean("RATE_LIMIT_ENABLED", true);
+    private static final Limit IP_LIMIT = new Limit(
+            Env.getInt("RATE_LIMIT_IP_PER_SECOND", 50), Env.getInt("RATE_LIMIT_IP_BURST", 100));
+    private static final Limit KEY_LIMIT = new Limit(
+            Env.getInt("RATE_LIMIT_KEY_PER_SECOND", 100), Env.getInt("RATE_LIMIT_KEY_BURST", 200));
+    // Acima disso os baldes já cheios (equivalentes a um novo) são descartados
+    private static final int MAX_CLIENTS = Env.getInt("RATE_LIMIT_MAX_CLIENTS", 10_000);
+    private static final boolean TRUST_FORWARDED = Env.getBoolean("RATE_LIMIT_TRUST_FORWARDED", false);
+    private static final Set<String> API_KEYS = parseKeys(Env.get("RATE_LIMIT_API_KEYS", ""));
+    // Com o mapa cheio, a varredura dos baldes cheios roda no máximo uma vez por segundo
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final String[] EXEMPT = {
+            "/api/metrics", "/api/pool/stats", "/api/cache/stats", "/api/throttle/stats", "/api/admin/"};
+
+    private static final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private static final AtomicLong lastSweep = new AtomicLong(System.nanoTime() - SWEEP_INTERVAL_NANOS);
+
+    private static final AtomicInteger daoInFlight = new AtomicInteger();
+    private static volatile int daoLimit = -1; // calculado no primeiro uso (depende do pool)
+
+    private static final LongAdder allowed = new LongAdder();
+    private static final LongAdder throttledByIp = new LongAdder();
+    private static final LongAdder throttledByKey = new LongAdder();
+    private static final LongAdder rejectedConcurrency = new LongAdder();
+
+    public record ClientStats(String client, long throttled) {
+    }
+
+    public record ThrottleStats(boolean enabled, long allowed, long throttledByIp, long throttledByKey,
+                                long rejectedConcurrency, int daoInFlight, int daoMaxConcurrency,
+                                int trackedClients, List<ClientStats> topThrottled) {
+    }
+
+    private record Limit(long intervalNanos, long burstNanos) {
+        Limit(int perSecond, int burst) {
+            this(TimeUnit.SECONDS.toNanos(1) / Math.max(1, perSecond),
+                    TimeUnit.SECONDS.toNanos(1) / Math.max(1, perSecond) * Math.max(1, burst));
+        }
+    }
+
+    /**
+     * Balde de um cliente. tat = instante (nanoTime) em que o balde volta a ficar cheio;
+     * cada requisição empurra tat em um intervalo, e passar de "agora + rajada" é excesso.
+     */
+    private static final class Bucket {
+        final AtomicLong tat;
+        final LongAdder throttled = new LongAdder();
+
+        Bucket(long now) {
+            this.tat = new AtomicLong(now);
+        }
+
+        // 0 = liberado; senão, nanos até a próxima ficha
+        long tryAcquire(long now, Limit limit) {
+            while (true) {
+                long current = tat.get();
+                long next = (current - now > 0 ? current : now) + limit.intervalNanos();
+                long excess = next - now - limit.burstNanos();
+                if (excess > 0) {
+                    throttled.increment();
+                    return excess;
+                }
+                if (tat.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        boolean isFull(long now) {
+            return tat.get() - now <= 0;
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+        String path = httpRequest.getRequestURI().substring(httpRequest.getContextPath().length());
+        if (!ENABLED || isExempt(path)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        // --- Taxa por cliente ---
+        String apiKey = httpRequest.getHeader("X-Api-Key");
+        boolean byKey = apiKey != null && API_KEYS.contains(apiKey.trim());
+        String client = byKey ? "key:" + apiKey.trim() : "ip:" + clientIp(httpRequest);
+        long now = System.nanoTime();
+        long waitNanos = bucket(client, now).tryAcquire(now, byKey ? KEY_LIMIT : IP_LIMIT);
+        if (waitNanos > 0) {
+            (byKey ? throttledByKey : throttledByIp).increment();
+            reject(httpResponse, 429, waitNanos, "Muitas requisições. Tente novamente em instantes.");
+            return;
+        }
+
+        // --- Concorrência no banco ---
+        int limit = daoLimit();
+        if (limit > 0 && daoInFlight.incrementAndGet() > limit) {
+            daoInFlight.decrementAndGet();
+            rejectedConcurrency.increment();
+            reject(httpResponse, HttpServletResponse.SC_SERVICE_UNAVAILABLE, TimeUnit.SECONDS.toNanos(1),
+                    "Servidor ocupado, tente novamente em instantes.");
+            return;
+        }
+        allowed.increment();
+        if (limit <= 0) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                daoInFlight.decrementAndGet();
+            }
+        };
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (httpRequest.isAsyncStarted()) {
+                // Resposta assíncrona (ApiServlet): a vaga só volta no fim
+                httpRequest.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        release.run();
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                        release.run();
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                        release.run();
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                release.run();
+            }
+        }
+    }
+
+    public static ThrottleStats getStats() {
+        List<ClientStats> top = new ArrayList<>();
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            long throttled = entry.getValue().throttled.sum();
+            if (throttled > 0) {
+                top.add(new ClientStats(describe(entry.getKey()), throttled));
+            }
+        }
+        top.sort(Comparator.comparingLong(ClientStats::throttled).reversed());
+        return new ThrottleStats(ENABLED, allowed.sum(), throttledByIp.sum(), throttledByKey.sum(),
+                rejectedConcurrency.sum(), daoInFlight.get(), Math.max(daoLimit, 0), buckets.size(),
+                top.size() > 20 ? top.subList(0, 20) : top);
+    }
+
+    // --- MÉTODOS AJUDANTES ---
+
+    private static boolean isExempt(String path) {
+        for (String prefix : EXEMPT) {
+            if (path.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String clientIp(HttpServletRequest req) {
+        if (TRUST_FORWARDED) {
+            // Atrás de proxy reverso: o primeiro endereço é o cliente original
+            String forwarded = req.getHeader("X-Forwarded-For");
+            if (forwarded != null && !forwarded.isBlank()) {
+                int comma = forwarded.indexOf(',');
+                return (comma < 0 ? forwarded : forwarded.substring(0, comma)).trim();
+            }
+        }
+        return req.getRemoteAddr();
+    }
+
+    private static Bucket bucket(String client, long now) {
+        Bucket bucket = buckets.get(client);
+        if (bucket != null) {
+            return bucket;
+        }
+        long last = lastSweep.get();
+        if (buckets.size() >= MAX_CLIENTS && now - last >= SWEEP_INTERVAL_NANOS && lastSweep.compareAndSet(last, now)) {
+            // Balde cheio é igual a um novo: descartar não muda nenhum limite
+            buckets.values().removeIf(b -> b.isFull(now));
+        }
+        return buckets.computeIfAbsent(client, c -> new Bucket(now));
+    }
+
+    private static int daoLimit() {
+        int limit = daoLimit;
+        if (limit < 0) {
+            limit = Env.getInt("DAO_MAX_CONCURRENCY", DatabaseConnection.getPoolStats().maxSize() * 4);
+            daoLimit = limit;
+        }
+        return limit;
+    }
+
+    private static Set<String> parseKeys(String value) {
+        Set<String> keys = new HashSet<>();
+        for (String part : value.split(",")) {
+            if (!part.isBlank()) {
+                keys.add(part.trim());
+            }
+        }
+        return Set.copyOf(keys);
+    }
+
+    // A API key não vai inteira para as estatísticas
+    private static String describe(String client) {
+        if (!client.startsWith("key:")) {
+            return client;
+        }
+        String key = client.substring(4);
+        return "key:" + (key.length() <= 4 ? "****" : key.substring(0, 4) + "****");
+    }
+
+    private static void reject(HttpServletResponse resp, int status, long waitNanos, String message) throws IOException {
+        long seconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        resp.setStatus(status);
+        resp.setHeader("Retry-After", Long.toString(seconds));
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.getWriter().print("{\"erro\": \"" + message + "\"}");
+    }
+}
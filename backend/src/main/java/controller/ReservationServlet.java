@@ -1,16 +1,14 @@
 package controller;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
 // Imports do Jackson (para JSON)
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
+import dao.DuplicateItemException;
 import dao.ReservationDAO;
 
 // Imports do Servlet (JAKARTA)
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
-import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import model.entities.Reservation;
@@ -19,17 +17,15 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.util.List;
 
-@WebServlet("/api/reservations/*")
-public class ReservationServlet extends HttpServlet {
+@WebServlet(urlPatterns = "/api/reservations/*", asyncSupported = true)
+public class ReservationServlet extends ApiServlet {
 
     private ObjectMapper mapper;
     private ReservationDAO reservationDAO;
 
     @Override
     public void init() throws ServletException {
-        this.mapper = new ObjectMapper();
-        this.mapper.registerModule(new JavaTimeModule()); 
-        this.mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.mapper = JsonCodecs.mapper(); // Compartilhado entre os servlets (JavaTimeModule etc.)
         this.reservationDAO = new ReservationDAO(); // DAO é inicializado
     }
 
@@ -37,10 +33,8 @@ public class ReservationServlet extends HttpServlet {
     // POST /api/reservation
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        String jsonBody = req.getReader().lines().reduce("", (a, b) -> a + b);
-
         try {
-            Reservation newReservation = mapper.readValue(jsonBody, Reservation.class);
+            Reservation newReservation = JsonBodyReader.read(req, Reservation.class);
 
             /* 
             // Validação (Barreira 1) - O Servlet protege o DAO
@@ -66,6 +60,9 @@ public class ReservationServlet extends HttpServlet {
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR); 
             resp.getWriter().print("{\"erro\": \"Erro de Banco de Dados: " + e.getMessage() + "\"}");
             e.printStackTrace();
+        } catch (JsonBodyReader.BodyTooLargeException e) {
+            resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            resp.getWriter().print("{\"erro\": \"" + e.getMessage() + "\"}");
         } catch (Exception e) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST); 
             resp.getWriter().print("{\"erro\": \"JSON inválido. " + e.getMessage() + "\"}");
@@ -85,9 +82,22 @@ public class ReservationServlet extends HttpServlet {
 
         try {
             if (pathInfo == null || pathInfo.equals("/")) {
-                // --- Rota 1: Listar Todos (/api/reservations) ---
-                List<Reservation> reservations = reservationDAO.getAll();
-                resp.getWriter().print(mapper.writeValueAsString(reservations));
+                if (JsonListing.isStreamRequest(req)) {
+                    // --- Rota 1b: Listar Todos em streaming (/api/reservations?stream=true) ---
+                    ConditionalGetFilter.addValidators(req, resp);
+                    JsonListing.writeStream(mapper, resp, reservationDAO::streamAll);
+                } else if (JsonListing.isPageRequest(req)) {
+                    // --- Rota 1c: Página por chave (/api/reservations?after=10&limit=50) ---
+                    int limit = JsonListing.limit(req);
+                    List<Reservation> page = reservationDAO.getPage(JsonListing.intAfter(req), limit);
+                    ConditionalGetFilter.addValidators(req, resp);
+                    JsonListing.writePage(mapper, resp, page, limit, Reservation::getCode);
+                } else {
+                    // --- Rota 1: Listar Todos (/api/reservations) ---
+                    List<Reservation> reservations = reservationDAO.getAll();
+                    ConditionalGetFilter.addValidators(req, resp);
+                    resp.getWriter().print(JsonCodecs.listWriter(Reservation.class).writeValueAsString(reservations));
+                }
             
             } else {
                 // --- Rota 2: Buscar Um por ID (/api/reservations/1) ---
@@ -102,6 +112,7 @@ public class ReservationServlet extends HttpServlet {
                     resp.getWriter().print("{\"erro\": \"Pagamento não encontrado\"}");
                 } else {
                     // Encontrou, retorna o produto
+                    ConditionalGetFilter.addValidators(req, resp);
                     resp.setStatus(HttpServletResponse.SC_OK); // 200
                     resp.getWriter().print(mapper.writeValueAsString(reservation));
                 }
@@ -132,9 +143,8 @@ public class ReservationServlet extends HttpServlet {
 
         try {
             int code = Integer.parseInt(pathInfo.substring(1));
-            String jsonBody = req.getReader().lines().reduce("", (a, b) -> a + b);
 
-            Reservation reservation = mapper.readValue(jsonBody, Reservation.class);
+            Reservation reservation = JsonBodyReader.read(req, Reservation.class);
                 // Ensure ID matches URL
                 reservation.setCode(code);
 
@@ -156,11 +166,19 @@ public class ReservationServlet extends HttpServlet {
         } catch (NumberFormatException e) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             resp.getWriter().print("{\"erro\": \"ID de produto inválido.\"}");
+        } catch (DuplicateItemException e) {
+            resp.setContentType("application/json");
+            resp.setCharacterEncoding("UTF-8");
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().print("{\"erro\": \"" + e.getMessage() + "\", \"productCode\": " + e.getProductCode() + "}");
         } /* catch (SQLException e) {
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             resp.getWriter().print("{\"erro\": \"Erro de Banco de Dados: " + e.getMessage() + "\"}");
             e.printStackTrace();*/
-        catch (Exception e) {
+        catch (JsonBodyReader.BodyTooLargeException e) {
+            resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            resp.getWriter().print("{\"erro\": \"" + e.getMessage() + "\"}");
+        } catch (Exception e) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             resp.getWriter().print("{\"erro\": \"JSON inválido. " + e.getMessage() + "\"}");
             e.printStackTrace();
@@ -1,41 +1,52 @@
 package controller;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.databind.ObjectReader;
 
+import dao.DuplicateItemException;
+import dao.InsufficientStockException;
 import dao.SaleDAO;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
-import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import model.entities.Sale;
+import util.Env;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-@WebServlet("/api/sales/*")
-public class SaleServlet extends HttpServlet {
+@WebServlet(urlPatterns = "/api/sales/*", asyncSupported = true)
+public class SaleServlet extends ApiServlet {
+
+    // Carga em lote (POST /api/sales/bulk): vendas por COPY e tamanho máximo do corpo NDJSON
+    private static final int BULK_BATCH_SIZE = Env.getInt("SALE_BULK_BATCH_SIZE", 1000);
+    private static final long BULK_MAX_BYTES = Env.getLong("SALE_BULK_MAX_BYTES", 100L * 1024 * 1024);
 
     private ObjectMapper mapper;
     private SaleDAO saleDAO;
 
     @Override
     public void init() throws ServletException {
-        this.mapper = new ObjectMapper();
-        this.mapper.registerModule(new JavaTimeModule()); 
-        this.mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.mapper = JsonCodecs.mapper(); // Compartilhado entre os servlets (JavaTimeModule etc.)
         this.saleDAO = new SaleDAO();
     }
 
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        String jsonBody = req.getReader().lines().reduce("", (a, b) -> a + b);
-
+        if ("/bulk".equals(req.getPathInfo())) {
+            doBulkPost(req, resp);
+            return;
+        }
         try {
-            Sale newSale = mapper.readValue(jsonBody, Sale.class);
+            Sale newSale = JsonBodyReader.read(req, Sale.class);
             
             saleDAO.create(newSale); 
             
@@ -46,10 +57,18 @@ public class SaleServlet extends HttpServlet {
             String jsonResposta = mapper.writeValueAsString(newSale);
             resp.getWriter().print(jsonResposta);
 
+        } catch (InsufficientStockException e) {
+            resp.setContentType("application/json");
+            resp.setCharacterEncoding("UTF-8");
+            resp.setStatus(HttpServletResponse.SC_CONFLICT);
+            resp.getWriter().print("{\"erro\": \"" + e.getMessage() + "\", \"productCode\": " + e.getProductCode() + "}");
         } catch (SQLException e) {
              resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR); 
              resp.getWriter().print("{\"erro\": \"Erro de Banco de Dados: " + e.getMessage() + "\"}");
              e.printStackTrace();
+        } catch (JsonBodyReader.BodyTooLargeException e) {
+            resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            resp.getWriter().print("{\"erro\": \"" + e.getMessage() + "\"}");
         } catch (Exception e) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST); 
             resp.getWriter().print("{\"erro\": \"JSON inválido. " + e.getMessage() + "\"}");
@@ -57,6 +76,120 @@ public class SaleServlet extends HttpServlet {
         }
     }
 
+    /**
+     * POST /api/sales/bulk: uma venda JSON por linha (NDJSON), lida em streaming.
+     * As vendas são gravadas via COPY em lotes de SALE_BULK_BATCH_SIZE com id gerado pelo
+     * servidor; a resposta traz, por linha, o id de cada venda gravada e o motivo de cada
+     * venda recusada. O id enviado pela barraca volta como clientId (só referência).
+     */
+    private void doBulkPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+
+        List<Map<String, Object>> created = new ArrayList<>();
+        List<Map<String, Object>> errors = new ArrayList<>();
+        List<Sale> batch = new ArrayList<>(BULK_BATCH_SIZE);
+        List<Integer> batchLines = new ArrayList<>(BULK_BATCH_SIZE);
+        int received = 0;
+        int inserted = 0;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                JsonBodyReader.open(req, BULK_MAX_BYTES), StandardCharsets.UTF_8))) {
+
+            ObjectReader saleReader = JsonCodecs.reader(Sale.class);
+            String line;
+            int lineNumber = 0;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                received++;
+                try {
+                    batch.add(saleReader.readValue(line));
+                    batchLines.add(lineNumber);
+                } catch (IOException e) {
+                    errors.add(bulkError(lineNumber, null, "JSON inválido. " + e.getMessage()));
+                }
+
+                if (batch.size() == BULK_BATCH_SIZE) {
+                    inserted += flushBulk(batch, batchLines, created, errors);
+                }
+            }
+            inserted += flushBulk(batch, batchLines, created, errors);
+
+        } catch (JsonBodyReader.BodyTooLargeException e) {
+            // Os lotes anteriores já foram gravados: o relatório diz até onde foi
+            errors.add(bulkError(null, null, e.getMessage()));
+            resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            resp.getWriter().print(mapper.writeValueAsString(bulkReport(received, inserted, created, errors)));
+            return;
+        }
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.getWriter().print(mapper.writeValueAsString(bulkReport(received, inserted, created, errors)));
+    }
+
+    // Grava o lote corrente e o esvazia; devolve quantas vendas entraram
+    private int flushBulk(List<Sale> batch, List<Integer> batchLines,
+                          List<Map<String, Object>> created, List<Map<String, Object>> errors) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        // createBulk troca o id das vendas gravadas pelo do servidor
+        Integer[] clientIds = new Integer[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            clientIds[i] = batch.get(i).getId() > 0 ? batch.get(i).getId() : null;
+        }
+        int inserted;
+        try {
+            Map<Integer, String> rejected = saleDAO.createBulk(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                String error = rejected.get(i);
+                if (error != null) {
+                    errors.add(bulkError(batchLines.get(i), clientIds[i], error));
+                } else {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("line", batchLines.get(i));
+                    row.put("clientId", clientIds[i]);
+                    row.put("id", batch.get(i).getId());
+                    created.add(row);
+                }
+            }
+            inserted = batch.size() - rejected.size();
+        } catch (SQLException e) {
+            // O COPY é tudo ou nada: o lote inteiro fica de fora
+            e.printStackTrace();
+            for (int i = 0; i < batch.size(); i++) {
+                errors.add(bulkError(batchLines.get(i), clientIds[i], "Lote recusado pelo banco: " + e.getMessage()));
+            }
+            inserted = 0;
+        }
+        batch.clear();
+        batchLines.clear();
+        return inserted;
+    }
+
+    private static Map<String, Object> bulkError(Integer line, Integer clientId, String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("line", line);
+        error.put("clientId", clientId);
+        error.put("erro", message);
+        return error;
+    }
+
+    private static Map<String, Object> bulkReport(int received, int inserted,
+                                                  List<Map<String, Object>> created, List<Map<String, Object>> errors) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("received", received);
+        report.put("inserted", inserted);
+        report.put("failed", received - inserted);
+        report.put("created", created);
+        report.put("errors", errors);
+        return report;
+    }
+
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String pathInfo = req.getPathInfo();
@@ -77,6 +210,7 @@ public class SaleServlet extends HttpServlet {
                     resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
                     resp.getWriter().print("{\"erro\": \"Venda não encontrada\"}");
                 } else {
+                    ConditionalGetFilter.addValidators(req, resp);
                     resp.setStatus(HttpServletResponse.SC_OK);
                     resp.getWriter().print(mapper.writeValueAsString(sale));
                 }
@@ -86,7 +220,8 @@ public class SaleServlet extends HttpServlet {
             // Caso 2: Filtro por Usuário (Histórico de Compras)
             if (userIdFilter != null) {
                 List<Sale> sales = saleDAO.getByUserId(userIdFilter);
-                resp.getWriter().print(mapper.writeValueAsString(sales));
+                ConditionalGetFilter.addValidators(req, resp);
+                resp.getWriter().print(JsonCodecs.listWriter(Sale.class).writeValueAsString(sales));
                 return;
             }
 
@@ -94,13 +229,31 @@ public class SaleServlet extends HttpServlet {
             if (tentIdFilter != null) {
                 int tentId = Integer.parseInt(tentIdFilter);
                 List<Sale> sales = saleDAO.getByTentId(tentId);
-                resp.getWriter().print(mapper.writeValueAsString(sales));
+                ConditionalGetFilter.addValidators(req, resp);
+                resp.getWriter().print(JsonCodecs.listWriter(Sale.class).writeValueAsString(sales));
+                return;
+            }
+
+            // Caso 4: Streaming de todas as vendas (/api/sales?stream=true)
+            if (JsonListing.isStreamRequest(req)) {
+                ConditionalGetFilter.addValidators(req, resp);
+                JsonListing.writeStream(mapper, resp, saleDAO::streamAll);
                 return;
             }
 
-            // Caso 4: Retorna TUDO (padrão)
+            // Caso 5: Página por chave (/api/sales?after=10&limit=50)
+            if (JsonListing.isPageRequest(req)) {
+                int limit = JsonListing.limit(req);
+                List<Sale> page = saleDAO.getPage(JsonListing.intAfter(req), limit);
+                ConditionalGetFilter.addValidators(req, resp);
+                JsonListing.writePage(mapper, resp, page, limit, Sale::getId);
+                return;
+            }
+
+            // Caso 6: Retorna TUDO (padrão)
             List<Sale> sales = saleDAO.getAll();
-            resp.getWriter().print(mapper.writeValueAsString(sales));
+            ConditionalGetFilter.addValidators(req, resp);
+            resp.getWriter().print(JsonCodecs.listWriter(Sale.class).writeValueAsString(sales));
 
         } catch (NumberFormatException e) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
@@ -123,8 +276,7 @@ public class SaleServlet extends HttpServlet {
 
         try {
             int id = Integer.parseInt(pathInfo.substring(1));
-            String jsonBody = req.getReader().lines().reduce("", (a, b) -> a + b);
-            Sale sale = mapper.readValue(jsonBody, Sale.class);
+            Sale sale = JsonBodyReader.read(req, Sale.class);
             sale.setId(id);
             saleDAO.update(sale);
             resp.setContentType("application/json");
@@ -134,10 +286,18 @@ public class SaleServlet extends HttpServlet {
         } catch (NumberFormatException e) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             resp.getWriter().print("{\"erro\": \"ID inválido\"}");
+        } catch (DuplicateItemException e) {
+            resp.setContentType("application/json");
+            resp.setCharacterEncoding("UTF-8");
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().print("{\"erro\": \"" + e.getMessage() + "\", \"productCode\": " + e.getProductCode() + "}");
         } catch (SQLException e) {
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             resp.getWriter().print("{\"erro\": \"Erro de Banco de Dados: " + e.getMessage() + "\"}");
             e.printStackTrace();
+        } catch (JsonBodyReader.BodyTooLargeException e) {
+            resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            resp.getWriter().print("{\"erro\": \"" + e.getMessage() + "\"}");
         } catch (Exception e) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             resp.getWriter().print("{\"erro\": \"JSON inválido. " + e.getMessage() + "\"}");
@@ -0,0 +1,72 @@
+package controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dao.SalesRollupDAO;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Map;
+
+// GET  /api/rollups/check   -> compara os resumos diários com venda/item_venda
+// POST /api/rollups/rebuild -> recalcula os resumos diários do zero
+@WebServlet(urlPatterns = "/api/rollups/*", asyncSupported = true)
+public class SalesRollupServlet extends ApiServlet {
+
+    private ObjectMapper mapper;
+    private SalesRollupDAO rollupDAO;
+
+    @Override
+    public void init() throws ServletException {
+        this.mapper = JsonCodecs.mapper();
+        this.rollupDAO = new SalesRollupDAO();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+
+        if (!"/check".equals(req.getPathInfo())) {
+            resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            resp.getWriter().print(mapper.writeValueAsString(Map.of("erro", "Rota não encontrada")));
+            return;
+        }
+
+        try {
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.getWriter().print(mapper.writeValueAsString(rollupDAO.check()));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            resp.getWriter().print(mapper.writeValueAsString(Map.of("erro", "Erro no banco de dados: " + e.getMessage())));
+        }
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+
+        if (!"/rebuild".equals(req.getPathInfo())) {
+            resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            resp.getWriter().print(mapper.writeValueAsString(Map.of("erro", "Rota não encontrada")));
+            return;
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            rollupDAO.rebuild();
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.getWriter().print(mapper.writeValueAsString(Map.of("rebuilt", true,
+                    "millis", System.currentTimeMillis() - start)));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            resp.getWriter().print(mapper.writeValueAsString(Map.of("erro", "Erro no banco de dados: " + e.getMessage())));
+        }
+    }
+}
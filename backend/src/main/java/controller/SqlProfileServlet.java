@@ -0,0 +1,75 @@
+package controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dao.SqlProfiler;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.Map;
+
+// GET  /api/admin/sql?sort=total&limit=50 -> statements por texto: execuções, p50/p99, tempo total, linhas
+// GET  /api/admin/sql/slow                -> últimas consultas lentas, com parâmetros mascarados
+// POST /api/admin/sql/reset               -> zera a tabela e o log de lentas
+@WebServlet(urlPatterns = {"/api/admin/sql", "/api/admin/sql/*"})
+public class SqlProfileServlet extends HttpServlet {
+
+    private static final int DEFAULT_LIMIT = 50;
+
+    private ObjectMapper mapper;
+
+    @Override
+    public void init() throws ServletException {
+        this.mapper = JsonCodecs.mapper();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        String pathInfo = req.getPathInfo();
+        SqlProfiler profiler = SqlProfiler.getInstance();
+
+        try {
+            if (pathInfo == null || pathInfo.equals("/")) {
+                String limitParam = req.getParameter("limit");
+                int limit = limitParam == null ? DEFAULT_LIMIT : Integer.parseInt(limitParam);
+                resp.setStatus(HttpServletResponse.SC_OK);
+                resp.getWriter().print(mapper.writeValueAsString(Map.of(
+                        "enabled", profiler.isEnabled(),
+                        "statements", profiler.getStatements(req.getParameter("sort"), Math.max(1, limit)))));
+            } else if (pathInfo.equals("/slow")) {
+                resp.setStatus(HttpServletResponse.SC_OK);
+                resp.getWriter().print(mapper.writeValueAsString(profiler.getSlowQueries()));
+            } else {
+                resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                resp.getWriter().print(mapper.writeValueAsString(Map.of("erro", "Rota não encontrada")));
+            }
+        } catch (NumberFormatException e) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().print(mapper.writeValueAsString(Map.of("erro", "Parâmetro limit inválido")));
+        } catch (IllegalArgumentException e) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().print(mapper.writeValueAsString(Map.of("erro", e.getMessage())));
+        }
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+
+        if (!"/reset".equals(req.getPathInfo())) {
+            resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            resp.getWriter().print(mapper.writeValueAsString(Map.of("erro", "Rota não encontrada")));
+            return;
+        }
+
+        SqlProfiler.getInstance().reset();
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.getWriter().print(mapper.writeValueAsString(Map.of("reset", true)));
+    }
+}
@@ -0,0 +1,63 @@
+package controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dao.StockLedger;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Map;
+
+// GET  /api/stock/ledger         -> tamanho da fila de write-behind, atraso e resultado dos flushes
+// POST /api/stock/ledger/rebuild -> grava o pendente e recarrega o ledger da tabela estoque
+@WebServlet("/api/stock/ledger/*")
+public class StockLedgerServlet extends HttpServlet {
+
+    private ObjectMapper mapper;
+
+    @Override
+    public void init() throws ServletException {
+        this.mapper = JsonCodecs.mapper();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.getWriter().print(mapper.writeValueAsString(StockLedger.getInstance().getStats()));
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+
+        if (!"/rebuild".equals(req.getPathInfo())) {
+            resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            resp.getWriter().print(mapper.writeValueAsString(Map.of("erro", "Rota não encontrada")));
+            return;
+        }
+
+        StockLedger ledger = StockLedger.getInstance();
+        if (!ledger.isEnabled()) {
+            resp.setStatus(HttpServletResponse.SC_CONFLICT);
+            resp.getWriter().print(mapper.writeValueAsString(Map.of("erro", "Ledger de estoque desligado (STOCK_LEDGER_ENABLED)")));
+            return;
+        }
+
+        try {
+            ledger.rebuild(); // Grava as baixas pendentes antes de reler, com as novas baixas em espera
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.getWriter().print(mapper.writeValueAsString(ledger.getStats()));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            resp.getWriter().print(mapper.writeValueAsString(Map.of("erro", "Erro no banco de dados: " + e.getMessage())));
+        }
+    }
+}
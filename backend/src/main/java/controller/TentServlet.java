@@ -1,53 +1,54 @@
 package controller;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
 // Imports do Jackson (para JSON)
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
+import dao.BlobStore;
 import dao.TentDAO;
+import dao.TentStatsDAO;
 // Imports do Servlet (JAKARTA)
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
-import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import model.entities.Tent;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
 
-@WebServlet("/api/tents/*")
-public class TentServlet extends HttpServlet {
+@WebServlet(urlPatterns = "/api/tents/*", asyncSupported = true)
+public class TentServlet extends ApiServlet {
 
     private ObjectMapper mapper;
     private TentDAO tentDAO;
+    private TentStatsDAO tentStatsDAO;
+
+    // Intervalo máximo de /api/tents/{id}/stats e o padrão quando ?from= não vem
+    private static final int STATS_MAX_DAYS = 366;
+    private static final int STATS_DEFAULT_DAYS = 30;
 
     @Override // 2. Assinatura correta do init()
     public void init() throws ServletException {
         
-        // 3. Crie e configure o mapper AQUI
-        this.mapper = new ObjectMapper();
-        
-        // Ensina o mapper a ler/escrever java.time.LocalDate
-        this.mapper.registerModule(new JavaTimeModule()); 
-        
-        // Diz ao mapper para não falhar se o JSON tiver campos a mais
-        this.mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        // 3. Mapper compartilhado (JavaTimeModule, ignora campos a mais) vem do JsonCodecs
+        this.mapper = JsonCodecs.mapper();
 
         // 4. REMOVEMOS A LINHA DO ERRO DAQUI
         
         // Inicialize seu DAO
         this.tentDAO = new TentDAO();
+        this.tentStatsDAO = new TentStatsDAO();
     }
 
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        String jsonBody = req.getReader().lines().reduce("", (a, b) -> a + b);
-
         try {
             // 5. Agora o mapper.readValue usará o mapper configurado
-            Tent newTent = mapper.readValue(jsonBody, Tent.class);
+            Tent newTent = JsonBodyReader.read(req, Tent.class);
             
             // --- LÓGICA DO BANCO DE DADOS (VAI SER O PRÓXIMO PASSO) ---
             
@@ -70,6 +71,9 @@ public class TentServlet extends HttpServlet {
              resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR); 
              resp.getWriter().print("{\"erro\": \"Erro de Banco de Dados: " + e.getMessage() + "\"}");
              e.printStackTrace();
+        } catch (JsonBodyReader.BodyTooLargeException e) {
+            resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            resp.getWriter().print("{\"erro\": \"" + e.getMessage() + "\"}");
         } catch (Exception e) {
             // (Pega erros de JSON mal formatado, como o formato da data)
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST); 
@@ -81,27 +85,57 @@ public class TentServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String pathInfo = req.getPathInfo();
+        if (pathInfo != null && pathInfo.endsWith("/license")) {
+            handleLicense(req, resp, pathInfo);
+            return;
+        }
         resp.setContentType("application/json");
         resp.setCharacterEncoding("UTF-8");
 
         try {
+            // Painel da barraca: /api/tents/{id}/stats?from=2025-01-01&to=2025-01-31
+            if (pathInfo != null && pathInfo.endsWith("/stats")) {
+                int id = Integer.parseInt(pathInfo.substring(1, pathInfo.length() - "/stats".length()));
+                writeStats(req, resp, id);
+                return;
+            }
+
+            // ?fields=code,name → só essas colunas; a licença (binária) só vem se pedida
+            Set<String> fields = JsonFields.parse(req, TentDAO.FIELDS);
+            Set<String> output = JsonFields.output(TentDAO.FIELDS, fields);
+
             if (pathInfo == null || pathInfo.equals("/")) {
-                java.util.List<model.entities.Tent> tents = tentDAO.getAll();
-                resp.getWriter().print(mapper.writeValueAsString(tents));
+                if (JsonListing.isStreamRequest(req)) {
+                    ConditionalGetFilter.addValidators(req, resp);
+                    JsonListing.<Tent>writeStream(mapper, resp, handler -> tentDAO.streamAll(fields, handler), output);
+                } else if (JsonListing.isPageRequest(req)) {
+                    int limit = JsonListing.limit(req);
+                    java.util.List<model.entities.Tent> page = tentDAO.getPage(JsonListing.intAfter(req), limit, fields);
+                    ConditionalGetFilter.addValidators(req, resp);
+                    JsonListing.writePage(mapper, resp, page, limit, Tent::getCode, output);
+                } else {
+                    java.util.List<model.entities.Tent> tents = tentDAO.getAll(fields);
+                    ConditionalGetFilter.addValidators(req, resp);
+                    resp.getWriter().print(mapper.writeValueAsString(JsonFields.trim(tents, output)));
+                }
             } else {
                 int id = Integer.parseInt(pathInfo.substring(1));
-                model.entities.Tent tent = tentDAO.getById(id);
+                model.entities.Tent tent = tentDAO.getById(id, fields);
                 if (tent == null) {
                     resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
                     resp.getWriter().print("{\"erro\": \"Barraca não encontrada\"}");
                 } else {
+                    ConditionalGetFilter.addValidators(req, resp);
                     resp.setStatus(HttpServletResponse.SC_OK);
-                    resp.getWriter().print(mapper.writeValueAsString(tent));
+                    resp.getWriter().print(mapper.writeValueAsString(JsonFields.trim(tent, output)));
                 }
             }
         } catch (NumberFormatException e) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             resp.getWriter().print("{\"erro\": \"ID inválido\"}");
+        } catch (IllegalArgumentException e) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().print("{\"erro\": \"" + e.getMessage() + "\"}");
         } catch (SQLException e) {
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             resp.getWriter().print("{\"erro\": \"Erro de Banco de Dados: " + e.getMessage() + "\"}");
@@ -109,9 +143,57 @@ public class TentServlet extends HttpServlet {
         }
     }
 
+    // Receita, unidades por produto e totais diários, somados no banco
+    private void writeStats(HttpServletRequest req, HttpServletResponse resp, int id) throws IOException, SQLException {
+        LocalDate to;
+        LocalDate from;
+        try {
+            String toParam = req.getParameter("to");
+            String fromParam = req.getParameter("from");
+            to = toParam == null ? TentStatsDAO.today() : LocalDate.parse(toParam);
+            from = fromParam == null ? to.minusDays(STATS_DEFAULT_DAYS - 1) : LocalDate.parse(fromParam);
+        } catch (DateTimeParseException e) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().print("{\"erro\": \"Data inválida (use AAAA-MM-DD)\"}");
+            return;
+        }
+        if (from.isAfter(to) || ChronoUnit.DAYS.between(from, to) >= STATS_MAX_DAYS) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().print("{\"erro\": \"Intervalo inválido: from <= to e no máximo " + STATS_MAX_DAYS + " dias\"}");
+            return;
+        }
+
+        ConditionalGetFilter.addValidators(req, resp);
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.getWriter().print(mapper.writeValueAsString(tentStatsDAO.getStats(id, from, to)));
+    }
+
+    // Licença da barraca como arquivo: GET baixa (com Range), PUT grava o corpo cru
+    private void handleLicense(HttpServletRequest req, HttpServletResponse resp, String pathInfo) throws IOException {
+        try {
+            int id = Integer.parseInt(BlobResponses.key(pathInfo, "/license"));
+            if ("PUT".equals(req.getMethod())) {
+                BlobResponses.put(req, resp, BlobStore.Blob.TENT_LICENSE, id);
+            } else {
+                BlobResponses.get(req, resp, BlobStore.Blob.TENT_LICENSE, id);
+            }
+        } catch (NumberFormatException e) {
+            BlobResponses.writeError(resp, HttpServletResponse.SC_BAD_REQUEST, "ID inválido");
+        } catch (JsonBodyReader.BodyTooLargeException e) {
+            BlobResponses.writeError(resp, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, e.getMessage());
+        } catch (SQLException e) {
+            BlobResponses.writeError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Erro de Banco de Dados: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
     @Override
     protected void doPut(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String pathInfo = req.getPathInfo();
+        if (pathInfo != null && pathInfo.endsWith("/license")) {
+            handleLicense(req, resp, pathInfo);
+            return;
+        }
         if (pathInfo == null || pathInfo.equals("/")) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             resp.getWriter().print("{\"erro\": \"É preciso informar o ID da barraca na URL para atualizar.\"}");
@@ -120,8 +202,7 @@ public class TentServlet extends HttpServlet {
 
         try {
             int id = Integer.parseInt(pathInfo.substring(1));
-            String jsonBody = req.getReader().lines().reduce("", (a, b) -> a + b);
-            model.entities.Tent tent = mapper.readValue(jsonBody, model.entities.Tent.class);
+            model.entities.Tent tent = JsonBodyReader.read(req, model.entities.Tent.class);
             tent.setCode(id);
             tentDAO.update(tent);
             resp.setContentType("application/json");
@@ -135,6 +216,9 @@ public class TentServlet extends HttpServlet {
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             resp.getWriter().print("{\"erro\": \"Erro de Banco de Dados: " + e.getMessage() + "\"}");
             e.printStackTrace();
+        } catch (JsonBodyReader.BodyTooLargeException e) {
+            resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            resp.getWriter().print("{\"erro\": \"" + e.getMessage() + "\"}");
         } catch (Exception e) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             resp.getWriter().print("{\"erro\": \"JSON inválido. " + e.getMessage() + "\"}");
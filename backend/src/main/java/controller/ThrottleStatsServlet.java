@@ -0,0 +1,30 @@
+package controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+// GET /api/throttle/stats -> requisições liberadas, 429 por IP/API key, 503 por concorrência e clientes mais limitados
+@WebServlet("/api/throttle/stats")
+public class ThrottleStatsServlet extends HttpServlet {
+
+    private ObjectMapper mapper;
+
+    @Override
+    public void init() throws ServletException {
+        this.mapper = JsonCodecs.mapper();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.getWriter().print(mapper.writeValueAsString(RateLimitFilter.getStats()));
+    }
+}
@@ -3,37 +3,34 @@ package controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
-import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import model.entities.User;
 
+import dao.BlobStore;
 import dao.UserDAO; // 1. IMPORTE O SEU NOVO DAO
 
 import java.io.IOException;
 import java.sql.SQLException; // 2. IMPORTE A EXCEÇÃO DO SQL
+import java.util.Set;
 
-@WebServlet(urlPatterns = {"/api/usuarios", "/api/usuarios/*"}) 
-public class UserServlet extends HttpServlet {
+@WebServlet(urlPatterns = {"/api/usuarios", "/api/usuarios/*"}, asyncSupported = true) 
+public class UserServlet extends ApiServlet {
 
     private ObjectMapper mapper;
     private UserDAO userDAO; // 3. CRIE UMA INSTÂNCIA DO DAO
 
     @Override
     public void init() throws ServletException {
-        this.mapper = new ObjectMapper();
-        this.mapper.configure(com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.mapper = JsonCodecs.mapper(); // Compartilhado entre os servlets (JavaTimeModule etc.)
         // Inicialize o DAO uma vez quando o servlet for criado
         this.userDAO = new UserDAO(); 
     }
 
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        
-        String jsonBody = req.getReader().lines().reduce("", (a, b) -> a + b);
-
         try {
-            User newUser = mapper.readValue(jsonBody, User.class);
+            User newUser = JsonBodyReader.read(req, User.class);
 
             // --- AQUI É A MUDANÇA ---
             
@@ -59,6 +56,9 @@ public class UserServlet extends HttpServlet {
             resp.getWriter().print("{\"erro\": \"Erro ao salvar no banco de dados: " + e.getMessage() + "\"}");
             e.printStackTrace(); // Mostra o erro no log do Tomcat
         
+        } catch (JsonBodyReader.BodyTooLargeException e) {
+            resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            resp.getWriter().print("{\"erro\": \"" + e.getMessage() + "\"}");
         } catch (Exception e) {
             // (Isso pega erros de JSON mal formatado)
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST); // Erro 400
@@ -69,26 +69,58 @@ public class UserServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String pathInfo = req.getPathInfo();
+        if (pathInfo != null && pathInfo.endsWith("/photo")) {
+            handlePhoto(req, resp, pathInfo);
+            return;
+        }
         resp.setContentType("application/json");
         resp.setCharacterEncoding("UTF-8");
 
         try {
+            // ?fields=cpf,nome → só essas colunas
+            Set<String> fields = JsonFields.parse(req, UserDAO.FIELDS);
+            Set<String> output = JsonFields.output(UserDAO.FIELDS, fields);
+
             if (pathInfo == null || pathInfo.equals("/")) {
-                // List all users
-                java.util.List<model.entities.User> users = userDAO.getAll();
-                resp.getWriter().print(mapper.writeValueAsString(users));
+                if (JsonListing.isStreamRequest(req)) {
+                    // Stream all users (?stream=true)
+                    ConditionalGetFilter.addValidators(req, resp);
+                    JsonListing.<User>writeStream(mapper, resp, handler -> userDAO.streamAll(fields, handler), output);
+                } else if (JsonListing.isPageRequest(req)) {
+                    // Keyset page by CPF (?after=&limit=)
+                    int limit = JsonListing.limit(req);
+                    java.util.List<model.entities.User> page = userDAO.getPage(JsonListing.stringAfter(req), limit, fields);
+                    ConditionalGetFilter.addValidators(req, resp);
+                    JsonListing.writePage(mapper, resp, page, limit, User::getCpf, output);
+                } else {
+                    // List all users
+                    java.util.List<model.entities.User> users = userDAO.getAll(fields);
+                    ConditionalGetFilter.addValidators(req, resp);
+                    if (output == null) {
+                        resp.getWriter().print(JsonCodecs.listWriter(User.class).writeValueAsString(users));
+                    } else {
+                        resp.getWriter().print(mapper.writeValueAsString(JsonFields.trim(users, output)));
+                    }
+                }
             } else {
                 // GET /api/usuarios/{cpf}
                 String cpf = pathInfo.substring(1);
-                model.entities.User user = userDAO.getByCpf(cpf);
+                model.entities.User user = userDAO.getByCpf(cpf, fields);
                 if (user == null) {
                     resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
                     resp.getWriter().print("{\"erro\": \"Usuário não encontrado\"}");
                 } else {
+                    ConditionalGetFilter.addValidators(req, resp);
                     resp.setStatus(HttpServletResponse.SC_OK);
-                    resp.getWriter().print(mapper.writeValueAsString(user));
+                    resp.getWriter().print(mapper.writeValueAsString(JsonFields.trim(user, output)));
                 }
             }
+        } catch (NumberFormatException e) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().print("{\"erro\": \"Parâmetro limit inválido\"}");
+        } catch (IllegalArgumentException e) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().print("{\"erro\": \"" + e.getMessage() + "\"}");
         } catch (SQLException e) {
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             resp.getWriter().print("{\"erro\": \"Erro de Banco de Dados: " + e.getMessage() + "\"}");
@@ -96,9 +128,30 @@ public class UserServlet extends HttpServlet {
         }
     }
 
+    // Foto de perfil: GET /api/usuarios/{cpf}/photo (com Range), PUT com o arquivo cru no corpo
+    private void handlePhoto(HttpServletRequest req, HttpServletResponse resp, String pathInfo) throws IOException {
+        try {
+            String cpf = BlobResponses.key(pathInfo, "/photo");
+            if ("PUT".equals(req.getMethod())) {
+                BlobResponses.put(req, resp, BlobStore.Blob.USER_PHOTO, cpf);
+            } else {
+                BlobResponses.get(req, resp, BlobStore.Blob.USER_PHOTO, cpf);
+            }
+        } catch (JsonBodyReader.BodyTooLargeException e) {
+            BlobResponses.writeError(resp, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, e.getMessage());
+        } catch (SQLException e) {
+            BlobResponses.writeError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Erro de Banco de Dados: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
     @Override
     protected void doPut(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String pathInfo = req.getPathInfo();
+        if (pathInfo != null && pathInfo.endsWith("/photo")) {
+            handlePhoto(req, resp, pathInfo);
+            return;
+        }
         if (pathInfo == null || pathInfo.equals("/")) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             resp.getWriter().print("{\"erro\": \"É preciso informar o CPF do usuário na URL para atualizar.\"}");
@@ -107,8 +160,7 @@ public class UserServlet extends HttpServlet {
 
         try {
             String cpf = pathInfo.substring(1);
-            String jsonBody = req.getReader().lines().reduce("", (a, b) -> a + b);
-            model.entities.User user = mapper.readValue(jsonBody, model.entities.User.class);
+            model.entities.User user = JsonBodyReader.read(req, model.entities.User.class);
             user.setCpf(cpf); // ensure path wins
             userDAO.update(user);
             resp.setContentType("application/json");
@@ -119,6 +171,9 @@ public class UserServlet extends HttpServlet {
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             resp.getWriter().print("{\"erro\": \"Erro de Banco de Dados: " + e.getMessage() + "\"}");
             e.printStackTrace();
+        } catch (JsonBodyReader.BodyTooLargeException e) {
+            resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            resp.getWriter().print("{\"erro\": \"" + e.getMessage() + "\"}");
         } catch (Exception e) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             resp.getWriter().print("{\"erro\": \"JSON inválido: " + e.getMessage() + "\"}");
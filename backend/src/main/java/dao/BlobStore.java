@@ -0,0 +1,228 @@
+package dao;
+
+import util.Env;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Leitura e gravação em streaming das colunas binárias (licença da barraca, imagem do
+ * produto, foto do usuário), sem montar o arquivo inteiro num byte[].
+ *
+ * O PostgreSQL devolve um BYTEA inteiro de uma vez (getBinaryStream só embrulha um array
+ * já carregado), então a leitura é feita em pedaços de BLOB_CHUNK_BYTES (padrão 256 KB)
+ * com substring(), todos na mesma transação REPEATABLE READ: tamanho, hash e bytes vêm
+ * do mesmo instante mesmo se houver upload no meio. Os pedaços vão para um arquivo
+ * temporário (ou para a memória, se a faixa cabe num pedaço) e só depois do commit, com a
+ * conexão de volta ao pool, seguem para o cliente: a conexão fica presa pelo tempo de
+ * ler do banco, não pelo tempo que o cliente leva para baixar.
+ * Na gravação o driver envia o InputStream direto para o banco.
+ */
+public final class BlobStore {
+
+    private static final int CHUNK_BYTES = Env.getInt("BLOB_CHUNK_BYTES", 256 * 1024);
+    private static final int HEAD_BYTES = 16;
+
+    /**
+     * Colunas binárias servidas pelos endpoints de arquivo.
+     */
+    public enum Blob {
+        TENT_LICENSE("barraca", "licensa_usuario", "cod_barraca", TableVersions.BARRACA),
+        PRODUCT_IMAGE("produto", "imagem_produto", "cod_produto", TableVersions.PRODUTO),
+        USER_PHOTO("usuario", "foto_perfil", "cpf_usuario", TableVersions.USUARIO);
+
+        private final String table;
+        private final String column;
+        private final String keyColumn;
+        private final String version;
+
+        Blob(String table, String column, String keyColumn, String version) {
+            this.table = table;
+            this.column = column;
+            this.keyColumn = keyColumn;
+            this.version = version;
+        }
+
+        String version() {
+            return version;
+        }
+    }
+
+    /**
+     * Tamanho, MD5 (hex, calculado no banco) e primeiros bytes (para detectar o tipo).
+     */
+    public record BlobInfo(long length, String md5, byte[] head) {
+    }
+
+    /**
+     * Decide o que enviar depois de conhecer o BlobInfo (status, cabeçalhos, faixa).
+     */
+    @FunctionalInterface
+    public interface BlobSink {
+        /**
+         * Devolve a faixa a enviar, ou null para não enviar bytes (ex.: 304, 416).
+         */
+        Range open(BlobInfo info) throws IOException;
+    }
+
+    /**
+     * Faixa [start, end] (inclusiva) e o destino dos bytes.
+     */
+    public record Range(long start, long end, OutputStream out) {
+    }
+
+    private BlobStore() {}
+
+    /**
+     * Lê o arquivo. Devolve false se a linha não existe ou a coluna está vazia (NULL ou 0 bytes).
+     */
+    public static boolean read(Blob blob, Object key, BlobSink sink) throws SQLException, IOException {
+        String sqlInfo = "SELECT octet_length(" + blob.column + "), md5(" + blob.column + "), " +
+                         "substring(" + blob.column + " FROM 1 FOR " + HEAD_BYTES + ") " +
+                         "FROM public." + blob.table + " WHERE " + blob.keyColumn + " = ?";
+        String sqlChunk = "SELECT substring(" + blob.column + " FROM ? FOR ?) " +
+                          "FROM public." + blob.table + " WHERE " + blob.keyColumn + " = ?";
+
+        Connection conn = null;
+        Range range = null;
+        Spool spool = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+
+            BlobInfo info;
+            try (PreparedStatement stmt = conn.prepareStatement(sqlInfo)) {
+                stmt.setObject(1, key);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next() || rs.getLong(1) == 0) {
+                        conn.rollback(); // Fecha a transação: o isolamento só volta fora dela
+                        return false;
+                    }
+                    info = new BlobInfo(rs.getLong(1), rs.getString(2), rs.getBytes(3));
+                }
+            }
+
+            range = sink.open(info);
+            if (range != null) {
+                spool = new Spool(range.end() - range.start() + 1);
+                try (PreparedStatement stmt = conn.prepareStatement(sqlChunk)) {
+                    stmt.setObject(3, key);
+                    // substring() do SQL começa em 1 e só aceita int (um BYTEA tem no máximo 1 GB)
+                    for (long pos = range.start(); pos <= range.end(); pos += CHUNK_BYTES) {
+                        int size = (int) Math.min(CHUNK_BYTES, range.end() - pos + 1);
+                        stmt.setInt(1, Math.toIntExact(pos + 1));
+                        stmt.setInt(2, size);
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            if (!rs.next()) {
+                                throw new SQLException("Linha removida durante a leitura do arquivo.");
+                            }
+                            spool.write(rs.getBytes(1));
+                        }
+                    }
+                }
+            }
+            conn.commit();
+
+        } catch (SQLException | IOException | RuntimeException e) {
+            if (conn != null) conn.rollback();
+            if (spool != null) spool.close();
+            throw e;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+                    conn.setAutoCommit(true);
+                } finally {
+                    conn.close(); // Devolve ao pool mesmo se o reset falhar
+                }
+            }
+        }
+
+        // Conexão já devolvida: o cliente lento (ou que desconecta) não segura o pool
+        if (spool != null) {
+            try {
+                spool.copyTo(range.out());
+            } finally {
+                spool.close();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Grava o arquivo a partir do corpo da requisição (length = -1 se desconhecido).
+     * Devolve false se a linha não existe.
+     */
+    public static boolean write(Blob blob, Object key, InputStream in, long length) throws SQLException {
+        String sql = "UPDATE public." + blob.table + " SET " + blob.column + " = ? WHERE " + blob.keyColumn + " = ?";
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            if (length >= 0) {
+                stmt.setBinaryStream(1, in, length);
+            } else {
+                stmt.setBinaryStream(1, in); // O driver guarda em arquivo temporário o que passar de 50 KB
+            }
+            stmt.setObject(2, key);
+            return stmt.executeUpdate() == 1;
+        } finally {
+            TableVersions.bump(blob.version);
+        }
+    }
+
+    // --- MÉTODOS AJUDANTES ---
+
+    /**
+     * Faixa lida do banco, guardada até a conexão ser devolvida: em memória até um pedaço,
+     * acima disso num arquivo temporário apagado no close().
+     */
+    private static final class Spool implements Closeable {
+        private final ByteArrayOutputStream memory;
+        private final Path file;
+        private final OutputStream out;
+
+        Spool(long length) throws IOException {
+            if (length <= CHUNK_BYTES) {
+                memory = new ByteArrayOutputStream((int) length);
+                file = null;
+                out = memory;
+            } else {
+                memory = null;
+                file = Files.createTempFile("blob-", ".part");
+                out = Files.newOutputStream(file);
+            }
+        }
+
+        void write(byte[] bytes) throws IOException {
+            out.write(bytes);
+        }
+
+        void copyTo(OutputStream target) throws IOException {
+            if (memory != null) {
+                memory.writeTo(target);
+                return;
+            }
+            out.close();
+            Files.copy(file, target);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (file != null) {
+                out.close();
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
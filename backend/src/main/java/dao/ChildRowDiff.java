@@ -0,0 +1,54 @@
+package dao;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Diferença entre os itens gravados de uma venda/reserva e os itens enviados no update,
+ * pelo código do produto (que, junto com o pai, é a chave de item_venda e item_reserva).
+ * O update só grava o que mudou: editar um item de uma venda de 100 itens é um UPDATE,
+ * e não 100 DELETEs seguidos de 100 INSERTs.
+ */
+record ChildRowDiff<T>(List<T> inserted, List<T> changed, List<T> removed) {
+
+    /**
+     * sameValues compara quantidade e preço de duas versões do mesmo produto.
+     * Produto repetido nos itens novos é recusado com DuplicateItemException (violaria a
+     * chave primária).
+     */
+    static <T> ChildRowDiff<T> of(List<T> previous, List<T> next, ToIntFunction<T> productCode,
+                                  BiPredicate<T, T> sameValues) throws SQLException {
+        Map<Integer, T> stored = new HashMap<>();
+        for (T item : previous) {
+            stored.put(productCode.applyAsInt(item), item);
+        }
+
+        List<T> inserted = new ArrayList<>();
+        List<T> changed = new ArrayList<>();
+        Map<Integer, T> seen = new HashMap<>();
+        for (T item : next) {
+            int code = productCode.applyAsInt(item);
+            if (seen.put(code, item) != null) {
+                throw new DuplicateItemException(code);
+            }
+            T before = stored.remove(code);
+            if (before == null) {
+                inserted.add(item);
+            } else if (!sameValues.test(before, item)) {
+                changed.add(item);
+            }
+        }
+        return new ChildRowDiff<>(inserted, changed, new ArrayList<>(stored.values()));
+    }
+
+    // 10.0 e 10.00 são o mesmo preço; null só é igual a null
+    static boolean sameAmount(BigDecimal a, BigDecimal b) {
+        return a == null ? b == null : b != null && a.compareTo(b) == 0;
+    }
+}
@@ -0,0 +1,529 @@
+package dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool de conexões JDBC limitado (mínimo/máximo), usado por trás do DatabaseConnection.
+ *
+ * - Cada getConnection() recebe um proxy: chamar close() devolve a conexão ao pool
+ *   em vez de fechar o socket com o PostgreSQL (os DAOs continuam iguais).
+ * - A conexão é validada (isValid) ao ser emprestada. Na devolução, transação aberta é
+ *   desfeita e isolamento/read-only alterados voltam ao padrão da conexão.
+ * - Conexões emprestadas por mais tempo que o limite de vazamento são reportadas no log.
+ * - Tempo de espera por uma conexão é medido (média, máximo e timeouts).
+ * - Os statements criados pela conexão são medidos (TimedStatement → util.Metrics).
+ * - prepareStatement(sql) reaproveita o statement já preparado na mesma conexão física
+ *   (LRU de statementCacheSize por conexão; 0 desliga): close() no DAO devolve o statement
+ *   ao cache, e o driver passa a usar o plano preparado no servidor depois de prepareThreshold
+ *   execuções, mesmo entre empréstimos diferentes.
+ */
+public class ConnectionPool {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final long leakThresholdMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    // Conexões físicas livres (LIFO: a mais recente tende a estar "quente")
+    private final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+    // Uma licença por conexão que pode estar emprestada ao mesmo tempo
+    private final Semaphore permits;
+    // Empréstimos ativos, usados na detecção de vazamentos
+    private final Map<Connection, Lease> leases = new ConcurrentHashMap<>();
+    // Statements preparados de cada conexão física, reaproveitados entre empréstimos
+    private final Map<Connection, StatementCache> statementCaches = new ConcurrentHashMap<>();
+
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder waitNanosTotal = new LongAdder();
+    private final AtomicLong waitNanosMax = new AtomicLong();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder leakCount = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    // Isolamento padrão das conexões novas (lido da primeira aberta)
+    private volatile int defaultIsolation = -1;
+
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                          long maxWaitMillis, long leakThresholdMillis, int validationTimeoutSeconds,
+                          int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Tamanho de pool inválido: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = Math.max(0, statementCacheSize);
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        this.housekeeper.scheduleWithFixedDelay(this::housekeeping, 5, 5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Empresta uma conexão. Espera no máximo maxWaitMillis quando o pool está cheio.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Pool de conexões encerrado.");
+        }
+
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrompido aguardando conexão do pool.", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        long waited = System.nanoTime() - start;
+        recordWait(waited);
+
+        if (!acquired) {
+            timeoutCount.increment();
+            throw new SQLException("Timeout de " + maxWaitMillis + " ms aguardando conexão do pool (máximo "
+                    + maxSize + " conexões em uso).");
+        }
+
+        try {
+            Connection physical = takeValidConnection();
+            borrowCount.increment();
+            Connection proxy = wrap(physical);
+            leases.put(physical, new Lease(System.currentTimeMillis(), Thread.currentThread().getName(),
+                    leakThresholdMillis > 0 ? new Throwable("Conexão emprestada aqui") : null));
+            return proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Fecha todas as conexões livres e impede novos empréstimos.
+     * Conexões ainda emprestadas são fechadas quando forem devolvidas.
+     */
+    public void shutdown() {
+        closed = true;
+        housekeeper.shutdownNow();
+        Connection c;
+        while ((c = idle.pollFirst()) != null) {
+            closePhysical(c);
+        }
+    }
+
+    public PoolStats getStats() {
+        long borrows = borrowCount.sum();
+        int idleCount = idle.size();
+        return new PoolStats(
+                leases.size(),
+                idleCount,
+                waiting.get(),
+                totalConnections.get(),
+                minSize,
+                maxSize,
+                borrows,
+                timeoutCount.sum(),
+                leakCount.sum(),
+                validationFailures.sum(),
+                borrows == 0 ? 0.0 : waitNanosTotal.sum() / (double) borrows / 1_000_000.0,
+                waitNanosMax.get() / 1_000_000.0,
+                statementCacheHits.sum(),
+                statementCacheMisses.sum());
+    }
+
+    /**
+     * Retrato do pool no momento da chamada (servido em /api/pool/stats).
+     */
+    public record PoolStats(int active, int idle, int waiting, int total, int minSize, int maxSize,
+                            long borrows, long timeouts, long leaksDetected, long validationFailures,
+                            double avgWaitMillis, double maxWaitMillis,
+                            long statementCacheHits, long statementCacheMisses) {
+    }
+
+    // --- MÉTODOS AJUDANTES ---
+
+    private Connection takeValidConnection() throws SQLException {
+        Connection c;
+        while ((c = idle.pollFirst()) != null) {
+            if (isUsable(c)) {
+                return c;
+            }
+            validationFailures.increment();
+            closePhysical(c);
+        }
+        return openPhysical();
+    }
+
+    private boolean isUsable(Connection c) {
+        try {
+            return !c.isClosed() && c.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private Connection openPhysical() throws SQLException {
+        Connection c = DriverManager.getConnection(url, user, password);
+        totalConnections.incrementAndGet();
+        if (defaultIsolation < 0) {
+            defaultIsolation = c.getTransactionIsolation();
+        }
+        return c;
+    }
+
+    private void closePhysical(Connection c) {
+        totalConnections.decrementAndGet();
+        statementCaches.remove(c); // Os statements fecham junto com a conexão
+        try {
+            c.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Chamado pelo proxy no close(): limpa o estado da transação e devolve ao pool.
+     */
+    private void release(Connection physical, boolean sessionChanged) {
+        leases.remove(physical);
+        StatementCache cache = statementCaches.get(physical);
+        if (cache != null) {
+            cache.dropLeaked();
+        }
+        try {
+            boolean reusable = !closed && !physical.isClosed();
+            if (reusable && !physical.getAutoCommit()) {
+                // Transação esquecida aberta por algum DAO: desfaz antes de reaproveitar
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            if (reusable && sessionChanged) {
+                // Isolamento ou read-only esquecidos por um DAO não passam ao próximo empréstimo
+                physical.setTransactionIsolation(defaultIsolation);
+                physical.setReadOnly(false);
+            }
+            if (reusable) {
+                idle.offerFirst(physical);
+            } else {
+                closePhysical(physical);
+            }
+        } catch (SQLException e) {
+            closePhysical(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void recordWait(long nanos) {
+        waitNanosTotal.add(nanos);
+        waitNanosMax.accumulateAndGet(nanos, Math::max);
+    }
+
+    private void housekeeping() {
+        try {
+            reportLeaks();
+            fillToMinimum();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void reportLeaks() {
+        if (leakThresholdMillis <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Lease lease : leases.values()) {
+            if (!lease.reported && now - lease.borrowedAt > leakThresholdMillis) {
+                lease.reported = true;
+                leakCount.increment();
+                System.err.println("[db-pool] Possível vazamento: conexão emprestada há "
+                        + (now - lease.borrowedAt) + " ms pela thread " + lease.threadName);
+                if (lease.origin != null) {
+                    lease.origin.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void fillToMinimum() {
+        while (!closed) {
+            int total = totalConnections.get();
+            if (total >= minSize || total >= maxSize) {
+                return;
+            }
+            try {
+                idle.offerLast(openPhysical());
+            } catch (SQLException e) {
+                System.err.println("[db-pool] Falha ao abrir conexão mínima: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private Connection wrap(Connection physical) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new PooledConnectionHandler(physical));
+    }
+
+    private static final class Lease {
+        final long borrowedAt;
+        final String threadName;
+        final Throwable origin;
+        volatile boolean reported;
+
+        Lease(long borrowedAt, String threadName, Throwable origin) {
+            this.borrowedAt = borrowedAt;
+            this.threadName = threadName;
+            this.origin = origin;
+        }
+    }
+
+    private final class PooledConnectionHandler implements InvocationHandler {
+        private final Connection physical;
+        private boolean returned;
+        private boolean sessionChanged;
+
+        PooledConnectionHandler(Connection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(physical, sessionChanged);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || physical.isClosed();
+                case "unwrap":
+                case "isWrapperFor":
+                    break;
+                case "setTransactionIsolation":
+                case "setReadOnly":
+                    if (returned) {
+                        throw new SQLException("Conexão já foi devolvida ao pool.");
+                    }
+                    sessionChanged = true;
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + "]";
+                default:
+                    if (returned) {
+                        throw new SQLException("Conexão já foi devolvida ao pool.");
+                    }
+            }
+            // Só a forma simples: com flags (chaves geradas, tipo de cursor) o statement não é o mesmo
+            if (statementCacheSize > 0 && "prepareStatement".equals(method.getName()) && args.length == 1) {
+                String sql = (String) args[0];
+                StatementCache cache = statementCaches.computeIfAbsent(physical, c -> new StatementCache());
+                return TimedStatement.wrap(cache.prepare(physical, sql), sql, (Connection) proxy);
+            }
+            Object result;
+            try {
+                result = method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            // prepareStatement e prepareCall trazem o SQL no primeiro argumento; createStatement não
+            if (result instanceof Statement statement) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : null;
+                return TimedStatement.wrap(statement, sql, (Connection) proxy);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * LRU de statements de uma conexão física, pelo texto do SQL. Cada prepareStatement
+     * empresta o statement livre do cache; se o mesmo SQL já está aberto (uso aninhado),
+     * prepara um avulso.
+     */
+    private final class StatementCache {
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        synchronized PreparedStatement prepare(Connection physical, String sql) throws SQLException {
+            Entry entry = entries.get(sql);
+            if (entry != null && !entry.inUse) {
+                statementCacheHits.increment();
+                return entry.lend();
+            }
+            statementCacheMisses.increment();
+            PreparedStatement statement = physical.prepareStatement(sql);
+            if (entry != null) {
+                return statement;
+            }
+            entry = new Entry(statement);
+            entries.put(sql, entry);
+            evictEldest();
+            return entry.lend();
+        }
+
+        synchronized void giveBack(Entry entry) throws SQLException {
+            entry.inUse = false;
+            if (entry.evicted) {
+                entry.statement.close();
+                return;
+            }
+            try {
+                entry.statement.clearParameters();
+                entry.statement.clearBatch();
+                // Ajustes de um DAO (ex.: fetchSize do streaming) não passam para o próximo
+                entry.statement.setFetchSize(entry.fetchSize);
+                entry.statement.setMaxRows(entry.maxRows);
+                entry.statement.setQueryTimeout(entry.queryTimeout);
+            } catch (SQLException e) {
+                entries.values().remove(entry);
+                entry.statement.close();
+            }
+        }
+
+        // Conexão devolvida com statement ainda aberto (DAO esqueceu o close): sai do cache
+        synchronized void dropLeaked() {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.inUse) {
+                    it.remove();
+                    entry.evicted = true;
+                }
+            }
+        }
+
+        private void evictEldest() {
+            Iterator<Entry> it = entries.values().iterator();
+            while (entries.size() > statementCacheSize && it.hasNext()) {
+                Entry eldest = it.next();
+                it.remove();
+                eldest.evicted = true;
+                if (!eldest.inUse) {
+                    closeQuietly(eldest.statement);
+                }
+            }
+        }
+
+        private void closeQuietly(Statement statement) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private final class Entry {
+            final PreparedStatement statement;
+            // Valores de quando o statement foi preparado, restaurados a cada devolução
+            final int fetchSize;
+            final int maxRows;
+            final int queryTimeout;
+            boolean inUse;
+            boolean evicted;
+
+            Entry(PreparedStatement statement) throws SQLException {
+                this.statement = statement;
+                this.fetchSize = statement.getFetchSize();
+                this.maxRows = statement.getMaxRows();
+                this.queryTimeout = statement.getQueryTimeout();
+            }
+
+            PreparedStatement lend() {
+                inUse = true;
+                return (PreparedStatement) Proxy.newProxyInstance(
+                        PreparedStatement.class.getClassLoader(),
+                        new Class<?>[] { PreparedStatement.class },
+                        new LentStatement(this));
+            }
+        }
+
+        /**
+         * O statement do cache como o DAO o vê: close() devolve ao cache, uma vez só.
+         */
+        private final class LentStatement implements InvocationHandler {
+            private final Entry entry;
+            private boolean closed;
+
+            LentStatement(Entry entry) {
+                this.entry = entry;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!closed) {
+                            closed = true;
+                            giveBack(entry);
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed || entry.statement.isClosed();
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        if (closed) {
+                            throw new SQLException("Statement já foi fechado.");
+                        }
+                }
+                try {
+                    return method.invoke(entry.statement, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+    }
+}
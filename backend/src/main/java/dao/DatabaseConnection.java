@@ -0,0 +1,87 @@
+package dao;
+
+import util.Env;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Ponto único de acesso ao banco usado por todos os DAOs.
+ *
+ * A configuração vem das mesmas variáveis de ambiente que o docker-compose.yml
+ * passa para o backend (DB_HOST, DB_NAME, DB_USER, DB_PASS). Os valores padrão
+ * apontam para o PostgreSQL local do docker-compose.
+ *
+ * Variáveis opcionais do pool:
+ *   DB_PORT (5432), DB_POOL_MIN (2), DB_POOL_MAX (10),
+ *   DB_POOL_MAX_WAIT_MS (5000), DB_POOL_LEAK_MS (60000; 0 desliga),
+ *   DB_STATEMENT_CACHE_SIZE (64 por conexão; 0 desliga),
+ *   DB_REWRITE_BATCHED_INSERTS (true)
+ *
+ * Com API_VIRTUAL_THREADS=true a concorrência deixa de ser limitada pelas ~200 threads
+ * do Tomcat: toda requisição em andamento disputa uma conexão. Os padrões passam a
+ * DB_POOL_MIN = DB_POOL_MAX / 2 e DB_POOL_MAX = 4 por núcleo (entre 10 e 40), o que o
+ * PostgreSQL aguenta (max_connections 100) sem trocar espera no pool por disputa no banco.
+ */
+public class DatabaseConnection {
+
+    private DatabaseConnection() {}
+
+    // Inicialização preguiçosa e thread-safe (holder idiom)
+    private static final class Holder {
+        static final ConnectionPool POOL = createPool();
+    }
+
+    /**
+     * Empresta uma conexão do pool. Chamar close() devolve a conexão ao pool.
+     */
+    public static Connection getConnection() throws SQLException {
+        return Holder.POOL.borrow();
+    }
+
+    public static ConnectionPool.PoolStats getPoolStats() {
+        return Holder.POOL.getStats();
+    }
+
+    /**
+     * Encerra o pool (chamado quando a aplicação é desligada).
+     */
+    public static void shutdown() {
+        Holder.POOL.shutdown();
+    }
+
+    private static ConnectionPool createPool() {
+        try {
+            Class.forName("org.postgresql.Driver");
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Driver JDBC do PostgreSQL não encontrado.", e);
+        }
+
+        String url = "jdbc:postgresql://" + Env.get("DB_HOST", "localhost") + ":" + Env.get("DB_PORT", "5432")
+                + "/" + Env.get("DB_NAME", "feirinha_db")
+                // Lotes de INSERT viram INSERTs de várias linhas (itens de venda/reserva, carga em lote)
+                + "?reWriteBatchedInserts=" + Env.getBoolean("DB_REWRITE_BATCHED_INSERTS", true);
+
+        int maxSize = Env.getInt("DB_POOL_MAX", defaultMaxSize());
+        int minSize = Env.getInt("DB_POOL_MIN", Env.getBoolean("API_VIRTUAL_THREADS", false) ? maxSize / 2 : 2);
+
+        return new ConnectionPool(
+                url,
+                Env.get("DB_USER", "postgres"),
+                Env.get("DB_PASS", "1234"),
+                Math.min(minSize, maxSize),
+                maxSize,
+                Env.getInt("DB_POOL_MAX_WAIT_MS", 5000),
+                Env.getInt("DB_POOL_LEAK_MS", 60000),
+                2,
+                Env.getInt("DB_STATEMENT_CACHE_SIZE", 64));
+    }
+
+    // Threads de plataforma: o pool do Tomcat já limita a concorrência, 10 conexões bastam
+    private static int defaultMaxSize() {
+        if (!Env.getBoolean("API_VIRTUAL_THREADS", false)) {
+            return 10;
+        }
+        return Math.clamp(Runtime.getRuntime().availableProcessors() * 4L, 10, 40);
+    }
+}
@@ -0,0 +1,21 @@
+package dao;
+
+import java.sql.SQLException;
+
+/**
+ * O mesmo produto aparece duas vezes nos itens de uma venda/reserva (a chave de
+ * item_venda e item_reserva é pai + produto). Nada é gravado e o servlet responde 400.
+ */
+public class DuplicateItemException extends SQLException {
+
+    private final int productCode;
+
+    public DuplicateItemException(int productCode) {
+        super("Produto " + productCode + " repetido nos itens.");
+        this.productCode = productCode;
+    }
+
+    public int getProductCode() {
+        return productCode;
+    }
+}
@@ -0,0 +1,326 @@
+package dao;
+
+import util.Env;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Respostas guardadas por Idempotency-Key (POST de venda, pagamento e reserva).
+ *
+ * A chave é reservada no banco (tabela idempotencia, status NULL) antes de o servlet rodar;
+ * quando ele termina, a resposta é gravada na mesma linha. Uma repetição com a mesma chave
+ * recebe a resposta guardada sem executar a transação de novo; com outro corpo, é recusada.
+ * A linha no banco vale entre instâncias do backend e reinícios.
+ *
+ * - As respostas concluídas também ficam num LRU em memória de IDEMPOTENCY_CACHE_SIZE
+ *   entradas (padrão 10000): a repetição logo em seguida (o caso do Wi-Fi ruim) nem vai ao banco.
+ * - Chaves valem IDEMPOTENCY_TTL_HOURS (padrão 24). Uma reserva sem resposta há mais de
+ *   IDEMPOTENCY_LOCK_SECONDS (padrão 60; instância que caiu no meio) pode ser retomada.
+ *
+ * A reserva tem um dono (UUID) e o DAO marca a chave como efetivada (markCommitted) dentro
+ * da transação da própria venda/pagamento/reserva. Assim:
+ * - chave efetivada nunca é liberada nem retomada, mesmo se a aplicação cair (ou complete()
+ *   falhar) entre o commit e a gravação da resposta: a repetição não cria a linha de novo;
+ * - uma requisição cuja reserva foi retomada por outra (passou de IDEMPOTENCY_LOCK_SECONDS)
+ *   não consegue marcar a chave e tem a transação desfeita.
+ */
+public final class IdempotencyStore {
+
+    private static final IdempotencyStore INSTANCE = new IdempotencyStore(
+            Env.getBoolean("IDEMPOTENCY_ENABLED", true),
+            Env.getInt("IDEMPOTENCY_CACHE_SIZE", 10_000),
+            Env.getInt("IDEMPOTENCY_TTL_HOURS", 24),
+            Env.getInt("IDEMPOTENCY_LOCK_SECONDS", 60));
+
+    public static IdempotencyStore getInstance() {
+        return INSTANCE;
+    }
+
+    public enum State {
+        NEW,         // Chave reservada: executar e chamar complete() ou release()
+        REPLAY,      // Já respondida: devolver a resposta guardada
+        MISMATCH,    // Mesma chave com outro corpo
+        IN_PROGRESS, // Outra requisição com a mesma chave ainda está rodando
+        COMMITTED    // Efetivada, mas a resposta não chegou a ser guardada (queda no meio)
+    }
+
+    public record StoredResponse(int status, String contentType, byte[] body) {
+    }
+
+    /**
+     * Reserva feita em begin(): owner identifica esta requisição como dona da chave.
+     */
+    public record Claim(String route, String key, UUID owner) {
+    }
+
+    public record Begin(State state, StoredResponse response, Claim claim) {
+    }
+
+    public record IdempotencyStats(boolean enabled, long executed, long replays, long memoryHits, long mismatches,
+                                   long inProgress, long committedWithoutResponse, long released,
+                                   int cachedEntries, int maxEntries) {
+    }
+
+    private record Cached(String requestHash, StoredResponse response, long storedAt) {
+    }
+
+    // A cada tantas chaves novas, apaga as vencidas do banco
+    private static final int PURGE_EVERY = 1000;
+
+    // Retoma só reserva vencida que não foi efetivada (a linha efetivada fica travada até o commit do DAO)
+    private static final String SQL_RESERVE =
+            "INSERT INTO public.idempotencia (rota, chave, hash_requisicao, dono) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (rota, chave) DO UPDATE SET hash_requisicao = EXCLUDED.hash_requisicao, dono = EXCLUDED.dono, " +
+            "    efetivada = false, status = NULL, content_type = NULL, corpo = NULL, criada_em = now() " +
+            "WHERE idempotencia.criada_em < now() - make_interval(hours => ?) " +
+            "   OR (idempotencia.status IS NULL AND NOT idempotencia.efetivada " +
+            "       AND idempotencia.criada_em < now() - make_interval(secs => ?))";
+
+    private static final String SQL_FIND =
+            "SELECT hash_requisicao, status, content_type, corpo, efetivada, " +
+            "       criada_em < now() - make_interval(secs => ?) AS antiga " +
+            "FROM public.idempotencia WHERE rota = ? AND chave = ?";
+
+    private static final String SQL_COMMITTED =
+            "UPDATE public.idempotencia SET efetivada = true WHERE rota = ? AND chave = ? AND dono = ?";
+
+    private static final String SQL_COMPLETE =
+            "UPDATE public.idempotencia SET status = ?, content_type = ?, corpo = ? WHERE rota = ? AND chave = ? AND dono = ?";
+
+    private static final String SQL_RELEASE =
+            "DELETE FROM public.idempotencia WHERE rota = ? AND chave = ? AND dono = ? AND status IS NULL AND NOT efetivada";
+
+    private static final String SQL_PURGE =
+            "DELETE FROM public.idempotencia WHERE criada_em < now() - make_interval(hours => ?)";
+
+    // Reserva da requisição que está rodando nesta thread (ApiServlet liga e desliga)
+    private static final ThreadLocal<Claim> BOUND = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final int ttlHours;
+    private final int lockSeconds;
+    private final Map<String, Cached> cache;
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder mismatches = new LongAdder();
+    private final LongAdder inProgress = new LongAdder();
+    private final LongAdder committedWithoutResponse = new LongAdder();
+    private final LongAdder released = new LongAdder();
+
+    private IdempotencyStore(boolean enabled, int maxEntries, int ttlHours, int lockSeconds) {
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.ttlHours = ttlHours;
+        this.lockSeconds = lockSeconds;
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                return size() > IdempotencyStore.this.maxEntries;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reserva a chave ou diz o que já existe para ela. requestHash identifica o corpo
+     * (SHA-256 em hexadecimal).
+     */
+    public Begin begin(String route, String key, String requestHash) throws SQLException {
+        Cached cached = cached(route, key);
+        if (cached != null) {
+            memoryHits.increment();
+            return resolve(cached.requestHash(), requestHash, cached.response());
+        }
+
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            // Duas voltas: a linha pode sumir (release de outra requisição) entre o INSERT e o SELECT
+            for (int attempt = 0; attempt < 2; attempt++) {
+                UUID owner = UUID.randomUUID();
+                try (PreparedStatement stmt = conn.prepareStatement(SQL_RESERVE)) {
+                    stmt.setString(1, route);
+                    stmt.setString(2, key);
+                    stmt.setString(3, requestHash);
+                    stmt.setObject(4, owner);
+                    stmt.setInt(5, ttlHours);
+                    stmt.setInt(6, lockSeconds);
+                    if (stmt.executeUpdate() == 1) {
+                        executed.increment();
+                        if (executed.sum() % PURGE_EVERY == 0) {
+                            purgeExpired(conn);
+                        }
+                        return new Begin(State.NEW, null, new Claim(route, key, owner));
+                    }
+                }
+
+                try (PreparedStatement stmt = conn.prepareStatement(SQL_FIND)) {
+                    stmt.setInt(1, lockSeconds);
+                    stmt.setString(2, route);
+                    stmt.setString(3, key);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (!rs.next()) {
+                            continue;
+                        }
+                        String storedHash = rs.getString("hash_requisicao");
+                        int status = rs.getInt("status");
+                        if (rs.wasNull()) {
+                            if (!storedHash.equals(requestHash)) {
+                                mismatches.increment();
+                                return new Begin(State.MISMATCH, null, null);
+                            }
+                            // Efetivada e sem resposta depois do prazo: a dona não vai mais gravá-la
+                            if (rs.getBoolean("efetivada") && rs.getBoolean("antiga")) {
+                                committedWithoutResponse.increment();
+                                return new Begin(State.COMMITTED, null, null);
+                            }
+                            inProgress.increment();
+                            return new Begin(State.IN_PROGRESS, null, null);
+                        }
+                        StoredResponse response = new StoredResponse(status, rs.getString("content_type"),
+                                rs.getBytes("corpo"));
+                        remember(route, key, storedHash, response);
+                        return resolve(storedHash, requestHash, response);
+                    }
+                }
+            }
+        }
+        // Chave disputada o tempo todo: trata como em andamento, o cliente tenta de novo
+        inProgress.increment();
+        return new Begin(State.IN_PROGRESS, null, null);
+    }
+
+    /**
+     * Liga a reserva à thread que vai rodar o servlet (e o DAO). unbind() no fim.
+     */
+    public static void bind(Claim claim) {
+        BOUND.set(claim);
+    }
+
+    public static void unbind() {
+        BOUND.remove();
+    }
+
+    /**
+     * Chamado pelo DAO dentro da transação da escrita, antes do commit: marca a chave da
+     * requisição desta thread como efetivada. Sem chave ligada não faz nada. Se a reserva
+     * foi retomada por outra requisição, lança SQLException (o DAO desfaz a transação).
+     */
+    public void markCommitted(Connection conn) throws SQLException {
+        Claim claim = BOUND.get();
+        if (claim == null) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(SQL_COMMITTED)) {
+            stmt.setString(1, claim.route());
+            stmt.setString(2, claim.key());
+            stmt.setObject(3, claim.owner());
+            if (stmt.executeUpdate() == 0) {
+                throw new SQLException("Idempotency-Key retomada por outra requisição; operação desfeita.");
+            }
+        }
+    }
+
+    /**
+     * Grava a resposta da chave reservada em begin() (só se a reserva ainda é desta requisição).
+     */
+    public void complete(Claim claim, String requestHash, StoredResponse response) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_COMPLETE)) {
+            stmt.setInt(1, response.status());
+            stmt.setString(2, response.contentType());
+            stmt.setBytes(3, response.body());
+            stmt.setString(4, claim.route());
+            stmt.setString(5, claim.key());
+            stmt.setObject(6, claim.owner());
+            if (stmt.executeUpdate() == 0) {
+                return; // Retomada por outra requisição: a resposta dela é que vale
+            }
+        }
+        remember(claim.route(), claim.key(), requestHash, response);
+    }
+
+    /**
+     * Desfaz a reserva (erro 5xx ou resposta grande demais): a repetição executa de novo.
+     * Chave já efetivada (ou retomada por outra requisição) não é apagada.
+     */
+    public void release(Claim claim) throws SQLException {
+        released.increment();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_RELEASE)) {
+            stmt.setString(1, claim.route());
+            stmt.setString(2, claim.key());
+            stmt.setObject(3, claim.owner());
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Apaga do banco as chaves vencidas; devolve quantas saíram.
+     */
+    public int purgeExpired() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            return purgeExpired(conn);
+        }
+    }
+
+    public IdempotencyStats getStats() {
+        int entries;
+        synchronized (cache) {
+            entries = cache.size();
+        }
+        return new IdempotencyStats(enabled, executed.sum(), replays.sum(), memoryHits.sum(), mismatches.sum(),
+                inProgress.sum(), committedWithoutResponse.sum(), released.sum(), entries, maxEntries);
+    }
+
+    // --- MÉTODOS AJUDANTES ---
+
+    private Begin resolve(String storedHash, String requestHash, StoredResponse response) {
+        if (!storedHash.equals(requestHash)) {
+            mismatches.increment();
+            return new Begin(State.MISMATCH, null, null);
+        }
+        replays.increment();
+        return new Begin(State.REPLAY, response, null);
+    }
+
+    private Cached cached(String route, String key) {
+        String cacheKey = route + " " + key;
+        synchronized (cache) {
+            Cached cached = cache.get(cacheKey);
+            if (cached != null && System.currentTimeMillis() - cached.storedAt() > ttlHours * 3_600_000L) {
+                cache.remove(cacheKey);
+                return null;
+            }
+            return cached;
+        }
+    }
+
+    private void remember(String route, String key, String requestHash, StoredResponse response) {
+        byte[] body = response.body() == null ? new byte[0] : Arrays.copyOf(response.body(), response.body().length);
+        Cached cached = new Cached(requestHash, new StoredResponse(response.status(), response.contentType(), body),
+                System.currentTimeMillis());
+        synchronized (cache) {
+            cache.put(route + " " + key, cached);
+        }
+    }
+
+    private int purgeExpired(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SQL_PURGE)) {
+            stmt.setInt(1, ttlHours);
+            return stmt.executeUpdate();
+        }
+    }
+}
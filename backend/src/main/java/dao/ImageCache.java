@@ -0,0 +1,493 @@
+package dao;
+
+import util.Env;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Cache em disco das imagens de produto e fotos de usuário, endereçado pelo MD5 do conteúdo.
+ *
+ * - Arquivos em IMAGE_CACHE_DIR (padrão: java.io.tmpdir/feirinha-images), nomeados pelo
+ *   hash: o mesmo conteúdo vira um arquivo só, e um upload novo nunca sobrescreve o antigo.
+ * - Índice em memória (produto/usuário → hash). Enquanto a versão da tabela não muda
+ *   (TableVersions), a leitura não consulta o banco; mudou, só o tamanho/hash são relidos
+ *   e os bytes continuam vindo do disco se o hash for o mesmo.
+ * - Miniaturas (IMAGE_THUMB_SIZES, padrão "128,512": lado maior em pixels) geradas no
+ *   upload, ou na primeira vez que forem pedidas para imagens antigas. As dimensões vêm do
+ *   cabeçalho antes de decodificar: acima de IMAGE_THUMB_MAX_PIXELS (padrão 25 milhões) a
+ *   imagem fica sem miniatura, e as grandes são lidas com subamostragem (sem o bitmap inteiro).
+ * - LRU por bytes em disco: acima de IMAGE_CACHE_MAX_BYTES (padrão 256 MB) os arquivos
+ *   usados há mais tempo são apagados.
+ *
+ * Desligado com IMAGE_CACHE_ENABLED=false (tudo passa a vir do banco pelo BlobStore).
+ */
+public final class ImageCache {
+
+    private static final ImageCache INSTANCE = new ImageCache(
+            Env.getBoolean("IMAGE_CACHE_ENABLED", true),
+            Paths.get(Env.get("IMAGE_CACHE_DIR", Paths.get(System.getProperty("java.io.tmpdir"), "feirinha-images").toString())),
+            Env.getLong("IMAGE_CACHE_MAX_BYTES", 256L * 1024 * 1024),
+            parseSizes(Env.get("IMAGE_THUMB_SIZES", "128,512")));
+
+    public static ImageCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Arquivo aberto para leitura; o channel fica válido mesmo se o arquivo for removido do
+     * cache durante o envio (o path, não).
+     */
+    public record CachedFile(Path path, FileChannel channel, BlobStore.BlobInfo info) implements AutoCloseable {
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    public record CacheStats(boolean enabled, String directory, int files, long bytes, long maxBytes,
+                             long hits, long misses, long evictions, long thumbnails, List<Integer> thumbnailSizes) {
+    }
+
+    // Registro (tipo, chave) → hash do conteúdo, válido enquanto a versão da tabela for a mesma
+    private record Indexed(String md5, String tableVersion) {
+    }
+
+    private static final int HEAD_BYTES = 16;
+    private static final long MAX_PIXELS = Env.getLong("IMAGE_THUMB_MAX_PIXELS", 25_000_000L);
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxBytes;
+    private final List<Integer> thumbnailSizes;
+
+    private final Map<String, Indexed> index = new ConcurrentHashMap<>();
+    // Nome do arquivo → tamanho, em ordem de acesso (LRU). Protegido por synchronized (this)
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder thumbnails = new LongAdder();
+
+    private ImageCache(boolean enabled, Path directory, long maxBytes, List<Integer> thumbnailSizes) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.thumbnailSizes = thumbnailSizes;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Só imagens de produto e fotos de usuário passam pelo cache (a licença não).
+     */
+    public boolean supports(BlobStore.Blob blob) {
+        return enabled && (blob == BlobStore.Blob.PRODUCT_IMAGE || blob == BlobStore.Blob.USER_PHOTO);
+    }
+
+    public boolean isThumbnailSize(int size) {
+        return thumbnailSizes.contains(size);
+    }
+
+    /**
+     * Cria o diretório e reconstrói o LRU com o que já está em disco (mais antigos primeiro).
+     * Chamado uma vez na subida da aplicação.
+     */
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Path> found = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(directory, 2)) {
+            walk.filter(Files::isRegularFile).forEach(found::add);
+        }
+        found.sort(Comparator.comparingLong(ImageCache::lastModified));
+
+        synchronized (this) {
+            files.clear();
+            totalBytes = 0;
+            for (Path path : found) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.deleteIfExists(path); // Sobra de upload interrompido
+                    continue;
+                }
+                long size = Files.size(path);
+                files.put(name, size);
+                totalBytes += size;
+            }
+        }
+        evict(null);
+    }
+
+    /**
+     * Abre a imagem (size = 0) ou a miniatura (size em IMAGE_THUMB_SIZES). Devolve null se
+     * o registro não existe ou não tem imagem. O banco só é consultado se o índice não sabe o
+     * hash atual; os bytes só são lidos do banco se o arquivo não estiver em disco.
+     */
+    public CachedFile open(BlobStore.Blob blob, Object key, int size) throws SQLException, IOException {
+        String indexKey = blob.name() + ":" + key;
+        Indexed entry = index.get(indexKey);
+        String tableVersion = TableVersions.etag(blob.version());
+
+        if (entry != null && entry.tableVersion().equals(tableVersion) && contains(entry.md5())) {
+            hits.increment();
+        } else {
+            misses.increment();
+            entry = load(blob, key, tableVersion);
+            if (entry == null) {
+                index.remove(indexKey);
+                return null;
+            }
+            index.put(indexKey, entry);
+        }
+
+        if (size > 0) {
+            String thumbnail = thumbnailName(entry.md5(), size);
+            if (contains(thumbnail) || generateThumbnail(entry.md5(), size)) {
+                CachedFile file = openFile(thumbnail, thumbnail);
+                if (file != null) {
+                    return file;
+                }
+            }
+            // Conteúdo que o ImageIO não decodifica (ex.: WebP): serve o original
+        }
+        CachedFile file = openFile(entry.md5(), entry.md5());
+        if (file == null) {
+            // Removido do disco entre a checagem e a abertura: relê do banco uma vez
+            index.remove(indexKey);
+            entry = load(blob, key, tableVersion);
+            return entry == null ? null : openFile(entry.md5(), entry.md5());
+        }
+        return file;
+    }
+
+    /**
+     * Grava o upload no banco e, no mesmo passo, no disco (o corpo é lido uma vez só),
+     * já gerando as miniaturas. Devolve false se o registro não existe.
+     */
+    public boolean write(BlobStore.Blob blob, Object key, InputStream in, long length) throws SQLException, IOException {
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "upload-", ".tmp");
+        try {
+            MessageDigest md5 = md5();
+            boolean updated;
+            try (OutputStream copy = Files.newOutputStream(temp)) {
+                updated = BlobStore.write(blob, key, new TeeInputStream(new DigestInputStream(in, md5), copy), length);
+            }
+            String indexKey = blob.name() + ":" + key;
+            if (!updated) {
+                return false;
+            }
+            long size = Files.size(temp);
+            if (size == 0) {
+                index.remove(indexKey);
+                return true;
+            }
+
+            String hash = HexFormat.of().formatHex(md5.digest());
+            store(temp, hash);
+            index.put(indexKey, new Indexed(hash, TableVersions.etag(blob.version())));
+            for (int thumbnailSize : thumbnailSizes) {
+                generateThumbnail(hash, thumbnailSize);
+            }
+            return true;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(enabled, directory.toString(), files.size(), totalBytes, maxBytes,
+                hits.sum(), misses.sum(), evictions.sum(), thumbnails.sum(), thumbnailSizes);
+    }
+
+    // --- MÉTODOS AJUDANTES ---
+
+    // Lê tamanho e hash do banco; copia os bytes para o disco só se esse hash ainda não estiver lá
+    private Indexed load(BlobStore.Blob blob, Object key, String tableVersion) throws SQLException, IOException {
+        Path temp = Files.createTempFile(Files.createDirectories(directory), "fill-", ".tmp");
+        try {
+            // Segunda volta: o arquivo saiu do cache entre a checagem e o fim da leitura; copia sempre
+            for (int attempt = 0; ; attempt++) {
+                boolean force = attempt > 0;
+                BlobStore.BlobInfo[] loaded = new BlobStore.BlobInfo[1];
+                boolean[] copied = new boolean[1];
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    boolean found = BlobStore.read(blob, key, info -> {
+                        loaded[0] = info;
+                        if (!force && contains(info.md5())) {
+                            return null;
+                        }
+                        copied[0] = true;
+                        return new BlobStore.Range(0, info.length() - 1, out);
+                    });
+                    if (!found) {
+                        return null;
+                    }
+                }
+                // Arquivo temporário já fechado: pode ser movido
+                BlobStore.BlobInfo info = loaded[0];
+                if (copied[0]) {
+                    if (Files.size(temp) != info.length()) {
+                        throw new IOException("Arquivo lido do banco incompleto: " + Files.size(temp)
+                                + " de " + info.length() + " bytes.");
+                    }
+                    if (!contains(info.md5())) {
+                        store(temp, info.md5());
+                    }
+                    return new Indexed(info.md5(), tableVersion);
+                }
+                if (contains(info.md5())) {
+                    return new Indexed(info.md5(), tableVersion);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private boolean generateThumbnail(String md5, int size) throws IOException {
+        BufferedImage source;
+        try {
+            source = decode(file(md5), size);
+        } catch (IOException e) {
+            return false; // Arquivo removido ou imagem corrompida: fica sem miniatura
+        }
+        if (source == null) {
+            return false;
+        }
+
+        double scale = Math.min(1.0, (double) size / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        boolean alpha = source.getColorModel().hasAlpha();
+
+        BufferedImage target = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+
+        // Com transparência PNG, senão JPEG (bem menor para fotos)
+        Path temp = Files.createTempFile(directory, "thumb-", ".tmp");
+        try {
+            if (!ImageIO.write(target, alpha ? "png" : "jpg", temp.toFile())) {
+                return false;
+            }
+            store(temp, thumbnailName(md5, size));
+            thumbnails.increment();
+            return true;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Decodifica para a miniatura: null se o formato não é suportado ou se o cabeçalho declara
+     * mais de MAX_PIXELS (um PNG pequeno pode dizer 50000x50000 e esgotar o heap). Imagens bem
+     * maiores que a miniatura são lidas com subamostragem (até 2x o lado pedido).
+     */
+    private static BufferedImage decode(Path path, int size) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                long width = reader.getWidth(0);
+                long height = reader.getHeight(0);
+                if (width * height > MAX_PIXELS) {
+                    return null;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = (int) Math.max(1, Math.max(width, height) / (2L * size));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private CachedFile openFile(String name, String etag) throws IOException {
+        Path path = file(name);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            forget(name);
+            return null;
+        }
+        touch(name);
+        return new CachedFile(path, channel, new BlobStore.BlobInfo(channel.size(), etag, head(name)));
+    }
+
+    // Move o arquivo temporário para o nome definitivo e o registra no LRU
+    private void store(Path temp, String name) throws IOException {
+        Path target = file(name);
+        Files.createDirectories(target.getParent());
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        long size = Files.size(target);
+        synchronized (this) {
+            Long previous = files.put(name, size);
+            totalBytes += size - (previous == null ? 0 : previous);
+        }
+        evict(name);
+    }
+
+    // Apaga os menos usados até caber no orçamento (o recém-gravado fica)
+    private void evict(String keep) {
+        List<String> removed = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Long>> it = files.entrySet().iterator();
+            while (totalBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                if (eldest.getKey().equals(keep)) {
+                    continue;
+                }
+                totalBytes -= eldest.getValue();
+                removed.add(eldest.getKey());
+                it.remove();
+            }
+        }
+        for (String name : removed) {
+            evictions.increment();
+            try {
+                Files.deleteIfExists(file(name));
+            } catch (IOException e) {
+                System.err.println("[image-cache] Falha ao apagar " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized boolean contains(String name) {
+        return files.containsKey(name);
+    }
+
+    private synchronized void touch(String name) {
+        files.get(name); // Acesso move para o fim da ordem LRU
+    }
+
+    private synchronized void forget(String name) {
+        Long size = files.remove(name);
+        if (size != null) {
+            totalBytes -= size;
+        }
+    }
+
+    private byte[] head(String name) throws IOException {
+        try (InputStream in = Files.newInputStream(file(name))) {
+            return in.readNBytes(HEAD_BYTES);
+        }
+    }
+
+    // Dois primeiros caracteres do hash como subdiretório: evita milhares de arquivos numa pasta só
+    private Path file(String name) {
+        return directory.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private static String thumbnailName(String md5, int size) {
+        return md5 + "-" + size;
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 indisponível", e);
+        }
+    }
+
+    private static List<Integer> parseSizes(String value) {
+        List<Integer> sizes = new ArrayList<>();
+        for (String part : value.split(",")) {
+            if (!part.isBlank()) {
+                sizes.add(Integer.parseInt(part.trim()));
+            }
+        }
+        Collections.sort(sizes);
+        return List.copyOf(sizes);
+    }
+
+    // Copia para o arquivo tudo o que o driver lê do corpo da requisição
+    private static final class TeeInputStream extends FilterInputStream {
+        private final OutputStream copy;
+
+        TeeInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0) {
+                copy.write(buf, off, n);
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package dao;
+
+import java.sql.SQLException;
+
+/**
+ * Estoque da barraca não cobre a quantidade pedida. A transação da venda é desfeita
+ * e o servlet responde 409 Conflict.
+ */
+public class InsufficientStockException extends SQLException {
+
+    private final int tentCode;
+    private final int productCode;
+    private final int requested;
+
+    public InsufficientStockException(int tentCode, int productCode, int requested) {
+        super("Estoque insuficiente do produto " + productCode + " na barraca " + tentCode
+                + " (pedido: " + requested + ").");
+        this.tentCode = tentCode;
+        this.productCode = productCode;
+        this.requested = requested;
+    }
+
+    public int getTentCode() {
+        return tentCode;
+    }
+
+    public int getProductCode() {
+        return productCode;
+    }
+
+    public int getRequested() {
+        return requested;
+    }
+}
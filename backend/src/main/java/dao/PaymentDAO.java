@@ -1,6 +1,7 @@
 package dao;
 
 import model.entities.Payment;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -8,40 +9,66 @@ import java.sql.SQLException;
 import java.time.LocalDate; 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class PaymentDAO {
 
+    // Campos selecionáveis por ?fields=
+    public static final Projection FIELDS = Projection.key("id", "id_pagamento")
+            .field("saleId", "id_venda")
+            .field("reservationCode", "cod_reserva")
+            .field("buyerCpf", "cpf_comprador")
+            .field("tentCode", "cod_barraca")
+            .field("paymentForm", "forma_pagamento")
+            .field("paymentDate", "data_pagamento");
+
     /**
      * Cria um novo pagamento no banco de dados.
      */
     public void create(Payment payment) throws SQLException {
         String sql = "INSERT INTO public.pagamento (id_pagamento, id_venda, cod_reserva, cpf_comprador, cod_barraca, forma_pagamento, data_pagamento) VALUES (?, ?, ?, ?, ?, ?, ?)";
-        
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, payment.getId());
-            
-            // Lógica correta para campos NULÁVEIS (Integer)
-            if (payment.getSaleId() == null) {
-                stmt.setNull(2, java.sql.Types.INTEGER);
-            } else {
-                stmt.setInt(2, payment.getSaleId());
-            }
 
-            if (payment.getReservationCode() == null) {
-                 stmt.setNull(3, java.sql.Types.INTEGER);
-            } else {
-                 // CORREÇÃO: O modelo Payment usa 'Integer', não 'Long'
-                 stmt.setInt(3, payment.getReservationCode());
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            conn.setAutoCommit(false); // Pagamento e Idempotency-Key no mesmo commit
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                payment.setId(SequenceBlockAllocator.PAGAMENTO.next(conn)); // Gerado pelo servidor
+                stmt.setInt(1, payment.getId());
+
+                // Lógica correta para campos NULÁVEIS (Integer)
+                if (payment.getSaleId() == null) {
+                    stmt.setNull(2, java.sql.Types.INTEGER);
+                } else {
+                    stmt.setInt(2, payment.getSaleId());
+                }
+
+                if (payment.getReservationCode() == null) {
+                     stmt.setNull(3, java.sql.Types.INTEGER);
+                } else {
+                     // CORREÇÃO: O modelo Payment usa 'Integer', não 'Long'
+                     stmt.setInt(3, payment.getReservationCode());
+                }
+
+                stmt.setString(4, payment.getBuyerCpf());
+                stmt.setInt(5, payment.getTentCode());
+                stmt.setString(6, payment.getPaymentForm());
+                stmt.setObject(7, payment.getPaymentDate()); // setObject é o correto para LocalDate
+
+                stmt.executeUpdate();
             }
-            
-            stmt.setString(4, payment.getBuyerCpf());
-            stmt.setInt(5, payment.getTentCode());
-            stmt.setString(6, payment.getPaymentForm());
-            stmt.setObject(7, payment.getPaymentDate()); // setObject é o correto para LocalDate
-            
-            stmt.executeUpdate();
+            IdempotencyStore.getInstance().markCommitted(conn);
+            conn.commit();
+        } catch (SQLException e) {
+            if (conn != null) conn.rollback();
+            throw e;
+        } finally {
+            if (conn != null) {
+                conn.setAutoCommit(true);
+                conn.close();
+            }
+            TableVersions.bump(TableVersions.PAGAMENTO);
         }
     }
 
@@ -49,8 +76,15 @@ public class PaymentDAO {
      * Busca um pagamento pelo ID.
      */
     public Payment getById(int id) throws SQLException {
+        return getById(id, FIELDS.defaults());
+    }
+
+    /**
+     * Como getById, lendo só as colunas dos campos pedidos.
+     */
+    public Payment getById(int id, Set<String> fields) throws SQLException {
         Payment payment = null;
-        String sql = "SELECT * FROM public.pagamento WHERE id_pagamento = ?";
+        String sql = "SELECT " + FIELDS.columns(fields) + " FROM public.pagamento WHERE id_pagamento = ?";
 
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -59,7 +93,7 @@ public class PaymentDAO {
             
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    payment = mapRowToPayment(rs);
+                    payment = mapRowToPayment(rs, fields);
                 }
             }
         }
@@ -70,20 +104,43 @@ public class PaymentDAO {
      * Busca todos os pagamentos.
      */
     public List<Payment> getAll() throws SQLException {
+        return getAll(FIELDS.defaults());
+    }
+
+    /**
+     * Como getAll, lendo só as colunas dos campos pedidos.
+     */
+    public List<Payment> getAll(Set<String> fields) throws SQLException {
         List<Payment> payments = new ArrayList<>();
-        String sql = "SELECT * FROM public.pagamento";
+        String sql = "SELECT " + FIELDS.columns(fields) + " FROM public.pagamento";
 
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql);
              ResultSet rs = stmt.executeQuery()) {
             
             while (rs.next()) {
-                payments.add(mapRowToPayment(rs));
+                payments.add(mapRowToPayment(rs, fields));
             }
         }
         return payments;
     }
 
+    /**
+     * Página de pagamentos ordenada por id_pagamento (keyset): somente linhas com id_pagamento > after.
+     */
+    public List<Payment> getPage(int after, int limit, Set<String> fields) throws SQLException {
+        String sql = "SELECT " + FIELDS.columns(fields) + " FROM public.pagamento WHERE id_pagamento > ? ORDER BY id_pagamento LIMIT ?";
+        return QuerySupport.page(sql, after, limit, rs -> mapRowToPayment(rs, fields));
+    }
+
+    /**
+     * Percorre todos os pagamentos sem carregar a tabela inteira em memória.
+     */
+    public void streamAll(Set<String> fields, RowHandler<Payment> handler) throws SQLException, IOException {
+        String sql = "SELECT " + FIELDS.columns(fields) + " FROM public.pagamento ORDER BY id_pagamento";
+        QuerySupport.stream(sql, rs -> mapRowToPayment(rs, fields), handler);
+    }
+
     /**
      * Atualiza um pagamento. (Não é comum, mas completa o CRUD)
      */
@@ -110,6 +167,8 @@ public class PaymentDAO {
             stmt.setInt(7, payment.getId()); // WHERE clause
             
             stmt.executeUpdate();
+        } finally {
+            TableVersions.bump(TableVersions.PAGAMENTO);
         }
     }
 
@@ -124,20 +183,22 @@ public class PaymentDAO {
             
             stmt.setInt(1, id); // CORREÇÃO: Era 'setString'
             stmt.executeUpdate();
+        } finally {
+            TableVersions.bump(TableVersions.PAGAMENTO);
         }
     }
 
     // MÉTODO AJUDANTE
-    private Payment mapRowToPayment(ResultSet rs) throws SQLException {
+    private Payment mapRowToPayment(ResultSet rs, Set<String> fields) throws SQLException {
         Payment p = new Payment();
         p.setId(rs.getInt("id_pagamento"));
-        p.setSaleId(rs.getObject("id_venda", Integer.class));
+        if (fields.contains("saleId")) p.setSaleId(rs.getObject("id_venda", Integer.class));
         // CORREÇÃO: O modelo Payment usa 'Integer'
-        p.setReservationCode(rs.getObject("cod_reserva", Integer.class)); 
-        p.setBuyerCpf(rs.getString("cpf_comprador"));
-        p.setTentCode(rs.getInt("cod_barraca"));
-        p.setPaymentForm(rs.getString("forma_pagamento"));
-        p.setPaymentDate(rs.getObject("data_pagamento", LocalDate.class));
+        if (fields.contains("reservationCode")) p.setReservationCode(rs.getObject("cod_reserva", Integer.class)); 
+        if (fields.contains("buyerCpf")) p.setBuyerCpf(rs.getString("cpf_comprador"));
+        if (fields.contains("tentCode")) p.setTentCode(rs.getInt("cod_barraca"));
+        if (fields.contains("paymentForm")) p.setPaymentForm(rs.getString("forma_pagamento"));
+        if (fields.contains("paymentDate")) p.setPaymentDate(rs.getObject("data_pagamento", LocalDate.class));
         return p;
     }
 }
\ No newline at end of file
@@ -0,0 +1,182 @@
+package dao;
+
+import model.entities.Product;
+import util.Env;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache em memória do catálogo de produtos (read-through), usado pelo ProductDAO.
+ *
+ * - Listagem completa: guarda a lista e, na primeira vez que for pedida, os bytes do
+ *   JSON já serializado. Um acerto não passa pelo Jackson de novo.
+ * - Produtos por ID: LRU limitado a PRODUCT_CACHE_MAX_ENTRIES (padrão 1000).
+ * - Tudo expira após PRODUCT_CACHE_TTL_MS (padrão 60000) e é invalidado na hora por
+ *   create/update/delete do ProductDAO.
+ *
+ * Os objetos Product da listagem são compartilhados entre requisições: não devem ser alterados.
+ */
+public final class ProductCatalogCache {
+
+    private static final ProductCatalogCache INSTANCE = new ProductCatalogCache(
+            Env.getLong("PRODUCT_CACHE_TTL_MS", 60_000),
+            Env.getInt("PRODUCT_CACHE_MAX_ENTRIES", 1000));
+
+    public static ProductCatalogCache getInstance() {
+        return INSTANCE;
+    }
+
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface ListingSerializer {
+        byte[] serialize(List<Product> products) throws IOException;
+    }
+
+    /**
+     * Listagem completa em cache, com o JSON calculado uma única vez.
+     */
+    public static final class Listing {
+        private final List<Product> products;
+        private final long loadedAt;
+        private volatile byte[] json;
+
+        private Listing(List<Product> products, long loadedAt) {
+            this.products = Collections.unmodifiableList(products);
+            this.loadedAt = loadedAt;
+        }
+
+        public List<Product> products() {
+            return products;
+        }
+
+        public byte[] json(ListingSerializer serializer) throws IOException {
+            byte[] bytes = json;
+            if (bytes == null) {
+                // Corrida benigna: no pior caso duas threads serializam a mesma lista
+                bytes = serializer.serialize(products);
+                json = bytes;
+            }
+            return bytes;
+        }
+    }
+
+    public record CacheStats(long hits, long misses, long evictions, long invalidations,
+                             int entries, boolean listingCached, long ttlMillis, int maxEntries) {
+    }
+
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    // Incrementado a cada invalidação: cargas iniciadas antes dela não são guardadas
+    private final AtomicLong generation = new AtomicLong();
+    private final Object listingLock = new Object();
+    private volatile Listing listing;
+    private final Map<Integer, Entry> byId;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private record Entry(Product product, long loadedAt) {
+    }
+
+    ProductCatalogCache(long ttlMillis, int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        // LinkedHashMap em ordem de acesso = LRU; o mais antigo sai quando passa do limite
+        this.byId = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() > ProductCatalogCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public Listing listing(Loader<List<Product>> loader) throws SQLException {
+        Listing current = listing;
+        if (isFresh(current)) {
+            hits.increment();
+            return current;
+        }
+
+        // Só uma thread vai ao banco; as outras esperam e usam o resultado
+        synchronized (listingLock) {
+            current = listing;
+            if (isFresh(current)) {
+                hits.increment();
+                return current;
+            }
+            misses.increment();
+            long gen = generation.get();
+            Listing loaded = new Listing(loader.load(), System.currentTimeMillis());
+            if (generation.get() == gen) {
+                listing = loaded;
+            }
+            return loaded;
+        }
+    }
+
+    public Product product(int id, Loader<Product> loader) throws SQLException {
+        long now = System.currentTimeMillis();
+        synchronized (byId) {
+            Entry entry = byId.get(id);
+            if (entry != null && now - entry.loadedAt() < ttlMillis) {
+                hits.increment();
+                return entry.product();
+            }
+        }
+
+        misses.increment();
+        long gen = generation.get();
+        Product loaded = loader.load();
+        if (loaded != null) {
+            synchronized (byId) {
+                if (generation.get() == gen) {
+                    byId.put(id, new Entry(loaded, System.currentTimeMillis()));
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Descarta tudo. Chamado de forma síncrona pelas escritas do ProductDAO.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        invalidations.increment();
+        listing = null;
+        synchronized (byId) {
+            byId.clear();
+        }
+    }
+
+    public CacheStats getStats() {
+        int entries;
+        synchronized (byId) {
+            entries = byId.size();
+        }
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(),
+                entries, isFresh(listing), ttlMillis, maxEntries);
+    }
+
+    private boolean isFresh(Listing l) {
+        return l != null && System.currentTimeMillis() - l.loadedAt < ttlMillis;
+    }
+}
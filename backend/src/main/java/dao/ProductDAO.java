@@ -1,6 +1,7 @@
 package dao;
 
 import model.entities.Product;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -8,9 +9,18 @@ import java.sql.SQLException;
 import java.sql.Statement; // 1. IMPORTAR O STATEMENT (Necessário para RETURN_GENERATED_KEYS)
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class ProductDAO {
 
+    // Campos selecionáveis por ?fields=. imagem_produto (BYTEA) não é lida nas listagens.
+    public static final Projection FIELDS = Projection.key("code", "cod_produto")
+            .field("name", "nome_produto")
+            .field("price", "preco_produto")
+            .field("description", "descricao_produto");
+
+    private final ProductCatalogCache cache = ProductCatalogCache.getInstance();
+
     // C - CREATE (Corrigido para colunas SERIAL / GENERATED ALWAYS)
     public void create(Product product) throws SQLException {
         
@@ -51,28 +61,63 @@ public class ProductDAO {
             // Fechamento manual é necessário aqui por causa do generatedKeys
             if (stmt != null) stmt.close();
             if (conn != null) conn.close();
+            afterWrite();
         }
     }
 
-    // R - READ (do doGet - Listar todos)
+    // R - READ (do doGet - Listar todos). Passa pelo cache do catálogo.
     public List<Product> getAll() throws SQLException {
+        return getCatalogListing().products();
+    }
+
+    // Listagem completa em cache, incluindo o JSON já serializado (usado pelo ProductServlet)
+    public ProductCatalogCache.Listing getCatalogListing() throws SQLException {
+        return cache.listing(this::loadAll);
+    }
+
+    // R - READ (do doGet - Buscar um por ID). Passa pelo cache do catálogo.
+    public Product getById(int id) throws SQLException {
+        Product cached = cache.product(id, () -> loadById(id));
+        if (cached == null) {
+            return null;
+        }
+        // Cópia: quem chamou pode alterar o objeto sem mexer no cache
+        return new Product(cached.getCode(), cached.getName(), cached.getPrice(), cached.getDescription());
+    }
+
+    private List<Product> loadAll() throws SQLException {
         List<Product> products = new ArrayList<>();
-        String sql = "SELECT * FROM public.produto";
+        String sql = "SELECT " + FIELDS.columns(FIELDS.defaults()) + " FROM public.produto";
         
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql);
              ResultSet rs = stmt.executeQuery()) {
             
             while (rs.next()) {
-                products.add(mapRowToProduct(rs));
+                products.add(mapRowToProduct(rs, FIELDS.defaults()));
             }
         }
         return products;
     }
 
-    // R - READ (do doGet - Buscar um por ID)
-    public Product getById(int id) throws SQLException {
-        String sql = "SELECT * FROM public.produto WHERE cod_produto = ?";
+    /**
+     * Página de produtos ordenada por cod_produto (keyset): somente linhas com cod_produto > after.
+     */
+    public List<Product> getPage(int after, int limit, Set<String> fields) throws SQLException {
+        String sql = "SELECT " + FIELDS.columns(fields) + " FROM public.produto WHERE cod_produto > ? ORDER BY cod_produto LIMIT ?";
+        return QuerySupport.page(sql, after, limit, rs -> mapRowToProduct(rs, fields));
+    }
+
+    /**
+     * Percorre todos os produtos sem carregar a tabela inteira em memória.
+     */
+    public void streamAll(Set<String> fields, RowHandler<Product> handler) throws SQLException, IOException {
+        String sql = "SELECT " + FIELDS.columns(fields) + " FROM public.produto ORDER BY cod_produto";
+        QuerySupport.stream(sql, rs -> mapRowToProduct(rs, fields), handler);
+    }
+
+    private Product loadById(int id) throws SQLException {
+        String sql = "SELECT " + FIELDS.columns(FIELDS.defaults()) + " FROM public.produto WHERE cod_produto = ?";
         
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -81,7 +126,7 @@ public class ProductDAO {
             
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return mapRowToProduct(rs);
+                    return mapRowToProduct(rs, FIELDS.defaults());
                 }
             }
         }
@@ -101,6 +146,8 @@ public class ProductDAO {
             stmt.setInt(4, product.getCode());
             
             stmt.executeUpdate();
+        } finally {
+            afterWrite();
         }
     }
 
@@ -113,17 +160,25 @@ public class ProductDAO {
             
             stmt.setInt(1, id);
             stmt.executeUpdate();
+        } finally {
+            afterWrite();
         }
     }
 
-    // MÉTODO AJUDANTE: Converte uma linha do ResultSet em um objeto Product
-    private Product mapRowToProduct(ResultSet rs) throws SQLException {
+    // Toda escrita (com ou sem sucesso) descarta o cache e muda a versão usada no ETag
+    private void afterWrite() {
+        cache.invalidateAll();
+        TableVersions.bump(TableVersions.PRODUTO);
+    }
+
+    // MÉTODO AJUDANTE: Converte uma linha do ResultSet em um objeto Product (só as colunas selecionadas)
+    private Product mapRowToProduct(ResultSet rs, Set<String> fields) throws SQLException {
         Product p = new Product(); 
         
         p.setCode(rs.getInt("cod_produto"));
-        p.setName(rs.getString("nome_produto"));
-        p.setPrice(rs.getBigDecimal("preco_produto"));
-        p.setDescription(rs.getString("descricao_produto"));
+        if (fields.contains("name")) p.setName(rs.getString("nome_produto"));
+        if (fields.contains("price")) p.setPrice(rs.getBigDecimal("preco_produto"));
+        if (fields.contains("description")) p.setDescription(rs.getString("descricao_produto"));
         return p;
     }
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+package dao;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Mapa campo JSON -> coluna de uma entidade, usado para montar listas de colunas
+ * explícitas (nada de SELECT *) e para o ?fields=code,name das rotas de leitura.
+ *
+ * Colunas binárias (BYTEA) ficam fora por padrão: só vêm quando pedidas pelo nome.
+ * A chave primária vem sempre, porque a paginação por chave depende dela.
+ */
+public final class Projection {
+
+    private final String keyField;
+    private final Map<String, String> columns = new LinkedHashMap<>();
+    private final Set<String> binaryFields = new LinkedHashSet<>();
+    private final Set<String> defaults = new LinkedHashSet<>();
+
+    private Projection(String keyField, String keyColumn) {
+        this.keyField = keyField;
+        columns.put(keyField, keyColumn);
+        defaults.add(keyField);
+    }
+
+    static Projection key(String field, String column) {
+        return new Projection(field, column);
+    }
+
+    Projection field(String field, String column) {
+        columns.put(field, column);
+        defaults.add(field);
+        return this;
+    }
+
+    Projection binary(String field, String column) {
+        columns.put(field, column);
+        binaryFields.add(field);
+        return this;
+    }
+
+    /**
+     * Campos padrão: todos menos os binários.
+     */
+    public Set<String> defaults() {
+        return Collections.unmodifiableSet(defaults);
+    }
+
+    /**
+     * Lê o valor de ?fields= (ex.: "code,name"). Sem o parâmetro, devolve os campos padrão.
+     * Lança IllegalArgumentException para campo desconhecido.
+     */
+    public Set<String> parse(String fieldsParam) {
+        if (fieldsParam == null || fieldsParam.isBlank()) {
+            return defaults();
+        }
+        Set<String> fields = new LinkedHashSet<>();
+        fields.add(keyField);
+        for (String raw : fieldsParam.split(",")) {
+            String field = raw.trim();
+            if (field.isEmpty()) {
+                continue;
+            }
+            if (!columns.containsKey(field)) {
+                throw new IllegalArgumentException("Campo desconhecido: " + field);
+            }
+            fields.add(field);
+        }
+        return Collections.unmodifiableSet(fields);
+    }
+
+    /**
+     * true se a seleção cobre todos os campos (a resposta não precisa ser recortada).
+     */
+    public boolean isAll(Set<String> fields) {
+        return fields.containsAll(columns.keySet());
+    }
+
+    /**
+     * Lista de colunas para o SELECT, na ordem da entidade.
+     */
+    String columns(Set<String> fields) {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (Map.Entry<String, String> entry : columns.entrySet()) {
+            if (fields.contains(entry.getKey())) {
+                joiner.add(entry.getValue());
+            }
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,70 @@
+package dao;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consultas de listagem compartilhadas pelos DAOs: paginação por chave (keyset)
+ * e leitura em streaming com cursor do servidor.
+ */
+final class QuerySupport {
+
+    // Linhas trazidas do PostgreSQL por ida ao banco durante o streaming
+    static final int STREAM_FETCH_SIZE = 500;
+
+    private QuerySupport() {}
+
+    /**
+     * Executa uma consulta "WHERE chave > ? ORDER BY chave LIMIT ?".
+     * O custo não depende da posição da página (ao contrário de OFFSET).
+     */
+    static <T> List<T> page(String sql, Object after, int limit, RowMapper<T> mapper) throws SQLException {
+        List<T> rows = new ArrayList<>();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setObject(1, after);
+            stmt.setInt(2, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(mapper.map(rs));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Percorre o resultado inteiro com um ResultSet forward-only e fetch size,
+     * entregando cada linha ao handler. O uso de memória fica constante,
+     * independente do tamanho da tabela.
+     */
+    static <T> void stream(String sql, RowMapper<T> mapper, RowHandler<T> handler) throws SQLException, IOException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            // O driver do PostgreSQL só usa cursor (fetch size) com autocommit desligado
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(STREAM_FETCH_SIZE);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        handler.handle(mapper.map(rs));
+                    }
+                }
+                conn.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+}
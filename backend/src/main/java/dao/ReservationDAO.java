@@ -2,6 +2,7 @@ package dao;
 
 import model.entities.Reservation;
 import model.entities.ReservationItem;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -13,6 +14,10 @@ import java.util.List;
 
 public class ReservationDAO {
 
+    // Colunas lidas (explícitas: não acompanham colunas novas por acaso)
+    private static final String RESERVATION_COLUMNS = "cod_reserva, cpf_titular, data_reserva, status_reserva";
+    private static final String ITEM_COLUMNS = "cod_res, cod_prod, qntd_item_reserva, preco_reserva";
+
     /**
      * Cria uma nova RESERVA e seus ITENS em uma única transação.
      */
@@ -53,7 +58,7 @@ public class ReservationDAO {
                 }
             }
 
-            // --- PASSO 3: Salvar os Itens (Filhos) ---
+            // --- PASSO 3: Salvar os Itens (Filhos), num único INSERT de várias linhas (reWriteBatchedInserts) ---
             if (reservation.getItems() != null && !reservation.getItems().isEmpty()) {
                 
                 stmtItem = conn.prepareStatement(sqlItem);
@@ -69,6 +74,9 @@ public class ReservationDAO {
                 stmtItem.executeBatch();
             }
 
+            // Idempotency-Key da requisição efetivada na mesma transação
+            IdempotencyStore.getInstance().markCommitted(conn);
+
             conn.commit(); // Salva permanentemente
             
         } catch (SQLException e) {
@@ -83,6 +91,7 @@ public class ReservationDAO {
                 conn.setAutoCommit(true);
                 conn.close();
             }
+            TableVersions.bump(TableVersions.RESERVA);
         }
     }
 
@@ -91,8 +100,8 @@ public class ReservationDAO {
      */
     public Reservation getById(int code) throws SQLException {
         Reservation reservation = null;
-        String sqlReserva = "SELECT * FROM public.reserva WHERE cod_reserva = ?";
-        String sqlItems = "SELECT * FROM public.item_reserva WHERE cod_res = ?";
+        String sqlReserva = "SELECT " + RESERVATION_COLUMNS + " FROM public.reserva WHERE cod_reserva = ?";
+        String sqlItems = "SELECT " + ITEM_COLUMNS + " FROM public.item_reserva WHERE cod_res = ?";
 
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmtReserva = conn.prepareStatement(sqlReserva);
@@ -125,7 +134,7 @@ public class ReservationDAO {
 
     public List<Reservation> getAll() throws SQLException {
         List<Reservation> reservations = new ArrayList<>();
-        String sql = "SELECT * FROM public.reserva";
+        String sql = "SELECT " + RESERVATION_COLUMNS + " FROM public.reserva";
 
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql);
@@ -138,6 +147,22 @@ public class ReservationDAO {
         return reservations;
     }
 
+    /**
+     * Página de reservas (sem itens, como no getAll) ordenada por cod_reserva (keyset): somente linhas com cod_reserva > after.
+     */
+    public List<Reservation> getPage(int after, int limit) throws SQLException {
+        String sql = "SELECT " + RESERVATION_COLUMNS + " FROM public.reserva WHERE cod_reserva > ? ORDER BY cod_reserva LIMIT ?";
+        return QuerySupport.page(sql, after, limit, this::mapRowToReservation);
+    }
+
+    /**
+     * Percorre todas as reservas (sem itens, como no getAll) sem carregar a tabela inteira em memória.
+     */
+    public void streamAll(RowHandler<Reservation> handler) throws SQLException, IOException {
+        String sql = "SELECT " + RESERVATION_COLUMNS + " FROM public.reserva ORDER BY cod_reserva";
+        QuerySupport.stream(sql, this::mapRowToReservation, handler);
+    }
+
     /**
      * Atualiza APENAS o status de uma reserva.
      */
@@ -153,6 +178,8 @@ public class ReservationDAO {
             stmt.setInt(2, reservationId);
             
             stmt.executeUpdate();
+        } finally {
+            TableVersions.bump(TableVersions.RESERVA);
         }
     }
 
@@ -193,27 +220,32 @@ public class ReservationDAO {
                 conn.setAutoCommit(true);
                 conn.close();
             }
+            TableVersions.bump(TableVersions.RESERVA);
         }
     }
 
     /**
-     * Atualiza a reserva (pai) e substitui todos os itens (filhos) em uma única transação.
+     * Atualiza a reserva (pai) e os itens (filhos) em uma única transação. Os itens são
+     * comparados com os gravados (por produto) e só as linhas que mudaram são tocadas.
      */
     public void update(Reservation reservation) throws SQLException {
         String sqlUpdateReserva = "UPDATE public.reserva SET cpf_titular = ?, data_reserva = ?, status_reserva = ? WHERE cod_reserva = ?";
-        String sqlDeleteItems = "DELETE FROM public.item_reserva WHERE cod_res = ?";
+        String sqlItems = "SELECT " + ITEM_COLUMNS + " FROM public.item_reserva WHERE cod_res = ?";
         String sqlInsertItem = "INSERT INTO public.item_reserva (cod_res, cod_prod, qntd_item_reserva, preco_reserva) VALUES (?, ?, ?, ?)";
+        String sqlUpdateItem = "UPDATE public.item_reserva SET qntd_item_reserva = ?, preco_reserva = ? WHERE cod_res = ? AND cod_prod = ?";
+        String sqlDeleteItem = "DELETE FROM public.item_reserva WHERE cod_res = ? AND cod_prod = ?";
 
         Connection conn = null;
         PreparedStatement stmtUpdate = null;
-        PreparedStatement stmtDeleteItems = null;
         PreparedStatement stmtInsertItem = null;
+        PreparedStatement stmtUpdateItem = null;
+        PreparedStatement stmtDeleteItem = null;
 
         try {
             conn = DatabaseConnection.getConnection();
             conn.setAutoCommit(false);
 
-            // Atualiza o registro da reserva (pai)
+            // Atualiza o registro da reserva (pai); a linha fica travada até o commit
             stmtUpdate = conn.prepareStatement(sqlUpdateReserva);
             stmtUpdate.setString(1, reservation.getHolderCpf());
             stmtUpdate.setObject(2, reservation.getReservationDate());
@@ -221,15 +253,50 @@ public class ReservationDAO {
             stmtUpdate.setInt(4, reservation.getCode());
             stmtUpdate.executeUpdate();
 
-            // Deleta os itens antigos
-            stmtDeleteItems = conn.prepareStatement(sqlDeleteItems);
-            stmtDeleteItems.setInt(1, reservation.getCode());
-            stmtDeleteItems.executeUpdate();
+            // Itens gravados, para a diferença
+            List<ReservationItem> stored = new ArrayList<>();
+            try (PreparedStatement stmtItems = conn.prepareStatement(sqlItems)) {
+                stmtItems.setInt(1, reservation.getCode());
+                try (ResultSet rs = stmtItems.executeQuery()) {
+                    while (rs.next()) {
+                        stored.add(mapRowToItem(rs));
+                    }
+                }
+            }
+
+            ChildRowDiff<ReservationItem> diff = ChildRowDiff.of(
+                    stored,
+                    reservation.getItems() != null ? reservation.getItems() : List.of(),
+                    ReservationItem::getProductCode,
+                    (before, after) -> before.getReservationitemQuantity() == after.getReservationitemQuantity()
+                            && ChildRowDiff.sameAmount(before.getReservationPrice(), after.getReservationPrice()));
 
-            // Insere novos itens (se houver)
-            if (reservation.getItems() != null && !reservation.getItems().isEmpty()) {
+            if (!diff.removed().isEmpty()) {
+                stmtDeleteItem = conn.prepareStatement(sqlDeleteItem);
+                for (ReservationItem item : diff.removed()) {
+                    stmtDeleteItem.setInt(1, reservation.getCode());
+                    stmtDeleteItem.setInt(2, item.getProductCode());
+                    stmtDeleteItem.addBatch();
+                }
+                stmtDeleteItem.executeBatch();
+            }
+
+            if (!diff.changed().isEmpty()) {
+                stmtUpdateItem = conn.prepareStatement(sqlUpdateItem);
+                for (ReservationItem item : diff.changed()) {
+                    stmtUpdateItem.setShort(1, item.getReservationitemQuantity());
+                    stmtUpdateItem.setBigDecimal(2, item.getReservationPrice());
+                    stmtUpdateItem.setInt(3, reservation.getCode());
+                    stmtUpdateItem.setInt(4, item.getProductCode());
+                    stmtUpdateItem.addBatch();
+                }
+                stmtUpdateItem.executeBatch();
+            }
+
+            // Um único INSERT de várias linhas (reWriteBatchedInserts)
+            if (!diff.inserted().isEmpty()) {
                 stmtInsertItem = conn.prepareStatement(sqlInsertItem);
-                for (ReservationItem item : reservation.getItems()) {
+                for (ReservationItem item : diff.inserted()) {
                     stmtInsertItem.setInt(1, reservation.getCode());
                     stmtInsertItem.setInt(2, item.getProductCode());
                     stmtInsertItem.setShort(3, item.getReservationitemQuantity());
@@ -242,15 +309,20 @@ public class ReservationDAO {
             conn.commit();
         } catch (SQLException e) {
             if (conn != null) conn.rollback();
+            if (e instanceof DuplicateItemException) {
+                throw e; // O servlet trata como 400, não como erro de banco
+            }
             throw new SQLException("Erro de transação ao atualizar reserva: " + e.getMessage(), e);
         } finally {
+            if (stmtDeleteItem != null) stmtDeleteItem.close();
+            if (stmtUpdateItem != null) stmtUpdateItem.close();
             if (stmtInsertItem != null) stmtInsertItem.close();
-            if (stmtDeleteItems != null) stmtDeleteItems.close();
             if (stmtUpdate != null) stmtUpdate.close();
             if (conn != null) {
                 conn.setAutoCommit(true);
                 conn.close();
             }
+            TableVersions.bump(TableVersions.RESERVA);
         }
     }
 
@@ -0,0 +1,12 @@
+package dao;
+
+import java.io.IOException;
+
+/**
+ * Recebe as linhas uma a uma durante um streamAll(), normalmente escrevendo
+ * direto na resposta HTTP. Nada é acumulado em memória.
+ */
+@FunctionalInterface
+public interface RowHandler<T> {
+    void handle(T row) throws IOException;
+}
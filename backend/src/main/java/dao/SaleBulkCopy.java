@@ -0,0 +1,228 @@
+package dao;
+
+import model.entities.Sale;
+import model.entities.SaleItem;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Carga de vendas em lote via COPY (usado pelo SaleDAO.createBulk).
+ *
+ * Um COPY falha inteiro na primeira linha ruim, então antes dele cada venda é conferida
+ * contra as regras do esquema (CHECKs, produto repetido) e contra o banco (barraca,
+ * usuário e produtos existentes), com uma consulta ANY(?) por tabela.
+ * As vendas aceitas recebem id_venda da sequência (SequenceBlockAllocator.take, uma
+ * consulta para o lote); o id que vier da barraca é só uma referência dela e não é gravado.
+ * As recusadas voltam com o motivo; o resto entra com um COPY para venda e outro para
+ * item_venda, na mesma transação.
+ */
+final class SaleBulkCopy {
+
+    private static final String COPY_SALE =
+            "COPY public.venda (id_venda, data_venda, cod_barraca, cod_usuario) FROM STDIN WITH (FORMAT csv)";
+    private static final String COPY_ITEM =
+            "COPY public.item_venda (cod_prod, id_venda, qntd_venda, preco_venda) FROM STDIN WITH (FORMAT csv)";
+
+    private SaleBulkCopy() {}
+
+    /**
+     * Grava as vendas aceitas, com o id gerado pelo servidor em cada Sale, e devolve as
+     * recusadas (índice na lista -> motivo).
+     * Se o próprio COPY falhar (ex.: corrida com outra escrita), nada do lote é gravado
+     * e a SQLException sobe para quem chamou.
+     */
+    static Map<Integer, String> copy(Connection conn, List<Sale> sales) throws SQLException {
+        Map<Integer, String> rejected = new HashMap<>();
+        validateLocally(sales, rejected);
+        validateAgainstDatabase(conn, sales, rejected);
+        if (rejected.size() == sales.size()) {
+            return rejected;
+        }
+
+        int[] ids = SequenceBlockAllocator.VENDA.take(conn, sales.size() - rejected.size());
+        int next = 0;
+        for (int i = 0; i < sales.size(); i++) {
+            if (!rejected.containsKey(i)) {
+                sales.get(i).setId(ids[next++]);
+            }
+        }
+
+        StringBuilder saleCsv = new StringBuilder(sales.size() * 40);
+        StringBuilder itemCsv = new StringBuilder(sales.size() * 80);
+
+        for (int i = 0; i < sales.size(); i++) {
+            if (rejected.containsKey(i)) {
+                continue;
+            }
+            Sale sale = sales.get(i);
+            saleCsv.append(sale.getId()).append(',')
+                   .append(sale.getSaleDate()).append(',')
+                   .append(sale.getTentCode()).append(',');
+            appendQuoted(saleCsv, sale.getUserCode());
+            saleCsv.append('\n');
+
+            if (sale.getItems() != null) {
+                for (SaleItem item : sale.getItems()) {
+                    itemCsv.append(item.getProductCode()).append(',')
+                           .append(sale.getId()).append(',')
+                           .append(item.getSaleQuantity()).append(',')
+                           .append(item.getSalePrice().toPlainString()).append('\n');
+                }
+            }
+        }
+
+        CopyManager copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+        try {
+            copyManager.copyIn(COPY_SALE, new StringReader(saleCsv.toString()));
+            if (itemCsv.length() > 0) {
+                copyManager.copyIn(COPY_ITEM, new StringReader(itemCsv.toString()));
+            }
+        } catch (IOException e) {
+            throw new SQLException("Falha ao enviar dados do COPY: " + e.getMessage(), e);
+        }
+        return rejected;
+    }
+
+    // Regras que não precisam do banco (CHECKs e chaves do esquema)
+    private static void validateLocally(List<Sale> sales, Map<Integer, String> rejected) {
+        for (int i = 0; i < sales.size(); i++) {
+            Sale sale = sales.get(i);
+            String error = null;
+
+            if (sale.getSaleDate() == null) {
+                error = "saleDate é obrigatório";
+            } else if (sale.getUserCode() == null || sale.getUserCode().length() != 11) {
+                error = "userCode deve ser um CPF com 11 caracteres";
+            } else if (sale.getItems() != null) {
+                Set<Integer> products = new HashSet<>();
+                for (SaleItem item : sale.getItems()) {
+                    if (!products.add(item.getProductCode())) {
+                        error = "produto " + item.getProductCode() + " repetido na venda";
+                    } else if (item.getSaleQuantity() <= 0) {
+                        error = "quantidade do produto " + item.getProductCode() + " deve ser maior que zero";
+                    } else if (item.getSalePrice() == null || item.getSalePrice().signum() <= 0) {
+                        error = "preço do produto " + item.getProductCode() + " deve ser maior que zero";
+                    }
+                    if (error != null) {
+                        break;
+                    }
+                }
+            }
+
+            if (error != null) {
+                rejected.put(i, error);
+            }
+        }
+    }
+
+    // Chaves estrangeiras: uma consulta por tabela para o lote inteiro
+    private static void validateAgainstDatabase(Connection conn, List<Sale> sales,
+                                                Map<Integer, String> rejected) throws SQLException {
+        Set<Integer> tents = new LinkedHashSet<>();
+        Set<String> users = new LinkedHashSet<>();
+        Set<Integer> products = new LinkedHashSet<>();
+
+        for (int i = 0; i < sales.size(); i++) {
+            if (rejected.containsKey(i)) {
+                continue;
+            }
+            Sale sale = sales.get(i);
+            tents.add(sale.getTentCode());
+            users.add(sale.getUserCode());
+            if (sale.getItems() != null) {
+                for (SaleItem item : sale.getItems()) {
+                    products.add(item.getProductCode());
+                }
+            }
+        }
+        if (tents.isEmpty()) {
+            return;
+        }
+
+        Set<Integer> knownTents = existingInts(conn, "SELECT cod_barraca FROM public.barraca WHERE cod_barraca = ANY(?)", tents);
+        Set<Integer> knownProducts = existingInts(conn, "SELECT cod_produto FROM public.produto WHERE cod_produto = ANY(?)", products);
+        Set<String> knownUsers = existingUsers(conn, users);
+
+        for (int i = 0; i < sales.size(); i++) {
+            if (rejected.containsKey(i)) {
+                continue;
+            }
+            Sale sale = sales.get(i);
+            String error = null;
+
+            if (!knownTents.contains(sale.getTentCode())) {
+                error = "barraca " + sale.getTentCode() + " não existe";
+            } else if (!knownUsers.contains(sale.getUserCode())) {
+                error = "usuário " + sale.getUserCode() + " não existe";
+            } else if (sale.getItems() != null) {
+                for (SaleItem item : sale.getItems()) {
+                    if (!knownProducts.contains(item.getProductCode())) {
+                        error = "produto " + item.getProductCode() + " não existe";
+                        break;
+                    }
+                }
+            }
+
+            if (error != null) {
+                rejected.put(i, error);
+            }
+        }
+    }
+
+    private static Set<Integer> existingInts(Connection conn, String sql, Set<Integer> keys) throws SQLException {
+        Set<Integer> found = new HashSet<>();
+        if (keys.isEmpty()) {
+            return found;
+        }
+        Array array = conn.createArrayOf("integer", keys.toArray());
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setArray(1, array);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    found.add(rs.getInt(1));
+                }
+            }
+        } finally {
+            array.free();
+        }
+        return found;
+    }
+
+    private static Set<String> existingUsers(Connection conn, Set<String> cpfs) throws SQLException {
+        Set<String> found = new HashSet<>();
+        List<String> keys = new ArrayList<>(cpfs);
+        Array array = conn.createArrayOf("bpchar", keys.toArray());
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT cpf_usuario FROM public.usuario WHERE cpf_usuario = ANY(?)")) {
+            stmt.setArray(1, array);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    found.add(rs.getString(1));
+                }
+            }
+        } finally {
+            array.free();
+        }
+        return found;
+    }
+
+    // Campo texto no formato CSV do COPY: entre aspas, com aspas internas duplicadas
+    private static void appendQuoted(StringBuilder csv, String value) {
+        csv.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+}
@@ -2,19 +2,29 @@ package dao;
 
 import model.entities.Sale;
 import model.entities.SaleItem;
+import java.io.IOException;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class SaleDAO {
 
+    // Colunas lidas (explícitas: não acompanham colunas novas por acaso)
+    private static final String SALE_COLUMNS = "id_venda, data_venda, cod_barraca, cod_usuario";
+    private static final String ITEM_COLUMNS = "cod_prod, id_venda, qntd_venda, preco_venda";
+
     /**
-     * Cria uma nova Venda e seus Itens em uma única transação.
-     * Assume que o ID da Venda (sale.getId()) JÁ VEM no objeto.
+     * Cria uma nova Venda e seus Itens em uma única transação, dando baixa no estoque
+     * da barraca. Lança InsufficientStockException (e nada é gravado) se faltar estoque.
+     * O ID é gerado pelo servidor (SequenceBlockAllocator) e gravado em sale; o id que
+     * vier do cliente é ignorado.
      */
     public void create(Sale sale) throws SQLException {
         
@@ -25,11 +35,20 @@ public class SaleDAO {
         PreparedStatement stmtSale = null;
         PreparedStatement stmtItem = null;
 
+        // Com o ledger ligado a baixa acontece em memória, antes de pegar conexão do pool
+        StockLedger ledger = StockLedger.getInstance();
+        Map<Integer, Integer> quantities = StockDebit.quantitiesByProduct(sale.getItems());
+        if (ledger.isEnabled()) {
+            ledger.debit(sale.getTentCode(), quantities);
+        }
+        boolean committed = false;
+
         try {
             conn = DatabaseConnection.getConnection();
             conn.setAutoCommit(false); // Inicia transação
 
             // --- PASSO 1: Salvar a Venda (Pai) ---
+            sale.setId(SequenceBlockAllocator.VENDA.next(conn));
             stmtSale = conn.prepareStatement(sqlSale);
             
             stmtSale.setInt(1, sale.getId());
@@ -42,7 +61,12 @@ public class SaleDAO {
                 throw new SQLException("Falha ao criar venda, nenhuma linha afetada.");
             }
 
-            // --- PASSO 2: Salvar os Itens (Filhos) ---
+            // --- PASSO 2: Baixa no estoque (UPDATE condicional, ordem fixa de cod_prod) ---
+            if (!ledger.isEnabled()) {
+                StockDebit.debit(conn, sale.getTentCode(), quantities);
+            }
+
+            // --- PASSO 3: Salvar os Itens (Filhos), num único INSERT de várias linhas (reWriteBatchedInserts) ---
             if (sale.getItems() != null && !sale.getItems().isEmpty()) {
                 
                 stmtItem = conn.prepareStatement(sqlItem);
@@ -57,20 +81,81 @@ public class SaleDAO {
                 stmtItem.executeBatch();
             }
 
+            // --- PASSO 4: Resumo diário, na mesma transação ---
+            SalesRollupDAO.apply(conn, List.of(sale), List.of());
+
+            // Idempotency-Key da requisição efetivada na mesma transação
+            IdempotencyStore.getInstance().markCommitted(conn);
+
             conn.commit(); // Salva
+            committed = true;
             
         } catch (SQLException e) {
             if (conn != null) {
                 conn.rollback(); // Desfaz
             }
+            if (e instanceof InsufficientStockException) {
+                throw e; // O servlet trata como 409, não como erro de banco
+            }
             throw new SQLException("Erro de transação ao salvar Venda: " + e.getMessage(), e);
         } finally {
+            if (ledger.isEnabled() && !committed) {
+                ledger.credit(sale.getTentCode(), quantities); // Venda não gravada: devolve ao ledger
+            }
             if (stmtItem != null) stmtItem.close();
             if (stmtSale != null) stmtSale.close();
             if (conn != null) {
                 conn.setAutoCommit(true);
                 conn.close();
             }
+            TableVersions.bump(TableVersions.VENDA);
+            TableVersions.bump(TableVersions.ESTOQUE);
+            TentStatsCache.getInstance().invalidate(sale.getTentCode(), sale.getSaleDate());
+        }
+    }
+
+    /**
+     * Grava um lote de vendas (com itens) via COPY, numa única transação.
+     * Devolve as vendas recusadas (índice na lista -> motivo); as demais foram gravadas, com
+     * o id gerado pelo servidor em cada Sale (o id que veio da barraca é substituído).
+     * Se o COPY falhar, nada do lote é gravado e a SQLException sobe.
+     *
+     * São vendas já realizadas (ex.: barraca que ficou offline): não há baixa de estoque.
+     */
+    public Map<Integer, String> createBulk(List<Sale> sales) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            conn.setAutoCommit(false);
+
+            Map<Integer, String> rejected = SaleBulkCopy.copy(conn, sales);
+
+            List<Sale> accepted = new ArrayList<>(sales.size() - rejected.size());
+            for (int i = 0; i < sales.size(); i++) {
+                if (!rejected.containsKey(i)) {
+                    accepted.add(sales.get(i));
+                }
+            }
+            SalesRollupDAO.apply(conn, accepted, List.of());
+            conn.commit();
+            return rejected;
+
+        } catch (SQLException e) {
+            if (conn != null) {
+                conn.rollback();
+            }
+            throw e;
+        } finally {
+            if (conn != null) {
+                conn.setAutoCommit(true);
+                conn.close();
+            }
+            TableVersions.bump(TableVersions.VENDA);
+            for (Sale sale : sales) {
+                if (sale.getSaleDate() != null) {
+                    TentStatsCache.getInstance().invalidate(sale.getTentCode(), sale.getSaleDate());
+                }
+            }
         }
     }
 
@@ -79,7 +164,7 @@ public class SaleDAO {
      */
     public Sale getById(int id) throws SQLException {
         Sale sale = null;
-        String sqlSale = "SELECT * FROM public.venda WHERE id_venda = ?";
+        String sqlSale = "SELECT " + SALE_COLUMNS + " FROM public.venda WHERE id_venda = ?";
         
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmtSale = conn.prepareStatement(sqlSale)) {
@@ -105,7 +190,7 @@ public class SaleDAO {
      */
     public List<Sale> getByUserId(String userId) throws SQLException {
         List<Sale> sales = new ArrayList<>();
-        String sql = "SELECT * FROM public.venda WHERE cod_usuario = ?";
+        String sql = "SELECT " + SALE_COLUMNS + " FROM public.venda WHERE cod_usuario = ?";
 
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -114,11 +199,11 @@ public class SaleDAO {
             
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    Sale sale = mapRowToSale(rs);
-                    loadItemsForSale(conn, sale); // Carrega os itens
-                    sales.add(sale);
+                    sales.add(mapRowToSale(rs));
                 }
             }
+
+            loadItemsForSales(conn, sales); // Carrega os itens de todas as vendas em uma única consulta
         }
         return sales;
     }
@@ -128,7 +213,7 @@ public class SaleDAO {
      */
     public List<Sale> getByTentId(int tentId) throws SQLException {
         List<Sale> sales = new ArrayList<>();
-        String sql = "SELECT * FROM public.venda WHERE cod_barraca = ?";
+        String sql = "SELECT " + SALE_COLUMNS + " FROM public.venda WHERE cod_barraca = ?";
 
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -137,11 +222,11 @@ public class SaleDAO {
             
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    Sale sale = mapRowToSale(rs);
-                    loadItemsForSale(conn, sale); // Carrega os itens
-                    sales.add(sale);
+                    sales.add(mapRowToSale(rs));
                 }
             }
+
+            loadItemsForSales(conn, sales); // Carrega os itens de todas as vendas em uma única consulta
         }
         return sales;
     }
@@ -151,7 +236,7 @@ public class SaleDAO {
      */
     public List<Sale> getAll() throws SQLException {
         List<Sale> sales = new ArrayList<>();
-        String sql = "SELECT * FROM public.venda";
+        String sql = "SELECT " + SALE_COLUMNS + " FROM public.venda";
 
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql);
@@ -166,6 +251,22 @@ public class SaleDAO {
         }
         return sales;
     }
+
+    /**
+     * Página de vendas (sem itens, como no getAll) ordenada por id_venda (keyset): somente linhas com id_venda > after.
+     */
+    public List<Sale> getPage(int after, int limit) throws SQLException {
+        String sql = "SELECT " + SALE_COLUMNS + " FROM public.venda WHERE id_venda > ? ORDER BY id_venda LIMIT ?";
+        return QuerySupport.page(sql, after, limit, this::mapRowToSale);
+    }
+
+    /**
+     * Percorre todas as vendas (sem itens, como no getAll) sem carregar a tabela inteira em memória.
+     */
+    public void streamAll(RowHandler<Sale> handler) throws SQLException, IOException {
+        String sql = "SELECT " + SALE_COLUMNS + " FROM public.venda ORDER BY id_venda";
+        QuerySupport.stream(sql, this::mapRowToSale, handler);
+    }
     
     /**
      * Deleta uma venda e seus itens.
@@ -182,6 +283,9 @@ public class SaleDAO {
             conn = DatabaseConnection.getConnection();
             conn.setAutoCommit(false); // Inicia transação
 
+            // 0. Trava a venda e guarda o que sai do resumo diário
+            Sale previous = lockForWrite(conn, id);
+
             // 1. Deleta os "Filhos"
             stmtItems = conn.prepareStatement(sqlItems);
             stmtItems.setInt(1, id);
@@ -191,6 +295,10 @@ public class SaleDAO {
             stmtSale = conn.prepareStatement(sqlSale);
             stmtSale.setInt(1, id);
             stmtSale.executeUpdate();
+
+            if (previous != null) {
+                SalesRollupDAO.apply(conn, List.of(), List.of(previous));
+            }
             
             conn.commit(); 
             
@@ -204,26 +312,34 @@ public class SaleDAO {
                 conn.setAutoCommit(true);
                 conn.close();
             }
+            TableVersions.bump(TableVersions.VENDA);
+            TentStatsCache.getInstance().invalidateAll(); // Barraca e dia antigos não são conhecidos aqui
         }
     }
 
     /**
-     * Atualiza uma Venda.
+     * Atualiza uma Venda. Os itens são comparados com os gravados (por produto) e só as
+     * linhas que mudaram são inseridas, alteradas ou apagadas.
      */
     public void update(Sale sale) throws SQLException {
         String sqlUpdateSale = "UPDATE public.venda SET data_venda = ?, cod_barraca = ?, cod_usuario = ? WHERE id_venda = ?";
-        String sqlDeleteItems = "DELETE FROM public.item_venda WHERE id_venda = ?";
         String sqlInsertItem = "INSERT INTO public.item_venda (cod_prod, id_venda, qntd_venda, preco_venda) VALUES (?, ?, ?, ?)";
+        String sqlUpdateItem = "UPDATE public.item_venda SET qntd_venda = ?, preco_venda = ? WHERE id_venda = ? AND cod_prod = ?";
+        String sqlDeleteItem = "DELETE FROM public.item_venda WHERE id_venda = ? AND cod_prod = ?";
 
         Connection conn = null;
         PreparedStatement stmtUpdate = null;
-        PreparedStatement stmtDeleteItems = null;
         PreparedStatement stmtInsertItem = null;
+        PreparedStatement stmtUpdateItem = null;
+        PreparedStatement stmtDeleteItem = null;
 
         try {
             conn = DatabaseConnection.getConnection();
             conn.setAutoCommit(false);
 
+            // Trava a venda e guarda a versão antiga para o resumo diário (e para a diferença dos itens)
+            Sale previous = lockForWrite(conn, sale.getId());
+
             // Update sale row
             stmtUpdate = conn.prepareStatement(sqlUpdateSale);
             stmtUpdate.setObject(1, sale.getSaleDate());
@@ -232,15 +348,39 @@ public class SaleDAO {
             stmtUpdate.setInt(4, sale.getId());
             stmtUpdate.executeUpdate();
 
-            // Delete existing items
-            stmtDeleteItems = conn.prepareStatement(sqlDeleteItems);
-            stmtDeleteItems.setInt(1, sale.getId());
-            stmtDeleteItems.executeUpdate();
+            ChildRowDiff<SaleItem> diff = ChildRowDiff.of(
+                    previous != null ? previous.getItems() : List.of(),
+                    sale.getItems() != null ? sale.getItems() : List.of(),
+                    SaleItem::getProductCode,
+                    (before, after) -> before.getSaleQuantity() == after.getSaleQuantity()
+                            && ChildRowDiff.sameAmount(before.getSalePrice(), after.getSalePrice()));
 
-            // Insert new items
-            if (sale.getItems() != null && !sale.getItems().isEmpty()) {
+            if (!diff.removed().isEmpty()) {
+                stmtDeleteItem = conn.prepareStatement(sqlDeleteItem);
+                for (SaleItem item : diff.removed()) {
+                    stmtDeleteItem.setInt(1, sale.getId());
+                    stmtDeleteItem.setInt(2, item.getProductCode());
+                    stmtDeleteItem.addBatch();
+                }
+                stmtDeleteItem.executeBatch();
+            }
+
+            if (!diff.changed().isEmpty()) {
+                stmtUpdateItem = conn.prepareStatement(sqlUpdateItem);
+                for (SaleItem item : diff.changed()) {
+                    stmtUpdateItem.setShort(1, item.getSaleQuantity());
+                    stmtUpdateItem.setBigDecimal(2, item.getSalePrice());
+                    stmtUpdateItem.setInt(3, sale.getId());
+                    stmtUpdateItem.setInt(4, item.getProductCode());
+                    stmtUpdateItem.addBatch();
+                }
+                stmtUpdateItem.executeBatch();
+            }
+
+            // Um único INSERT de várias linhas (reWriteBatchedInserts)
+            if (!diff.inserted().isEmpty()) {
                 stmtInsertItem = conn.prepareStatement(sqlInsertItem);
-                for (SaleItem item : sale.getItems()) {
+                for (SaleItem item : diff.inserted()) {
                     stmtInsertItem.setInt(1, item.getProductCode());
                     stmtInsertItem.setInt(2, sale.getId());
                     stmtInsertItem.setShort(3, item.getSaleQuantity());
@@ -250,25 +390,53 @@ public class SaleDAO {
                 stmtInsertItem.executeBatch();
             }
 
+            if (previous != null) {
+                SalesRollupDAO.apply(conn, List.of(sale), List.of(previous));
+            }
+
             conn.commit();
         } catch (SQLException e) {
             if (conn != null) conn.rollback();
+            if (e instanceof DuplicateItemException) {
+                throw e; // O servlet trata como 400, não como erro de banco
+            }
             throw new SQLException("Erro de transação ao atualizar venda: " + e.getMessage(), e);
         } finally {
+            if (stmtDeleteItem != null) stmtDeleteItem.close();
+            if (stmtUpdateItem != null) stmtUpdateItem.close();
             if (stmtInsertItem != null) stmtInsertItem.close();
-            if (stmtDeleteItems != null) stmtDeleteItems.close();
             if (stmtUpdate != null) stmtUpdate.close();
             if (conn != null) {
                 conn.setAutoCommit(true);
                 conn.close();
             }
+            TableVersions.bump(TableVersions.VENDA);
+            TentStatsCache.getInstance().invalidateAll(); // Barraca e dia antigos não são conhecidos aqui
         }
     }
     
     // --- MÉTODOS AJUDANTES ---
 
+    // Lê a venda com SELECT ... FOR UPDATE (e seus itens) dentro da transação de escrita
+    private Sale lockForWrite(Connection conn, int id) throws SQLException {
+        Sale sale = null;
+        String sql = "SELECT " + SALE_COLUMNS + " FROM public.venda WHERE id_venda = ? FOR UPDATE";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    sale = mapRowToSale(rs);
+                }
+            }
+        }
+        if (sale != null) {
+            loadItemsForSale(conn, sale);
+        }
+        return sale;
+    }
+
     private void loadItemsForSale(Connection conn, Sale sale) throws SQLException {
-        String sqlItems = "SELECT * FROM public.item_venda WHERE id_venda = ?";
+        String sqlItems = "SELECT " + ITEM_COLUMNS + " FROM public.item_venda WHERE id_venda = ?";
         try (PreparedStatement stmtItems = conn.prepareStatement(sqlItems)) {
             stmtItems.setInt(1, sale.getId());
             try (ResultSet rsItems = stmtItems.executeQuery()) {
@@ -281,6 +449,41 @@ public class SaleDAO {
         }
     }
 
+    /**
+     * Carrega os itens de várias vendas com uma única consulta (evita o N+1 de
+     * chamar loadItemsForSale para cada venda) e distribui em memória.
+     */
+    private void loadItemsForSales(Connection conn, List<Sale> sales) throws SQLException {
+        if (sales.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, Sale> salesById = new HashMap<>();
+        Integer[] ids = new Integer[sales.size()];
+        for (int i = 0; i < sales.size(); i++) {
+            Sale sale = sales.get(i);
+            sale.setItems(new ArrayList<>());
+            salesById.put(sale.getId(), sale);
+            ids[i] = sale.getId();
+        }
+
+        String sqlItems = "SELECT " + ITEM_COLUMNS + " FROM public.item_venda WHERE id_venda = ANY(?)";
+        try (PreparedStatement stmtItems = conn.prepareStatement(sqlItems)) {
+            Array idArray = conn.createArrayOf("integer", ids);
+            try {
+                stmtItems.setArray(1, idArray);
+                try (ResultSet rsItems = stmtItems.executeQuery()) {
+                    while (rsItems.next()) {
+                        SaleItem item = mapRowToSaleItem(rsItems);
+                        salesById.get(item.getSaleId()).getItems().add(item);
+                    }
+                }
+            } finally {
+                idArray.free();
+            }
+        }
+    }
+
     private Sale mapRowToSale(ResultSet rs) throws SQLException {
         Sale sale = new Sale();
         sale.setId(rs.getInt("id_venda"));
@@ -0,0 +1,318 @@
+package dao;
+
+import model.entities.Sale;
+import model.entities.SaleItem;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Resumos diários de vendas, mantidos junto com cada escrita em venda/item_venda:
+ *
+ *   resumo_diario_venda   (cod_barraca, data_venda)           -> vendas, unidades, receita
+ *   resumo_diario_produto (cod_barraca, data_venda, cod_prod) -> vendas com o produto, unidades, receita
+ *
+ * O SaleDAO chama apply() dentro da própria transação da venda, então o resumo nunca
+ * fica para trás do dado bruto. Painéis e relatórios leem O(dias) linhas daqui em vez
+ * de varrer item_venda. rebuild() recalcula tudo do zero e check() compara com o bruto.
+ *
+ * As tabelas são criadas pela migração V1 (SchemaMigrator).
+ */
+public class SalesRollupDAO {
+
+    public record Mismatch(String level, int tentCode, LocalDate date, Integer productCode,
+                           long expectedSales, long actualSales, long expectedUnits, long actualUnits,
+                           BigDecimal expectedRevenue, BigDecimal actualRevenue) {
+    }
+
+    public record ConsistencyReport(boolean consistent, int mismatches, List<Mismatch> sample) {
+    }
+
+    private static final int MISMATCH_SAMPLE = 100;
+
+    private static final String SQL_UPSERT_DAY =
+            "INSERT INTO public.resumo_diario_venda (cod_barraca, data_venda, qntd_vendas, qntd_unidades, receita) " +
+            "VALUES (?, ?, ?, ?, ?) " +
+            "ON CONFLICT (cod_barraca, data_venda) DO UPDATE SET " +
+            "qntd_vendas = resumo_diario_venda.qntd_vendas + EXCLUDED.qntd_vendas, " +
+            "qntd_unidades = resumo_diario_venda.qntd_unidades + EXCLUDED.qntd_unidades, " +
+            "receita = resumo_diario_venda.receita + EXCLUDED.receita";
+    private static final String SQL_UPSERT_PRODUCT =
+            "INSERT INTO public.resumo_diario_produto (cod_barraca, data_venda, cod_prod, qntd_vendas, qntd_unidades, receita) " +
+            "VALUES (?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (cod_barraca, data_venda, cod_prod) DO UPDATE SET " +
+            "qntd_vendas = resumo_diario_produto.qntd_vendas + EXCLUDED.qntd_vendas, " +
+            "qntd_unidades = resumo_diario_produto.qntd_unidades + EXCLUDED.qntd_unidades, " +
+            "receita = resumo_diario_produto.receita + EXCLUDED.receita";
+    private static final String SQL_PRUNE_DAY =
+            "DELETE FROM public.resumo_diario_venda WHERE cod_barraca = ? AND data_venda = ? AND qntd_vendas <= 0";
+    private static final String SQL_PRUNE_PRODUCT =
+            "DELETE FROM public.resumo_diario_produto WHERE cod_barraca = ? AND data_venda = ? AND cod_prod = ? AND qntd_vendas <= 0";
+
+    // Agregados calculados do dado bruto (usados pelo rebuild e pelo check)
+    private static final String RAW_DAY =
+            "SELECT v.cod_barraca, v.data_venda, COUNT(*) AS qntd_vendas, " +
+            "       COALESCE(SUM(i.unidades), 0) AS qntd_unidades, COALESCE(SUM(i.receita), 0) AS receita " +
+            "FROM public.venda v LEFT JOIN (" +
+            "    SELECT id_venda, SUM(qntd_venda) AS unidades, SUM(qntd_venda * preco_venda) AS receita " +
+            "    FROM public.item_venda GROUP BY id_venda) i ON i.id_venda = v.id_venda " +
+            "GROUP BY v.cod_barraca, v.data_venda";
+    private static final String RAW_PRODUCT =
+            "SELECT v.cod_barraca, v.data_venda, iv.cod_prod, COUNT(*) AS qntd_vendas, " +
+            "       SUM(iv.qntd_venda) AS qntd_unidades, SUM(iv.qntd_venda * iv.preco_venda) AS receita " +
+            "FROM public.venda v JOIN public.item_venda iv ON iv.id_venda = v.id_venda " +
+            "GROUP BY v.cod_barraca, v.data_venda, iv.cod_prod";
+
+    /**
+     * Recalcula os resumos a partir de venda/item_venda, numa única transação.
+     * As tabelas de resumo ficam travadas durante o recálculo: vendas gravadas ao mesmo
+     * tempo esperam e aplicam sua diferença por cima do resultado.
+     */
+    public void rebuild() throws SQLException {
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            conn.setAutoCommit(false);
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("LOCK TABLE public.resumo_diario_venda, public.resumo_diario_produto IN EXCLUSIVE MODE");
+                stmt.executeUpdate("DELETE FROM public.resumo_diario_venda");
+                stmt.executeUpdate("DELETE FROM public.resumo_diario_produto");
+                stmt.executeUpdate("INSERT INTO public.resumo_diario_venda " +
+                        "(cod_barraca, data_venda, qntd_vendas, qntd_unidades, receita) " + RAW_DAY);
+                stmt.executeUpdate("INSERT INTO public.resumo_diario_produto " +
+                        "(cod_barraca, data_venda, cod_prod, qntd_vendas, qntd_unidades, receita) " + RAW_PRODUCT);
+            }
+            conn.commit();
+
+        } catch (SQLException e) {
+            if (conn != null) conn.rollback();
+            throw new SQLException("Erro ao reconstruir resumos de venda: " + e.getMessage(), e);
+        } finally {
+            if (conn != null) {
+                conn.setAutoCommit(true);
+                conn.close();
+            }
+            TentStatsCache.getInstance().invalidateAll();
+        }
+    }
+
+    /**
+     * Compara os resumos com o dado bruto. Devolve o total de divergências e até 100 exemplos.
+     */
+    public ConsistencyReport check() throws SQLException {
+        String sqlDay =
+                "SELECT 'dia' AS nivel, COALESCE(b.cod_barraca, r.cod_barraca) AS cod_barraca, " +
+                "       COALESCE(b.data_venda, r.data_venda) AS data_venda, NULL::int AS cod_prod, " +
+                "       COALESCE(b.qntd_vendas, 0) AS esperado_vendas, COALESCE(r.qntd_vendas, 0) AS atual_vendas, " +
+                "       COALESCE(b.qntd_unidades, 0) AS esperado_unidades, COALESCE(r.qntd_unidades, 0) AS atual_unidades, " +
+                "       COALESCE(b.receita, 0) AS esperado_receita, COALESCE(r.receita, 0) AS atual_receita " +
+                "FROM (" + RAW_DAY + ") b FULL OUTER JOIN public.resumo_diario_venda r " +
+                "  ON r.cod_barraca = b.cod_barraca AND r.data_venda = b.data_venda " +
+                "WHERE b.qntd_vendas IS DISTINCT FROM r.qntd_vendas " +
+                "   OR b.qntd_unidades IS DISTINCT FROM r.qntd_unidades " +
+                "   OR b.receita IS DISTINCT FROM r.receita";
+        String sqlProduct =
+                "SELECT 'produto' AS nivel, COALESCE(b.cod_barraca, r.cod_barraca) AS cod_barraca, " +
+                "       COALESCE(b.data_venda, r.data_venda) AS data_venda, COALESCE(b.cod_prod, r.cod_prod) AS cod_prod, " +
+                "       COALESCE(b.qntd_vendas, 0) AS esperado_vendas, COALESCE(r.qntd_vendas, 0) AS atual_vendas, " +
+                "       COALESCE(b.qntd_unidades, 0) AS esperado_unidades, COALESCE(r.qntd_unidades, 0) AS atual_unidades, " +
+                "       COALESCE(b.receita, 0) AS esperado_receita, COALESCE(r.receita, 0) AS atual_receita " +
+                "FROM (" + RAW_PRODUCT + ") b FULL OUTER JOIN public.resumo_diario_produto r " +
+                "  ON r.cod_barraca = b.cod_barraca AND r.data_venda = b.data_venda AND r.cod_prod = b.cod_prod " +
+                "WHERE b.qntd_vendas IS DISTINCT FROM r.qntd_vendas " +
+                "   OR b.qntd_unidades IS DISTINCT FROM r.qntd_unidades " +
+                "   OR b.receita IS DISTINCT FROM r.receita";
+
+        List<Mismatch> sample = new ArrayList<>();
+        int total = 0;
+
+        // REPEATABLE READ: bruto e resumo lidos do mesmo instante
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+
+            for (String sql : new String[] {sqlDay, sqlProduct}) {
+                try (PreparedStatement stmt = conn.prepareStatement(sql);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        total++;
+                        if (sample.size() < MISMATCH_SAMPLE) {
+                            sample.add(mapRowToMismatch(rs));
+                        }
+                    }
+                }
+            }
+            conn.commit();
+
+        } catch (SQLException | RuntimeException e) {
+            // Fecha a transação: o isolamento só pode voltar fora dela
+            if (conn != null) conn.rollback();
+            throw e;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+                    conn.setAutoCommit(true);
+                } finally {
+                    conn.close(); // Devolve ao pool mesmo se o reset falhar
+                }
+            }
+        }
+        return new ConsistencyReport(total == 0, total, sample);
+    }
+
+    /**
+     * Aplica ao resumo a diferença entre as vendas removidas e as adicionadas, na transação
+     * de quem chamou. Linhas com diferença zero não são tocadas. As linhas são tocadas sempre na mesma ordem (barraca, dia, produto),
+     * o que evita deadlock entre vendas concorrentes.
+     */
+    static void apply(Connection conn, List<Sale> added, List<Sale> removed) throws SQLException {
+        Map<DayKey, Delta> days = new TreeMap<>(DAY_ORDER);
+        Map<ProductKey, Delta> products = new TreeMap<>(PRODUCT_ORDER);
+        accumulate(added, 1, days, products);
+        accumulate(removed, -1, days, products);
+        // Update que não mexe num produto (ou no dia) não regrava a linha do resumo
+        days.values().removeIf(Delta::isZero);
+        products.values().removeIf(Delta::isZero);
+        if (days.isEmpty() && products.isEmpty()) {
+            return;
+        }
+
+        try (PreparedStatement upsertDay = conn.prepareStatement(SQL_UPSERT_DAY);
+             PreparedStatement upsertProduct = conn.prepareStatement(SQL_UPSERT_PRODUCT)) {
+
+            for (Map.Entry<DayKey, Delta> entry : days.entrySet()) {
+                DayKey key = entry.getKey();
+                Delta delta = entry.getValue();
+                upsertDay.setInt(1, key.tentCode());
+                upsertDay.setObject(2, key.date());
+                upsertDay.setInt(3, delta.sales);
+                upsertDay.setLong(4, delta.units);
+                upsertDay.setBigDecimal(5, delta.revenue);
+                upsertDay.addBatch();
+            }
+            if (!days.isEmpty()) {
+                upsertDay.executeBatch();
+            }
+
+            for (Map.Entry<ProductKey, Delta> entry : products.entrySet()) {
+                ProductKey key = entry.getKey();
+                Delta delta = entry.getValue();
+                upsertProduct.setInt(1, key.tentCode());
+                upsertProduct.setObject(2, key.date());
+                upsertProduct.setInt(3, key.productCode());
+                upsertProduct.setInt(4, delta.sales);
+                upsertProduct.setLong(5, delta.units);
+                upsertProduct.setBigDecimal(6, delta.revenue);
+                upsertProduct.addBatch();
+            }
+            if (!products.isEmpty()) {
+                upsertProduct.executeBatch();
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            prune(conn, days, products);
+        }
+    }
+
+    // --- MÉTODOS AJUDANTES ---
+
+    // Linhas que chegaram a zero vendas saem do resumo (como no dado bruto, onde não existem)
+    private static void prune(Connection conn, Map<DayKey, Delta> days, Map<ProductKey, Delta> products) throws SQLException {
+        try (PreparedStatement pruneDay = conn.prepareStatement(SQL_PRUNE_DAY);
+             PreparedStatement pruneProduct = conn.prepareStatement(SQL_PRUNE_PRODUCT)) {
+
+            for (Map.Entry<DayKey, Delta> entry : days.entrySet()) {
+                if (entry.getValue().sales < 0) {
+                    pruneDay.setInt(1, entry.getKey().tentCode());
+                    pruneDay.setObject(2, entry.getKey().date());
+                    pruneDay.addBatch();
+                }
+            }
+            pruneDay.executeBatch();
+
+            for (Map.Entry<ProductKey, Delta> entry : products.entrySet()) {
+                if (entry.getValue().sales < 0) {
+                    pruneProduct.setInt(1, entry.getKey().tentCode());
+                    pruneProduct.setObject(2, entry.getKey().date());
+                    pruneProduct.setInt(3, entry.getKey().productCode());
+                    pruneProduct.addBatch();
+                }
+            }
+            pruneProduct.executeBatch();
+        }
+    }
+
+    private static void accumulate(List<Sale> sales, int sign, Map<DayKey, Delta> days, Map<ProductKey, Delta> products) {
+        for (Sale sale : sales) {
+            DayKey day = new DayKey(sale.getTentCode(), sale.getSaleDate());
+            Delta dayDelta = days.computeIfAbsent(day, k -> new Delta());
+            dayDelta.sales += sign;
+
+            if (sale.getItems() == null) {
+                continue;
+            }
+            for (SaleItem item : sale.getItems()) {
+                long units = (long) sign * item.getSaleQuantity();
+                // Mesmo arredondamento do NUMERIC(10, 2) de preco_venda
+                BigDecimal price = item.getSalePrice().setScale(2, RoundingMode.HALF_UP);
+                BigDecimal revenue = price.multiply(BigDecimal.valueOf(units));
+                dayDelta.units += units;
+                dayDelta.revenue = dayDelta.revenue.add(revenue);
+
+                Delta productDelta = products.computeIfAbsent(
+                        new ProductKey(sale.getTentCode(), sale.getSaleDate(), item.getProductCode()), k -> new Delta());
+                productDelta.sales += sign;
+                productDelta.units += units;
+                productDelta.revenue = productDelta.revenue.add(revenue);
+            }
+        }
+    }
+
+    private Mismatch mapRowToMismatch(ResultSet rs) throws SQLException {
+        return new Mismatch(
+                rs.getString("nivel"),
+                rs.getInt("cod_barraca"),
+                rs.getObject("data_venda", LocalDate.class),
+                (Integer) rs.getObject("cod_prod"),
+                rs.getLong("esperado_vendas"), rs.getLong("atual_vendas"),
+                rs.getLong("esperado_unidades"), rs.getLong("atual_unidades"),
+                rs.getBigDecimal("esperado_receita"), rs.getBigDecimal("atual_receita"));
+    }
+
+    private record DayKey(int tentCode, LocalDate date) {
+    }
+
+    private record ProductKey(int tentCode, LocalDate date, int productCode) {
+    }
+
+    private static final Comparator<DayKey> DAY_ORDER =
+            Comparator.comparingInt(DayKey::tentCode).thenComparing(DayKey::date);
+    private static final Comparator<ProductKey> PRODUCT_ORDER =
+            Comparator.comparingInt(ProductKey::tentCode).thenComparing(ProductKey::date).thenComparingInt(ProductKey::productCode);
+
+    private static final class Delta {
+        int sales;
+        long units;
+        BigDecimal revenue = BigDecimal.ZERO;
+
+        boolean isZero() {
+            return sales == 0 && units == 0 && revenue.signum() == 0;
+        }
+    }
+}
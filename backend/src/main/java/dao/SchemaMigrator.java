@@ -0,0 +1,150 @@
+package dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Migrações versionadas do esquema, aplicadas na subida da aplicação.
+ *
+ * Cada migração é um arquivo em src/main/resources/db/migration, registrado na lista
+ * MIGRATIONS abaixo (a ordem da lista é a ordem de aplicação). As já aplicadas ficam em
+ * schema_migrations com o checksum do arquivo; cada nova roda na sua própria transação,
+ * sob um advisory lock, então duas instâncias subindo juntas não aplicam a mesma duas vezes.
+ *
+ * Para mudar o esquema: crie um novo arquivo Vn__descricao.sql e acrescente-o aqui.
+ * Nunca edite uma migração já publicada (o checksum diferente gera aviso na subida).
+ */
+public final class SchemaMigrator {
+
+    private record Migration(int version, String description, String resource) {
+    }
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "resumos diarios de venda", "db/migration/V1__resumos_diarios_venda.sql"),
+            new Migration(2, "indices das consultas quentes", "db/migration/V2__indices_consultas.sql"),
+            new Migration(3, "armazenamento dos arquivos", "db/migration/V3__armazenamento_arquivos.sql"),
+            new Migration(4, "chaves de idempotencia", "db/migration/V4__idempotencia.sql"),
+            new Migration(5, "sequencias de ids de venda e pagamento", "db/migration/V5__sequencias_ids.sql"),
+            new Migration(6, "dono e efetivacao das chaves de idempotencia", "db/migration/V6__idempotencia_dono.sql"));
+
+    // Chave arbitrária e fixa do pg_advisory_xact_lock das migrações
+    private static final long LOCK_KEY = 0x6665697269L;
+
+    private static final String SQL_CREATE_HISTORY =
+            "CREATE TABLE IF NOT EXISTS public.schema_migrations (" +
+            "    version INT PRIMARY KEY," +
+            "    descricao TEXT NOT NULL," +
+            "    checksum CHAR(64) NOT NULL," +
+            "    aplicada_em TIMESTAMP NOT NULL DEFAULT now())";
+
+    private SchemaMigrator() {}
+
+    /**
+     * Aplica as migrações pendentes e devolve as versões aplicadas nesta chamada.
+     */
+    public static List<Integer> migrate() throws SQLException {
+        List<Integer> applied = new ArrayList<>();
+
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(SQL_CREATE_HISTORY);
+            }
+
+            for (Migration migration : MIGRATIONS) {
+                String sql = load(migration.resource());
+                if (applyIfPending(conn, migration, sql, checksum(sql))) {
+                    applied.add(migration.version());
+                }
+            }
+        }
+        return applied;
+    }
+
+    // Uma transação por migração: ou ela entra inteira (com o registro no histórico) ou nada muda
+    private static boolean applyIfPending(Connection conn, Migration migration, String sql, String checksum)
+            throws SQLException {
+        try {
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement lock = conn.prepareStatement("SELECT pg_advisory_xact_lock(?)")) {
+                lock.setLong(1, LOCK_KEY);
+                lock.execute();
+            }
+
+            // Relido depois do lock: outra instância pode ter acabado de aplicar
+            Map<Integer, String> history = history(conn);
+            if (history.containsKey(migration.version())) {
+                if (!history.get(migration.version()).equals(checksum)) {
+                    System.err.println("[migrations] V" + migration.version() + " foi alterada depois de aplicada ("
+                            + migration.resource() + ")");
+                }
+                conn.rollback();
+                return false;
+            }
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(sql); // O driver aceita vários comandos separados por ';' num Statement simples
+            }
+            try (PreparedStatement insert = conn.prepareStatement(
+                    "INSERT INTO public.schema_migrations (version, descricao, checksum) VALUES (?, ?, ?)")) {
+                insert.setInt(1, migration.version());
+                insert.setString(2, migration.description());
+                insert.setString(3, checksum);
+                insert.executeUpdate();
+            }
+            conn.commit();
+            return true;
+
+        } catch (SQLException e) {
+            conn.rollback();
+            throw new SQLException("Falha na migração V" + migration.version() + " (" + migration.description() + "): "
+                    + e.getMessage(), e);
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static Map<Integer, String> history(Connection conn) throws SQLException {
+        Map<Integer, String> history = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM public.schema_migrations")) {
+            while (rs.next()) {
+                history.put(rs.getInt("version"), rs.getString("checksum"));
+            }
+        }
+        return history;
+    }
+
+    private static String load(String resource) throws SQLException {
+        try (InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new SQLException("Migração não encontrada no classpath: " + resource);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SQLException("Falha ao ler a migração " + resource + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static String checksum(String sql) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sql.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package dao;
+
+import util.Env;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * IDs gerados pelo servidor a partir das sequências SERIAL, buscados em blocos.
+ *
+ * Um bloco de ID_BLOCK_SIZE valores (padrão 50) vem numa única ida ao banco
+ * (nextval numa generate_series) e é distribuído em memória com um AtomicInteger, sem
+ * lock; só quem esgota o bloco busca o próximo (sob lock, uma vez a cada N IDs). Os
+ * valores vêm da própria sequência, então não colidem com outras instâncias nem com
+ * INSERTs que usam o DEFAULT. Buracos (bloco meio usado quando a aplicação cai) são
+ * normais, como em qualquer sequência.
+ *
+ * Nenhuma escrita do backend grava id_venda/id_pagamento vindo do cliente (a carga em lote
+ * também tira os IDs daqui, com take()), então não há lock: nextval já é atômico e não
+ * espera por transação nenhuma.
+ */
+public final class SequenceBlockAllocator {
+
+    private static final int BLOCK_SIZE = Math.max(1, Env.getInt("ID_BLOCK_SIZE", 50));
+
+    public static final SequenceBlockAllocator VENDA = new SequenceBlockAllocator("public.venda_id_venda_seq");
+    public static final SequenceBlockAllocator PAGAMENTO = new SequenceBlockAllocator("public.pagamento_id_pagamento_seq");
+
+    public record AllocatorStats(String sequence, int blockSize, long blocksFetched, long idsIssued, int remaining) {
+    }
+
+    // Bloco imutável; next avança sem lock
+    private record Block(int[] ids, AtomicInteger next) {
+        static final Block EMPTY = new Block(new int[0], new AtomicInteger());
+    }
+
+    private static final String SQL_BLOCK = "SELECT nextval(?::regclass) FROM generate_series(1, ?)";
+
+    private final String sequence;
+    private final ReentrantLock refill = new ReentrantLock();
+    private volatile Block current = Block.EMPTY;
+
+    private final LongAdder blocksFetched = new LongAdder();
+    private final LongAdder idsIssued = new LongAdder();
+
+    private SequenceBlockAllocator(String sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Próximo ID. conn é usada só quando o bloco acaba (nextval não é desfeito por
+     * rollback, então pode ser a conexão da transação do DAO).
+     */
+    public int next(Connection conn) throws SQLException {
+        while (true) {
+            Block block = current;
+            int index = block.next().getAndIncrement();
+            if (index < block.ids().length) {
+                idsIssued.increment();
+                return block.ids()[index];
+            }
+            refill(conn, block);
+        }
+    }
+
+    /**
+     * count IDs novos de uma vez, direto da sequência (fora dos blocos): usado pela carga em
+     * lote, que numera todas as vendas aceitas com uma consulta só.
+     */
+    public int[] take(Connection conn, int count) throws SQLException {
+        int[] ids = fetch(conn, count);
+        idsIssued.add(count);
+        return ids;
+    }
+
+    public AllocatorStats getStats() {
+        Block block = current;
+        int remaining = Math.max(0, block.ids().length - block.next().get());
+        return new AllocatorStats(sequence, BLOCK_SIZE, blocksFetched.sum(), idsIssued.sum(), remaining);
+    }
+
+    // --- MÉTODOS AJUDANTES ---
+
+    private void refill(Connection conn, Block exhausted) throws SQLException {
+        refill.lock();
+        try {
+            if (current != exhausted) {
+                return; // Outra thread já trouxe um bloco novo
+            }
+            int[] ids = fetch(conn, BLOCK_SIZE);
+            blocksFetched.increment();
+            current = new Block(ids, new AtomicInteger());
+        } finally {
+            refill.unlock();
+        }
+    }
+
+    private int[] fetch(Connection conn, int count) throws SQLException {
+        int[] ids = new int[count];
+        int fetched = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(SQL_BLOCK)) {
+            stmt.setString(1, sequence);
+            stmt.setInt(2, count);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids[fetched++] = Math.toIntExact(rs.getLong(1));
+                }
+            }
+        }
+        if (fetched < count) {
+            throw new SQLException("Sequência " + sequence + " devolveu " + fetched + " valores de " + count);
+        }
+        return ids;
+    }
+}
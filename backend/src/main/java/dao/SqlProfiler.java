@@ -0,0 +1,286 @@
+package dao;
+
+import util.Env;
+import util.Metrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Perfil das consultas SQL por texto do statement, alimentado pelo TimedStatement.
+ *
+ * - Por SQL: execuções, p50/p99 (janela do util.Metrics), tempo total, linhas e erros.
+ *   A tabela guarda no máximo SQL_PROFILE_MAX_STATEMENTS textos (padrão 500); quando
+ *   enche, sai o de menor tempo total.
+ * - Consultas a partir de SQL_SLOW_MS (padrão 200; 0 desliga) vão para o log e para a
+ *   lista das últimas SQL_SLOW_LOG_SIZE (padrão 100), com os parâmetros. Valores de
+ *   colunas de CPF e senha (e qualquer texto de 11 dígitos) aparecem mascarados.
+ *
+ * Servido em /api/admin/sql.
+ */
+public final class SqlProfiler {
+
+    private static final SqlProfiler INSTANCE = new SqlProfiler(
+            Env.getBoolean("SQL_PROFILE_ENABLED", true),
+            Env.getInt("SQL_PROFILE_MAX_STATEMENTS", 500),
+            Env.getLong("SQL_SLOW_MS", 200),
+            Env.getInt("SQL_SLOW_LOG_SIZE", 100));
+
+    public static SqlProfiler getInstance() {
+        return INSTANCE;
+    }
+
+    public record StatementStats(String sql, String operation, long count, double p50Millis, double p99Millis,
+                                 double totalMillis, double avgMillis, long rows, long errors) {
+    }
+
+    public record SlowQuery(long at, String operation, String sql, double millis, long rows, boolean error,
+                            List<String> params) {
+    }
+
+    private static final class Entry {
+        final String sql;
+        final String operation;
+        final Metrics.Timer timer = new Metrics.Timer();
+
+        Entry(String sql, String operation) {
+            this.sql = sql;
+            this.operation = operation;
+        }
+    }
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern CPF_VALUE = Pattern.compile("\\d{11}|\\d{3}\\.\\d{3}\\.\\d{3}-\\d{2}");
+    // "coluna = ?", "coluna <> ?", "coluna IN (?", "coluna = ANY(?" ... : a coluna que decide o parâmetro
+    private static final Pattern COMPARISON = Pattern.compile(
+            "([A-Za-z_][A-Za-z0-9_.]*)\\s*(?:=|<>|!=|<=|>=|<|>|\\bIN\\s*\\(|\\bLIKE)\\s*(?:ANY\\s*\\(\\s*)?$",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern AFTER_VALUES = Pattern.compile("\\bON\\s+CONFLICT\\b|\\bRETURNING\\b",
+            Pattern.CASE_INSENSITIVE);
+    // "?, ?" : o '?' seguinte é da mesma lista ("coluna IN (?, ?, ?)") e herda a coluna
+    private static final Pattern LIST_SEPARATOR = Pattern.compile("\\s*,\\s*");
+    private static final Pattern INSERT = Pattern.compile("INSERT\\s+INTO\\s+[^(]+\\(([^)]*)\\)\\s*VALUES\\s*\\(",
+            Pattern.CASE_INSENSITIVE);
+
+    private final boolean enabled;
+    private final int maxStatements;
+    private final long slowNanos;
+    private final int slowLogSize;
+
+    private final Map<String, Entry> statements = new ConcurrentHashMap<>();
+    // Posições de parâmetros sensíveis por texto de SQL (calculado uma vez por texto)
+    private final Map<String, boolean[]> sensitive = new ConcurrentHashMap<>();
+    private final Deque<SlowQuery> slowLog = new ArrayDeque<>();
+
+    private SqlProfiler(boolean enabled, int maxStatements, long slowMillis, int slowLogSize) {
+        this.enabled = enabled;
+        this.maxStatements = maxStatements;
+        this.slowNanos = slowMillis <= 0 ? Long.MAX_VALUE : slowMillis * 1_000_000;
+        this.slowLogSize = slowLogSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Registra uma execução. params = valores ligados ao statement (posição 1 no índice 1), ou null.
+     */
+    void record(String sql, String operation, long nanos, long rows, boolean error, Object[] params) {
+        if (!enabled || sql == null) {
+            return;
+        }
+        Entry entry = statements.get(sql);
+        if (entry == null) {
+            entry = register(sql, operation);
+        }
+        entry.timer.record(nanos, rows, error);
+
+        if (nanos >= slowNanos) {
+            SlowQuery slow = new SlowQuery(System.currentTimeMillis(), operation, normalize(sql), nanos / 1e6, rows,
+                    error, maskedParams(sql, params));
+            System.err.println("[slow-query] " + String.format(Locale.ROOT, "%.1f", slow.millis()) + " ms "
+                    + operation + " (" + rows + " linhas): " + slow.sql() + " | parâmetros: " + slow.params());
+            synchronized (slowLog) {
+                slowLog.addFirst(slow);
+                while (slowLog.size() > slowLogSize) {
+                    slowLog.removeLast();
+                }
+            }
+        }
+    }
+
+    /**
+     * Tabela de statements ordenada por "total" (padrão), "count", "p99", "avg" ou "rows".
+     */
+    public List<StatementStats> getStatements(String sort, int limit) {
+        List<StatementStats> result = new ArrayList<>();
+        for (Entry entry : statements.values()) {
+            Metrics.Timer timer = entry.timer;
+            long count = timer.count();
+            long[] p = timer.percentiles(0.5, 0.99);
+            double total = timer.sumNanos() / 1e6;
+            result.add(new StatementStats(normalize(entry.sql), entry.operation, count, p[0] / 1e6, p[1] / 1e6,
+                    total, count == 0 ? 0 : total / count, timer.rows(), timer.errors()));
+        }
+        Comparator<StatementStats> order = switch (sort == null ? "total" : sort) {
+            case "count" -> Comparator.comparingLong(StatementStats::count);
+            case "p99" -> Comparator.comparingDouble(StatementStats::p99Millis);
+            case "avg" -> Comparator.comparingDouble(StatementStats::avgMillis);
+            case "rows" -> Comparator.comparingLong(StatementStats::rows);
+            case "total" -> Comparator.comparingDouble(StatementStats::totalMillis);
+            default -> throw new IllegalArgumentException("Ordenação desconhecida: " + sort);
+        };
+        result.sort(order.reversed());
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    public List<SlowQuery> getSlowQueries() {
+        synchronized (slowLog) {
+            return new ArrayList<>(slowLog);
+        }
+    }
+
+    public void reset() {
+        statements.clear();
+        synchronized (slowLog) {
+            slowLog.clear();
+        }
+    }
+
+    // --- MÉTODOS AJUDANTES ---
+
+    private synchronized Entry register(String sql, String operation) {
+        Entry entry = statements.get(sql);
+        if (entry != null) {
+            return entry;
+        }
+        if (statements.size() >= maxStatements) {
+            // Cheio: sai o statement que menos pesou no total
+            statements.values().stream()
+                    .min(Comparator.comparingLong(e -> e.timer.sumNanos()))
+                    .ifPresent(victim -> statements.remove(victim.sql));
+        }
+        entry = new Entry(sql, operation);
+        statements.put(sql, entry);
+        return entry;
+    }
+
+    private List<String> maskedParams(String sql, Object[] params) {
+        List<String> values = new ArrayList<>();
+        if (params == null) {
+            return values;
+        }
+        if (sensitive.size() > maxStatements) {
+            sensitive.clear(); // SQL montado dinamicamente: não deixa o mapa crescer sem limite
+        }
+        boolean[] hidden = sensitive.computeIfAbsent(sql, SqlProfiler::sensitivePositions);
+        for (int i = 1; i < params.length; i++) {
+            Object value = params[i];
+            boolean mask = i < hidden.length && hidden[i];
+            values.add(mask ? mask(value) : format(value));
+        }
+        return values;
+    }
+
+    private static String format(Object value) {
+        if (value == null) {
+            return "NULL";
+        }
+        if (value instanceof byte[] bytes) {
+            return "<" + bytes.length + " bytes>";
+        }
+        String text = value.toString();
+        if (value instanceof CharSequence) {
+            return CPF_VALUE.matcher(text).matches() ? mask(text) : "'" + text + "'";
+        }
+        return text;
+    }
+
+    // De um CPF só ficam os 2 últimos dígitos (o bastante para conferir com quem reclamou); o resto some
+    static String mask(Object value) {
+        if (value == null) {
+            return "NULL";
+        }
+        String text = value.toString();
+        if (CPF_VALUE.matcher(text).matches()) {
+            return "'*********" + text.substring(text.length() - 2) + "'";
+        }
+        return "'***'";
+    }
+
+    /**
+     * Marca os '?' do SQL que caem em colunas de CPF ou senha: "cpf_dono = ?" e
+     * "INSERT INTO t (cpf_usuario, senha) VALUES (?, ?)". Índice 0 não é usado.
+     */
+    static boolean[] sensitivePositions(String sql) {
+        List<Boolean> marks = new ArrayList<>();
+        marks.add(false);
+
+        List<String> insertColumns = null;
+        int valuesStart = -1;
+        int valuesEnd = -1;
+        Matcher insert = INSERT.matcher(sql);
+        if (insert.find()) {
+            insertColumns = new ArrayList<>();
+            for (String column : insert.group(1).split(",")) {
+                insertColumns.add(column.trim());
+            }
+            valuesStart = insert.end();
+            Matcher after = AFTER_VALUES.matcher(sql);
+            valuesEnd = after.find(valuesStart) ? after.start() : sql.length();
+        }
+
+        boolean quoted = false;
+        int valueIndex = 0;
+        int previous = -1;
+        String previousColumn = null;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            }
+            if (quoted || c != '?') {
+                continue;
+            }
+            String column = null;
+            if (insertColumns != null && i >= valuesStart && i < valuesEnd) {
+                // VALUES com várias linhas: as colunas se repetem a cada tupla
+                column = insertColumns.get(valueIndex++ % insertColumns.size());
+            } else if (previous >= 0 && LIST_SEPARATOR.matcher(sql.substring(previous + 1, i)).matches()) {
+                column = previousColumn;
+            } else {
+                Matcher comparison = COMPARISON.matcher(sql.substring(Math.max(0, i - 80), i));
+                if (comparison.find()) {
+                    column = comparison.group(1);
+                }
+            }
+            marks.add(column != null && isSensitiveColumn(column));
+            previous = i;
+            previousColumn = column;
+        }
+
+        boolean[] result = new boolean[marks.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = marks.get(i);
+        }
+        return result;
+    }
+
+    private static boolean isSensitiveColumn(String column) {
+        String name = column.toLowerCase(Locale.ROOT);
+        return name.contains("cpf") || name.contains("senha") || name.contains("password");
+    }
+
+    private static String normalize(String sql) {
+        return WHITESPACE.matcher(sql).replaceAll(" ").trim();
+    }
+}
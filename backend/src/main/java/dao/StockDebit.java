@@ -0,0 +1,84 @@
+package dao;
+
+import model.entities.SaleItem;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Baixa de estoque dentro da transação de quem chama (ex.: SaleDAO.create).
+ *
+ * - Cada baixa é um UPDATE condicional: a linha só muda se houver quantidade suficiente,
+ *   então duas vendas concorrentes do último item nunca passam as duas.
+ * - As linhas de estoque são travadas sempre na mesma ordem (cod_barraca, cod_prod),
+ *   o que evita deadlock entre vendas com os mesmos produtos em ordens diferentes.
+ * - O CHECK (qntd_estoque > 0) do esquema não aceita zero: quem compra exatamente o
+ *   que resta apaga a linha (sem linha = sem estoque, como no resto do sistema).
+ */
+final class StockDebit {
+
+    private static final String SQL_DECREMENT =
+            "UPDATE public.estoque SET qntd_estoque = qntd_estoque - ? " +
+            "WHERE cod_barraca = ? AND cod_prod = ? AND qntd_estoque > ?";
+    private static final String SQL_SELL_OUT =
+            "DELETE FROM public.estoque WHERE cod_barraca = ? AND cod_prod = ? AND qntd_estoque = ?";
+
+    private StockDebit() {}
+
+    /**
+     * Soma as quantidades por produto (itens repetidos viram uma baixa só), já em ordem de cod_prod.
+     */
+    static Map<Integer, Integer> quantitiesByProduct(List<SaleItem> items) {
+        Map<Integer, Integer> quantities = new TreeMap<>();
+        if (items != null) {
+            for (SaleItem item : items) {
+                quantities.merge(item.getProductCode(), (int) item.getSaleQuantity(), Integer::sum);
+            }
+        }
+        return quantities;
+    }
+
+    /**
+     * Debita o estoque da barraca. Lança InsufficientStockException no primeiro
+     * produto sem saldo; quem chamou deve desfazer a transação.
+     */
+    static void debit(Connection conn, int tentCode, Map<Integer, Integer> quantitiesByProduct) throws SQLException {
+        if (quantitiesByProduct.isEmpty()) {
+            return;
+        }
+        // TreeMap garante a ordem de travamento mesmo se vier outro Map
+        Map<Integer, Integer> ordered = quantitiesByProduct instanceof TreeMap
+                ? quantitiesByProduct : new TreeMap<>(quantitiesByProduct);
+
+        try (PreparedStatement decrement = conn.prepareStatement(SQL_DECREMENT);
+             PreparedStatement sellOut = conn.prepareStatement(SQL_SELL_OUT)) {
+
+            for (Map.Entry<Integer, Integer> entry : ordered.entrySet()) {
+                int productCode = entry.getKey();
+                int quantity = entry.getValue();
+
+                decrement.setInt(1, quantity);
+                decrement.setInt(2, tentCode);
+                decrement.setInt(3, productCode);
+                decrement.setInt(4, quantity);
+                if (decrement.executeUpdate() == 1) {
+                    continue;
+                }
+
+                // Sobrou exatamente a quantidade pedida: a venda zera o estoque
+                sellOut.setInt(1, tentCode);
+                sellOut.setInt(2, productCode);
+                sellOut.setInt(3, quantity);
+                if (sellOut.executeUpdate() == 1) {
+                    continue;
+                }
+
+                throw new InsufficientStockException(tentCode, productCode, quantity);
+            }
+        }
+    }
+}
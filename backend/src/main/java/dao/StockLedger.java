@@ -0,0 +1,305 @@
+package dao;
+
+import model.entities.Stock;
+import util.Env;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Razão (ledger) de estoque em memória, com gravação posterior (write-behind) na tabela estoque.
+ *
+ * Ligado por STOCK_LEDGER_ENABLED=true (padrão: desligado, e a venda baixa o estoque
+ * direto no banco via StockDebit). Com o ledger ligado:
+ *
+ * - cada (barraca, produto) é um contador atômico; a baixa é um CAS sem lock, então o
+ *   checkout não espera o banco para saber se há estoque;
+ * - as chaves alteradas entram numa fila e são gravadas em lote a cada
+ *   STOCK_FLUSH_INTERVAL_MS (padrão 500) com o mesmo upsert ON CONFLICT do TentDAO.updateStock;
+ * - na subida, rebuild() recarrega tudo da tabela estoque. O rebuild pega a trava de escrita;
+ *   debit/credit/set pegam a de leitura (várias baixas ao mesmo tempo, mas nenhuma durante a
+ *   troca do mapa, que não pode perder nem aplicar uma baixa a um contador descartado).
+ *
+ * O ledger é a fonte da verdade enquanto a aplicação está no ar: só funciona com UMA
+ * instância do backend escrevendo no estoque.
+ */
+public final class StockLedger {
+
+    private static final StockLedger INSTANCE = new StockLedger(
+            Env.getBoolean("STOCK_LEDGER_ENABLED", false),
+            Env.getLong("STOCK_FLUSH_INTERVAL_MS", 500));
+
+    public static StockLedger getInstance() {
+        return INSTANCE;
+    }
+
+    public record LedgerStats(boolean enabled, int trackedItems, int queueDepth, long oldestPendingMillis,
+                              long flushes, long rowsFlushed, long flushFailures,
+                              long lastFlushMillis, long lastFlushAgoMillis) {
+    }
+
+    private final boolean enabled;
+    private final long flushIntervalMillis;
+
+    /**
+     * Escrita no banco feita por set() com o flush parado.
+     */
+    @FunctionalInterface
+    public interface StockWrite {
+        void write() throws SQLException;
+    }
+
+    // Chave (barraca, produto) empacotada em um long -> quantidade atual; trocado inteiro no rebuild
+    private volatile Map<Long, AtomicInteger> quantities = new ConcurrentHashMap<>();
+    // Fila de write-behind: chave alterada -> instante da primeira alteração ainda não gravada
+    private final Map<Long, Long> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder rowsFlushed = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private volatile long lastFlushMillis;
+    private volatile long lastFlushAt;
+
+    // Ordem das travas: swapLock antes de flushLock
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final Object flushLock = new Object();
+    private ScheduledExecutorService flusher;
+
+    private StockLedger(boolean enabled, long flushIntervalMillis) {
+        this.enabled = enabled;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Recarrega o ledger a partir da tabela estoque e inicia o flush periódico.
+     * Chamado uma vez na subida da aplicação.
+     */
+    public synchronized void start() throws SQLException {
+        if (!enabled || flusher != null) {
+            return;
+        }
+        rebuild();
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "stock-ledger-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Para o flush periódico e grava o que ainda estiver pendente.
+     */
+    public synchronized void stop() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        flusher = null;
+        flushQuietly();
+    }
+
+    /**
+     * Caminho de recuperação: grava as baixas pendentes, relê a tabela estoque e troca o
+     * estado em memória. As baixas esperam durante a troca; se o flush falhar, nada muda.
+     */
+    public void rebuild() throws SQLException {
+        String sql = "SELECT cod_barraca, cod_prod, qntd_estoque FROM public.estoque";
+
+        swapLock.writeLock().lock();
+        try {
+            synchronized (flushLock) {
+                flush(); // Não perde baixas ainda não gravadas
+
+                Map<Long, AtomicInteger> loaded = new ConcurrentHashMap<>();
+                try (Connection conn = DatabaseConnection.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(sql);
+                     ResultSet rs = stmt.executeQuery()) {
+
+                    while (rs.next()) {
+                        loaded.put(key(rs.getInt("cod_barraca"), rs.getInt("cod_prod")),
+                                new AtomicInteger(rs.getInt("qntd_estoque")));
+                    }
+                }
+                pending.clear();
+                quantities = loaded;
+            }
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+    }
+
+    public int quantity(int tentCode, int productCode) {
+        AtomicInteger counter = quantities.get(key(tentCode, productCode));
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Debita todos os produtos ou nenhum. Se algum não tiver saldo, devolve o que já
+     * foi debitado e lança InsufficientStockException.
+     */
+    public void debit(int tentCode, Map<Integer, Integer> quantitiesByProduct) throws InsufficientStockException {
+        swapLock.readLock().lock();
+        try {
+            List<Map.Entry<Integer, Integer>> done = new ArrayList<>();
+            for (Map.Entry<Integer, Integer> entry : quantitiesByProduct.entrySet()) {
+                if (!tryDebit(tentCode, entry.getKey(), entry.getValue())) {
+                    for (Map.Entry<Integer, Integer> undo : done) {
+                        add(tentCode, undo.getKey(), undo.getValue());
+                    }
+                    throw new InsufficientStockException(tentCode, entry.getKey(), entry.getValue());
+                }
+                done.add(entry);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Devolve quantidades debitadas (compensação quando a transação da venda falha).
+     */
+    public void credit(int tentCode, Map<Integer, Integer> quantitiesByProduct) {
+        swapLock.readLock().lock();
+        try {
+            for (Map.Entry<Integer, Integer> entry : quantitiesByProduct.entrySet()) {
+                add(tentCode, entry.getKey(), entry.getValue());
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Valor absoluto (TentDAO.updateStock): write grava no banco e o contador é alinhado,
+     * os dois com o flush parado. Um flush que já leu o valor antigo não sobrescreve a linha nova.
+     */
+    public void set(int tentCode, int productCode, int quantity, StockWrite write) throws SQLException {
+        swapLock.readLock().lock();
+        try {
+            synchronized (flushLock) {
+                write.write();
+                quantities.computeIfAbsent(key(tentCode, productCode), k -> new AtomicInteger()).set(quantity);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Grava no banco as chaves pendentes, em lote. Em caso de falha elas voltam para a fila.
+     */
+    public void flush() throws SQLException {
+        synchronized (flushLock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            long start = System.nanoTime();
+
+            Map<Long, Long> batch = new java.util.HashMap<>();
+            for (Iterator<Map.Entry<Long, Long>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Long, Long> entry = it.next();
+                batch.put(entry.getKey(), entry.getValue());
+                it.remove();
+            }
+
+            // Lê o valor atual no momento do flush: várias alterações viram uma escrita só
+            List<Stock> rows = new ArrayList<>(batch.size());
+            for (Long k : batch.keySet()) {
+                rows.add(new Stock(productOf(k), tentOf(k), (short) quantities.get(k).get()));
+            }
+
+            try {
+                new TentDAO().writeStockBatch(rows);
+                flushes.increment();
+                rowsFlushed.add(rows.size());
+            } catch (SQLException | RuntimeException e) {
+                flushFailures.increment();
+                // Devolve à fila mantendo o instante original (a métrica de atraso continua correta)
+                batch.forEach((k, since) -> pending.merge(k, since, Math::min));
+                throw e;
+            } finally {
+                lastFlushMillis = (System.nanoTime() - start) / 1_000_000;
+                lastFlushAt = System.currentTimeMillis();
+            }
+        }
+    }
+
+    public LedgerStats getStats() {
+        long now = System.currentTimeMillis();
+        long oldest = 0;
+        for (Long since : pending.values()) {
+            oldest = Math.max(oldest, now - since);
+        }
+        return new LedgerStats(enabled, quantities.size(), pending.size(), oldest,
+                flushes.sum(), rowsFlushed.sum(), flushFailures.sum(),
+                lastFlushMillis, lastFlushAt == 0 ? -1 : now - lastFlushAt);
+    }
+
+    // --- MÉTODOS AJUDANTES ---
+
+    private boolean tryDebit(int tentCode, int productCode, int amount) {
+        AtomicInteger counter = quantities.get(key(tentCode, productCode));
+        if (counter == null) {
+            return false; // Sem linha de estoque = sem estoque
+        }
+        while (true) {
+            int current = counter.get();
+            if (current < amount) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current - amount)) {
+                markDirty(key(tentCode, productCode));
+                return true;
+            }
+        }
+    }
+
+    private void add(int tentCode, int productCode, int amount) {
+        long k = key(tentCode, productCode);
+        quantities.computeIfAbsent(k, x -> new AtomicInteger()).addAndGet(amount);
+        markDirty(k);
+    }
+
+    private void markDirty(long k) {
+        pending.putIfAbsent(k, System.currentTimeMillis());
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("[stock-ledger] Falha ao gravar estoque: " + e.getMessage());
+        }
+    }
+
+    private static long key(int tentCode, int productCode) {
+        return ((long) tentCode << 32) | (productCode & 0xFFFFFFFFL);
+    }
+
+    private static int tentOf(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int productOf(long key) {
+        return (int) key;
+    }
+}
@@ -0,0 +1,83 @@
+package dao;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Versão em memória de cada tabela, incrementada pelos métodos de escrita dos DAOs.
+ * Serve de base para o ETag/Last-Modified das respostas GET: enquanto a versão não
+ * muda, o cliente pode reaproveitar o que já tem (304) sem consulta ao banco.
+ *
+ * Só enxerga escritas feitas por esta instância do backend através dos DAOs.
+ */
+public final class TableVersions {
+
+    public static final String PRODUTO = "produto";
+    public static final String BARRACA = "barraca";
+    public static final String ESTOQUE = "estoque";
+    public static final String VENDA = "venda";
+    public static final String RESERVA = "reserva";
+    public static final String PAGAMENTO = "pagamento";
+    public static final String USUARIO = "usuario";
+
+    // Diferencia versões de subidas diferentes do backend (contadores recomeçam do zero)
+    private static final String BOOT_ID = Long.toString(System.currentTimeMillis(), 36);
+
+    private static final Map<String, Version> VERSIONS = new ConcurrentHashMap<>();
+
+    private TableVersions() {}
+
+    // Last-Modified tem resolução de segundos. repeated: houve mais de uma versão nesse
+    // segundo, então um Last-Modified igual a ele pode ser de uma versão já superada
+    private record Stamp(long lastModified, boolean repeated) {
+    }
+
+    private static final class Version {
+        final AtomicLong counter = new AtomicLong();
+        final AtomicReference<Stamp> stamp = new AtomicReference<>(new Stamp(currentSecond(), false));
+    }
+
+    /**
+     * Marca a tabela como alterada. Chamado depois de cada escrita (com ou sem sucesso).
+     */
+    public static void bump(String table) {
+        Version v = version(table);
+        v.counter.incrementAndGet();
+        long now = currentSecond();
+        v.stamp.updateAndGet(s -> now > s.lastModified() ? new Stamp(now, false) : new Stamp(s.lastModified(), true));
+    }
+
+    /**
+     * ETag forte para o estado atual da tabela, ex.: "produto-m1x2y3-17".
+     */
+    public static String etag(String table) {
+        return "\"" + table + "-" + BOOT_ID + "-" + version(table).counter.get() + "\"";
+    }
+
+    public static long lastModified(String table) {
+        return version(table).stamp.get().lastModified();
+    }
+
+    /**
+     * true se a tabela não mudou desde ifModifiedSince (If-Modified-Since, em ms). Se houve
+     * mais de uma escrita no segundo do Last-Modified, a data sozinha não diz qual versão o
+     * cliente tem: só o ETag (If-None-Match) dá 304 até a próxima escrita num segundo novo.
+     */
+    public static boolean notModifiedSince(String table, long ifModifiedSince) {
+        Stamp s = version(table).stamp.get();
+        if (s.repeated()) {
+            return ifModifiedSince >= s.lastModified() + 1000;
+        }
+        return ifModifiedSince >= s.lastModified();
+    }
+
+    private static Version version(String table) {
+        return VERSIONS.computeIfAbsent(table, t -> new Version());
+    }
+
+    private static long currentSecond() {
+        return System.currentTimeMillis() / 1000 * 1000;
+    }
+}
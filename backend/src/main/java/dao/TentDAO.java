@@ -2,15 +2,28 @@ package dao;
 
 import model.entities.Stock;
 import model.entities.Tent;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class TentDAO {
 
+    // Campos selecionáveis por ?fields=; a licença (BYTEA) só vem quando pedida
+    public static final Projection FIELDS = Projection.key("code", "cod_barraca")
+            .field("cpfHolder", "cpf_dono")
+            .field("name", "nome_barraca")
+            .binary("userLicense", "licensa_usuario");
+
+    // Insere o estoque se não existir, ou atualiza se já existir
+    private static final String UPSERT_STOCK_SQL = "INSERT INTO public.estoque (cod_prod, cod_barraca, qntd_estoque) " +
+                                                   "VALUES (?, ?, ?) " +
+                                                   "ON CONFLICT (cod_prod, cod_barraca) DO UPDATE SET qntd_estoque = EXCLUDED.qntd_estoque";
+
     /**
      * Cria uma nova barraca no banco de dados.
      */
@@ -28,15 +41,24 @@ public class TentDAO {
             stmt.setBytes(4, tent.getUserLicense()); 
             
             stmt.executeUpdate();
+        } finally {
+            TableVersions.bump(TableVersions.BARRACA);
         }
     }
 
     /**
-     * Busca uma barraca pelo ID.
+     * Busca uma barraca pelo ID (sem a licença).
      */
     public Tent getById(int id) throws SQLException {
+        return getById(id, FIELDS.defaults());
+    }
+
+    /**
+     * Busca uma barraca pelo ID, lendo só as colunas dos campos pedidos.
+     */
+    public Tent getById(int id, Set<String> fields) throws SQLException {
         Tent tent = null;
-        String sql = "SELECT * FROM public.barraca WHERE cod_barraca = ?";
+        String sql = "SELECT " + FIELDS.columns(fields) + " FROM public.barraca WHERE cod_barraca = ?";
 
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -45,7 +67,7 @@ public class TentDAO {
             
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    tent = mapRowToTent(rs);
+                    tent = mapRowToTent(rs, fields);
                 }
             }
         }
@@ -53,29 +75,53 @@ public class TentDAO {
     }
 
     /**
-     * Busca todas as barracas.
+     * Busca todas as barracas (sem a licença).
      */
     public List<Tent> getAll() throws SQLException {
+        return getAll(FIELDS.defaults());
+    }
+
+    /**
+     * Busca todas as barracas, lendo só as colunas dos campos pedidos.
+     */
+    public List<Tent> getAll(Set<String> fields) throws SQLException {
         List<Tent> tents = new ArrayList<>();
-        String sql = "SELECT * FROM public.barraca";
+        String sql = "SELECT " + FIELDS.columns(fields) + " FROM public.barraca";
 
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql);
              ResultSet rs = stmt.executeQuery()) {
             
             while (rs.next()) {
-                tents.add(mapRowToTent(rs));
+                tents.add(mapRowToTent(rs, fields));
             }
         }
         return tents;
     }
 
     /**
-     * Atualiza uma barraca (nome e licença).
+     * Página de barracas ordenada por cod_barraca (keyset): somente linhas com cod_barraca > after.
+     */
+    public List<Tent> getPage(int after, int limit, Set<String> fields) throws SQLException {
+        String sql = "SELECT " + FIELDS.columns(fields) + " FROM public.barraca WHERE cod_barraca > ? ORDER BY cod_barraca LIMIT ?";
+        return QuerySupport.page(sql, after, limit, rs -> mapRowToTent(rs, fields));
+    }
+
+    /**
+     * Percorre todas as barracas sem carregar a tabela inteira em memória.
+     */
+    public void streamAll(Set<String> fields, RowHandler<Tent> handler) throws SQLException, IOException {
+        String sql = "SELECT " + FIELDS.columns(fields) + " FROM public.barraca ORDER BY cod_barraca";
+        QuerySupport.stream(sql, rs -> mapRowToTent(rs, fields), handler);
+    }
+
+    /**
+     * Atualiza uma barraca (nome e licença). Sem licença no objeto, mantém a atual
+     * (as leituras não trazem mais a licença por padrão).
      */
     public void update(Tent tent) throws SQLException {
         // CORREÇÃO: SQL e parâmetros estavam errados
-        String sql = "UPDATE public.barraca SET nome_barraca = ?, licensa_usuario = ?, cpf_dono = ? WHERE cod_barraca = ?";
+        String sql = "UPDATE public.barraca SET nome_barraca = ?, licensa_usuario = COALESCE(?, licensa_usuario), cpf_dono = ? WHERE cod_barraca = ?";
         
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -86,6 +132,8 @@ public class TentDAO {
             stmt.setInt(4, tent.getCode()); // Parâmetro do WHERE
             
             stmt.executeUpdate();
+        } finally {
+            TableVersions.bump(TableVersions.BARRACA);
         }
     }
 
@@ -100,28 +148,41 @@ public class TentDAO {
             
             stmt.setInt(1, id); // CORREÇÃO: Era 'setString'
             stmt.executeUpdate();
+        } finally {
+            TableVersions.bump(TableVersions.BARRACA);
         }
     }
 
-    // MÉTODO AJUDANTE: Mapeia a linha para o objeto
-    private Tent mapRowToTent(ResultSet rs) throws SQLException {
+    // MÉTODO AJUDANTE: Mapeia a linha para o objeto (só as colunas selecionadas)
+    private Tent mapRowToTent(ResultSet rs, Set<String> fields) throws SQLException {
         Tent t = new Tent();
         t.setCode(rs.getInt("cod_barraca"));
-        t.setCpfHolder(rs.getString("cpf_dono"));
-        t.setName(rs.getString("nome_barraca"));
+        if (fields.contains("cpfHolder")) t.setCpfHolder(rs.getString("cpf_dono"));
+        if (fields.contains("name")) t.setName(rs.getString("nome_barraca"));
         // CORREÇÃO: Mapeamento estava faltando
-        t.setUserLicense(rs.getBytes("licensa_usuario"));
+        if (fields.contains("userLicense")) t.setUserLicense(rs.getBytes("licensa_usuario"));
         return t;
     }
 
     // Este método vai INSERIR o estoque se não existir, ou ATUALIZAR se já existir.
     public void updateStock(Stock stockItem) throws SQLException {
-        String sql = "INSERT INTO public.estoque (cod_prod, cod_barraca, qntd_estoque) " +
-                     "VALUES (?, ?, ?) " +
-                     "ON CONFLICT (cod_prod, cod_barraca) DO UPDATE SET qntd_estoque = EXCLUDED.qntd_estoque";
+        try {
+            // Com o ledger ligado, banco e memória mudam juntos, sem um flush no meio
+            StockLedger ledger = StockLedger.getInstance();
+            if (ledger.isEnabled()) {
+                ledger.set(stockItem.getTentCode(), stockItem.getProductCode(), stockItem.getStockQuantity(),
+                        () -> writeStock(stockItem));
+            } else {
+                writeStock(stockItem);
+            }
+        } finally {
+            TableVersions.bump(TableVersions.ESTOQUE);
+        }
+    }
 
+    private void writeStock(Stock stockItem) throws SQLException {
         try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = conn.prepareStatement(UPSERT_STOCK_SQL)) {
 
             // CORREÇÃO: Modelo 'Stock' usa 'int', não 'long'
             stmt.setInt(1, stockItem.getProductCode());
@@ -131,4 +192,50 @@ public class TentDAO {
             stmt.executeUpdate();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Grava em lote, numa única transação, as quantidades vindas do StockLedger (write-behind).
+     * Quantidade zero apaga a linha, já que a tabela não aceita qntd_estoque = 0.
+     */
+    void writeStockBatch(List<Stock> items) throws SQLException {
+        String sqlDelete = "DELETE FROM public.estoque WHERE cod_prod = ? AND cod_barraca = ?";
+
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement upsert = conn.prepareStatement(UPSERT_STOCK_SQL);
+                 PreparedStatement delete = conn.prepareStatement(sqlDelete)) {
+
+                for (Stock item : items) {
+                    if (item.getStockQuantity() > 0) {
+                        upsert.setInt(1, item.getProductCode());
+                        upsert.setInt(2, item.getTentCode());
+                        upsert.setShort(3, item.getStockQuantity());
+                        upsert.addBatch();
+                    } else {
+                        delete.setInt(1, item.getProductCode());
+                        delete.setInt(2, item.getTentCode());
+                        delete.addBatch();
+                    }
+                }
+                upsert.executeBatch();
+                delete.executeBatch();
+            }
+            conn.commit();
+
+        } catch (SQLException e) {
+            if (conn != null) {
+                conn.rollback();
+            }
+            throw e;
+        } finally {
+            if (conn != null) {
+                conn.setAutoCommit(true);
+                conn.close();
+            }
+            TableVersions.bump(TableVersions.ESTOQUE);
+        }
+    }
+}
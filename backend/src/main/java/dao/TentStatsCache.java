@@ -0,0 +1,134 @@
+package dao;
+
+import model.entities.TentStats;
+import util.Env;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache dos totais diários por barraca, usado pelo TentStatsDAO.
+ *
+ * Só guarda dias fechados (anteriores a hoje): o dia corrente sempre vai ao banco.
+ * Um dia fechado só muda por escrita explícita em venda (update/delete ou carga em lote
+ * de vendas antigas), e o SaleDAO invalida o cache nesses casos. LRU limitado a
+ * TENT_STATS_CACHE_MAX_DAYS entradas (barraca, dia), padrão 20000.
+ */
+public final class TentStatsCache {
+
+    private static final TentStatsCache INSTANCE = new TentStatsCache(Env.getInt("TENT_STATS_CACHE_MAX_DAYS", 20_000));
+
+    public static TentStatsCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Totais de um dia de uma barraca. Dia sem vendas = products vazio e zeros.
+     */
+    public record DayStats(LocalDate date, int sales, long units, BigDecimal revenue,
+                           List<TentStats.ProductTotal> products) {
+    }
+
+    public record CacheStats(long hits, long misses, long evictions, long invalidations, int entries, int maxEntries) {
+    }
+
+    private record DayKey(int tentCode, LocalDate date) {
+    }
+
+    private final int maxEntries;
+    // Incrementado a cada invalidação: consultas iniciadas antes dela não são guardadas
+    private final AtomicLong generation = new AtomicLong();
+    private final Map<DayKey, DayStats> days;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    TentStatsCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.days = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<DayKey, DayStats> eldest) {
+                if (size() > TentStatsCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Todos os dias de [from, to] se estiverem em cache; null se faltar algum.
+     */
+    List<DayStats> range(int tentCode, LocalDate from, LocalDate to) {
+        List<DayStats> result = new ArrayList<>();
+        synchronized (days) {
+            for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+                DayStats day = days.get(new DayKey(tentCode, d));
+                if (day == null) {
+                    misses.increment();
+                    return null;
+                }
+                result.add(day);
+            }
+        }
+        hits.increment();
+        return result;
+    }
+
+    /**
+     * Guarda os dias consultados, a menos que tenha havido invalidação desde gen.
+     */
+    void putRange(int tentCode, List<DayStats> loaded, long gen) {
+        synchronized (days) {
+            if (generation.get() != gen) {
+                return;
+            }
+            for (DayStats day : loaded) {
+                days.put(new DayKey(tentCode, day.date()), day);
+            }
+        }
+    }
+
+    /**
+     * Uma venda da barraca naquele dia foi gravada (create ou carga em lote).
+     */
+    public void invalidate(int tentCode, LocalDate date) {
+        generation.incrementAndGet();
+        invalidations.increment();
+        synchronized (days) {
+            days.remove(new DayKey(tentCode, date));
+        }
+    }
+
+    /**
+     * Descarta tudo (update/delete de venda, em que o dia e a barraca antigos não são conhecidos).
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        invalidations.increment();
+        synchronized (days) {
+            days.clear();
+        }
+    }
+
+    public CacheStats getStats() {
+        int entries;
+        synchronized (days) {
+            entries = days.size();
+        }
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(), entries, maxEntries);
+    }
+}
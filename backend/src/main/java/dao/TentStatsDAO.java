@@ -0,0 +1,151 @@
+package dao;
+
+import model.entities.TentStats;
+import util.Env;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Totais de vendas por barraca para o painel (GET /api/tents/{id}/stats).
+ *
+ * Os totais vêm dos resumos diários mantidos pelo SalesRollupDAO (O(dias) linhas, sem
+ * varrer item_venda nem carregar objetos Sale). Dias fechados vêm do TentStatsCache; só
+ * o dia de hoje (e os que faltarem no cache) vão ao banco.
+ *
+ * "Hoje" é o dia no fuso da feira (APP_TIMEZONE, padrão America/Sao_Paulo), não no da JVM:
+ * num servidor em UTC, às 21h de Brasília já seria amanhã, o dia corrente entraria no
+ * cache como fechado e o padrão do painel pularia as vendas da noite.
+ */
+public class TentStatsDAO {
+
+    private static final ZoneId ZONE = Env.getZone("APP_TIMEZONE", ZoneId.of("America/Sao_Paulo"));
+
+    // Lê os resumos diários (SalesRollupDAO): linhas por (dia, produto) e, com total_dia = 1, o total do dia
+    private static final String SQL_DAYS =
+            "SELECT data_venda, NULL::int AS cod_prod, 1 AS total_dia, " +
+            "       qntd_vendas AS vendas, qntd_unidades AS unidades, receita " +
+            "FROM public.resumo_diario_venda WHERE cod_barraca = ? AND data_venda BETWEEN ? AND ? " +
+            "UNION ALL " +
+            "SELECT data_venda, cod_prod, 0, qntd_vendas, qntd_unidades, receita " +
+            "FROM public.resumo_diario_produto WHERE cod_barraca = ? AND data_venda BETWEEN ? AND ?";
+
+    private final TentStatsCache cache = TentStatsCache.getInstance();
+
+    // Data corrente no fuso da feira
+    public static LocalDate today() {
+        return LocalDate.now(ZONE);
+    }
+
+    public TentStats getStats(int tentCode, LocalDate from, LocalDate to) throws SQLException {
+        LocalDate today = today();
+        List<TentStatsCache.DayStats> days = new ArrayList<>();
+
+        // Dias fechados: cache, ou uma consulta para o trecho inteiro
+        LocalDate closedEnd = to.isBefore(today) ? to : today.minusDays(1);
+        if (!from.isAfter(closedEnd)) {
+            List<TentStatsCache.DayStats> closed = cache.range(tentCode, from, closedEnd);
+            if (closed == null) {
+                long gen = cache.generation();
+                closed = loadDays(tentCode, from, closedEnd);
+                cache.putRange(tentCode, closed, gen);
+            }
+            days.addAll(closed);
+        }
+
+        // Hoje (e datas futuras, que vêm vazias): sempre do banco
+        LocalDate openStart = from.isAfter(today) ? from : today;
+        if (!openStart.isAfter(to)) {
+            days.addAll(loadDays(tentCode, openStart, to));
+        }
+
+        return summarize(tentCode, from, to, days);
+    }
+
+    // Um DayStats por dia do intervalo, inclusive os sem venda (o cache precisa saber que estão vazios)
+    private List<TentStatsCache.DayStats> loadDays(int tentCode, LocalDate from, LocalDate to) throws SQLException {
+        Map<LocalDate, DayBuilder> byDay = new TreeMap<>();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_DAYS)) {
+
+            stmt.setInt(1, tentCode);
+            stmt.setObject(2, from);
+            stmt.setObject(3, to);
+            stmt.setInt(4, tentCode);
+            stmt.setObject(5, from);
+            stmt.setObject(6, to);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    LocalDate date = rs.getObject("data_venda", LocalDate.class);
+                    DayBuilder day = byDay.computeIfAbsent(date, d -> new DayBuilder());
+                    if (rs.getInt("total_dia") == 1) {
+                        day.sales = rs.getInt("vendas");
+                        day.units = rs.getLong("unidades");
+                        day.revenue = rs.getBigDecimal("receita");
+                    } else {
+                        day.products.add(new TentStats.ProductTotal(
+                                rs.getInt("cod_prod"), rs.getLong("unidades"), rs.getBigDecimal("receita")));
+                    }
+                }
+            }
+        }
+
+        List<TentStatsCache.DayStats> days = new ArrayList<>();
+        for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+            DayBuilder day = byDay.get(d);
+            days.add(day == null
+                    ? new TentStatsCache.DayStats(d, 0, 0, BigDecimal.ZERO, List.of())
+                    : new TentStatsCache.DayStats(d, day.sales, day.units, day.revenue, List.copyOf(day.products)));
+        }
+        return days;
+    }
+
+    private TentStats summarize(int tentCode, LocalDate from, LocalDate to, List<TentStatsCache.DayStats> days) {
+        int sales = 0;
+        long units = 0;
+        BigDecimal revenue = BigDecimal.ZERO;
+        Map<Integer, long[]> unitsByProduct = new TreeMap<>();
+        Map<Integer, BigDecimal> revenueByProduct = new HashMap<>();
+        List<TentStats.DailyTotal> daily = new ArrayList<>();
+
+        for (TentStatsCache.DayStats day : days) {
+            if (day.sales() == 0) {
+                continue; // Dias sem venda não aparecem na série
+            }
+            sales += day.sales();
+            units += day.units();
+            revenue = revenue.add(day.revenue());
+            daily.add(new TentStats.DailyTotal(day.date(), day.sales(), day.units(), day.revenue()));
+
+            for (TentStats.ProductTotal p : day.products()) {
+                unitsByProduct.computeIfAbsent(p.productCode(), k -> new long[1])[0] += p.units();
+                revenueByProduct.merge(p.productCode(), p.revenue(), BigDecimal::add);
+            }
+        }
+
+        List<TentStats.ProductTotal> products = new ArrayList<>();
+        unitsByProduct.forEach((code, u) -> products.add(new TentStats.ProductTotal(code, u[0], revenueByProduct.get(code))));
+
+        return new TentStats(tentCode, from, to, sales, units, revenue, products, daily);
+    }
+
+    // Acumulador de um dia durante a leitura do ResultSet
+    private static final class DayBuilder {
+        int sales;
+        long units;
+        BigDecimal revenue = BigDecimal.ZERO;
+        final List<TentStats.ProductTotal> products = new ArrayList<>();
+    }
+}
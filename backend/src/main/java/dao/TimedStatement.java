@@ -0,0 +1,202 @@
+package dao;
+
+import util.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Set;
+
+/**
+ * Proxy dos statements entregues pelo ConnectionPool: mede cada execute* e conta as linhas,
+ * registrando em util.Metrics sob o método do DAO que preparou o statement
+ * (ex.: "ProductDAO.getAll") e no SqlProfiler sob o texto do SQL, com os parâmetros
+ * ligados (para o log de consultas lentas). Os DAOs não mudam.
+ *
+ * Consultas são medidas da execução até o close() do ResultSet (inclui a leitura das
+ * linhas, que no streaming vem em lotes do banco); o ResultSet é um CountingResultSet,
+ * classe comum, porque ele é chamado a cada linha e coluna. O nome do DAO vem de um StackWalker
+ * no prepareStatement, uma vez por statement e não por execução.
+ */
+final class TimedStatement implements InvocationHandler {
+
+    private static final StackWalker WALKER = StackWalker.getInstance();
+
+    // Infraestrutura do pacote dao que fica entre o DAO e o statement
+    private static final Set<String> SKIPPED = Set.of(
+            "dao.ConnectionPool", "dao.ConnectionPool$PooledConnectionHandler", "dao.DatabaseConnection",
+            "dao.QuerySupport", "dao.TimedStatement");
+
+    private static final SqlProfiler PROFILER = SqlProfiler.getInstance();
+
+    private final Statement physical;
+    private final String sql;
+    private final String operation;
+    private final Metrics.Timer timer;
+    // Conexão do pool (proxy) que criou o statement, e o próprio proxy do statement
+    private final Connection connection;
+    private Statement proxy;
+    // Valores dos setXxx(índice, valor), índice 1 na posição 1
+    private Object[] params;
+
+    private TimedStatement(Statement physical, String sql, String operation, Connection connection) {
+        this.physical = physical;
+        this.sql = sql;
+        this.operation = operation;
+        this.timer = Metrics.query(operation);
+        this.connection = connection;
+    }
+
+    /**
+     * Embrulha o statement recém-criado pela conexão física. sql é null no createStatement
+     * (o texto vem em cada execute). connection é o proxy do pool: getConnection() devolve
+     * ele, nunca a conexão física.
+     */
+    static Statement wrap(Statement physical, String sql, Connection connection) {
+        Class<?> type = physical instanceof CallableStatement ? CallableStatement.class
+                : physical instanceof PreparedStatement ? PreparedStatement.class
+                : Statement.class;
+        TimedStatement handler = new TimedStatement(physical, sql, caller(), connection);
+        handler.proxy = (Statement) Proxy.newProxyInstance(
+                Statement.class.getClassLoader(),
+                new Class<?>[] { type },
+                handler);
+        return handler.proxy;
+    }
+
+    /**
+     * O statement como o DAO o vê (para o ResultSet.getStatement()).
+     */
+    Statement proxy() {
+        return proxy;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (!name.startsWith("execute")) {
+            switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "getConnection":
+                    return connection;
+                case "clearParameters":
+                    params = null;
+                    break;
+                default:
+                    if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                        bind(index, name, args[1]);
+                    }
+            }
+            return call(method, args);
+        }
+
+        // Statement simples: o SQL vem no próprio execute(sql)
+        String text = sql != null ? sql : (args != null && args.length > 0 && args[0] instanceof String s ? s : null);
+        Object[] bound = params == null ? null : params.clone();
+
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = call(method, args);
+        } catch (Throwable e) {
+            complete(text, bound, start, 0, true);
+            throw e;
+        }
+
+        if (result instanceof ResultSet rs) {
+            return new CountingResultSet(rs, this, text, bound, start);
+        }
+        complete(text, bound, start, rows(result), false);
+        return result;
+    }
+
+    // --- MÉTODOS AJUDANTES ---
+
+    // Uma execução terminada: métrica do DAO e perfil do SQL
+    void complete(String text, Object[] bound, long start, long rows, boolean error) {
+        long nanos = System.nanoTime() - start;
+        timer.record(nanos, rows, error);
+        PROFILER.record(text, operation, nanos, rows, error, bound);
+    }
+
+    // Guarda o valor para o log de consultas lentas; streams viram só uma descrição
+    private void bind(int index, String setter, Object value) {
+        if (!PROFILER.isEnabled() || index < 1) {
+            return;
+        }
+        if (params == null || params.length <= index) {
+            Object[] grown = new Object[Math.max(index + 1, params == null ? 8 : params.length * 2)];
+            if (params != null) {
+                System.arraycopy(params, 0, grown, 0, params.length);
+            }
+            params = grown;
+        }
+        if ("setNull".equals(setter)) {
+            value = null;
+        } else if (setter.endsWith("Stream") || setter.endsWith("Reader")) {
+            value = "<" + setter.substring(3) + ">";
+        }
+        params[index] = value;
+    }
+
+    private Object call(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(physical, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    // executeUpdate → int/long; executeBatch → soma do array (valores negativos = "sem informação")
+    private static long rows(Object result) {
+        if (result instanceof Integer n) {
+            return n;
+        }
+        if (result instanceof Long n) {
+            return n;
+        }
+        long total = 0;
+        if (result instanceof int[] counts) {
+            for (int n : counts) {
+                total += Math.max(n, 0);
+            }
+        } else if (result instanceof long[] counts) {
+            for (long n : counts) {
+                total += Math.max(n, 0);
+            }
+        }
+        return total;
+    }
+
+    // Primeiro método fora da infraestrutura do pacote dao: "SaleDAO.create"
+    private static String caller() {
+        return WALKER.walk(frames -> frames
+                .filter(f -> f.getClassName().startsWith("dao.") && !SKIPPED.contains(f.getClassName()))
+                .findFirst()
+                .map(f -> label(f.getClassName(), f.getMethodName()))
+                .orElse("outros"));
+    }
+
+    private static String label(String className, String methodName) {
+        String simple = className.substring("dao.".length());
+        int inner = simple.indexOf('$');
+        if (inner >= 0) {
+            simple = simple.substring(0, inner);
+        }
+        // Lambdas: "lambda$getAll$0" → "getAll"
+        if (methodName.startsWith("lambda$")) {
+            int end = methodName.indexOf('$', "lambda$".length());
+            methodName = end < 0 ? methodName : methodName.substring("lambda$".length(), end);
+        }
+        return simple + "." + methodName;
+    }
+}
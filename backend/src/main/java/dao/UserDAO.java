@@ -1,15 +1,22 @@
 package dao;
 
 import model.entities.User; // Importa seu modelo
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class UserDAO {
 
+    // Campos selecionáveis por ?fields=. senha e foto_perfil (BYTEA) nunca são lidas nas consultas.
+    public static final Projection FIELDS = Projection.key("cpf", "cpf_usuario")
+            .field("nome", "nome_usuario")
+            .field("telefone", "tel_usuario");
+
     /**
      * Cria um novo usuário no banco de dados.
      * Mapeia os métodos do seu 'User.java' para as colunas do 'usuario'.
@@ -25,6 +32,8 @@ public class UserDAO {
             stmt.setString(3, user.getTelefone());
             
             stmt.executeUpdate();
+        } finally {
+            TableVersions.bump(TableVersions.USUARIO);
         }
     }
 
@@ -32,8 +41,15 @@ public class UserDAO {
      * Busca um usuário pelo CPF.
      */
     public User getByCpf(String cpf) throws SQLException {
+        return getByCpf(cpf, FIELDS.defaults());
+    }
+
+    /**
+     * Como getByCpf, lendo só as colunas dos campos pedidos.
+     */
+    public User getByCpf(String cpf, Set<String> fields) throws SQLException {
         User user = null;
-        String sql = "SELECT * FROM public.usuario WHERE cpf_usuario = ?";
+        String sql = "SELECT " + FIELDS.columns(fields) + " FROM public.usuario WHERE cpf_usuario = ?";
 
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -42,7 +58,7 @@ public class UserDAO {
             
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    user = mapRowToUser(rs);
+                    user = mapRowToUser(rs, fields);
                 }
             }
         }
@@ -53,20 +69,43 @@ public class UserDAO {
      * Busca todos os usuários.
      */
     public List<User> getAll() throws SQLException {
+        return getAll(FIELDS.defaults());
+    }
+
+    /**
+     * Como getAll, lendo só as colunas dos campos pedidos.
+     */
+    public List<User> getAll(Set<String> fields) throws SQLException {
         List<User> users = new ArrayList<>();
-        String sql = "SELECT * FROM public.usuario";
+        String sql = "SELECT " + FIELDS.columns(fields) + " FROM public.usuario";
 
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql);
              ResultSet rs = stmt.executeQuery()) {
             
             while (rs.next()) {
-                users.add(mapRowToUser(rs));
+                users.add(mapRowToUser(rs, fields));
             }
         }
         return users;
     }
 
+    /**
+     * Página de usuários ordenada por cpf_usuario (keyset): somente linhas com cpf_usuario > after.
+     */
+    public List<User> getPage(String after, int limit, Set<String> fields) throws SQLException {
+        String sql = "SELECT " + FIELDS.columns(fields) + " FROM public.usuario WHERE cpf_usuario > ? ORDER BY cpf_usuario LIMIT ?";
+        return QuerySupport.page(sql, after, limit, rs -> mapRowToUser(rs, fields));
+    }
+
+    /**
+     * Percorre todos os usuários sem carregar a tabela inteira em memória.
+     */
+    public void streamAll(Set<String> fields, RowHandler<User> handler) throws SQLException, IOException {
+        String sql = "SELECT " + FIELDS.columns(fields) + " FROM public.usuario ORDER BY cpf_usuario";
+        QuerySupport.stream(sql, rs -> mapRowToUser(rs, fields), handler);
+    }
+
     /**
      * Atualiza um usuário.
      */
@@ -81,6 +120,8 @@ public class UserDAO {
             stmt.setString(3, user.getCpf());
             
             stmt.executeUpdate();
+        } finally {
+            TableVersions.bump(TableVersions.USUARIO);
         }
     }
 
@@ -95,17 +136,19 @@ public class UserDAO {
             
             stmt.setString(1, cpf);
             stmt.executeUpdate();
+        } finally {
+            TableVersions.bump(TableVersions.USUARIO);
         }
     }
 
     /**
      * Método Ajudante: Converte uma linha do SQL (ResultSet) para um objeto Java (User).
      */
-    private User mapRowToUser(ResultSet rs) throws SQLException {
+    private User mapRowToUser(ResultSet rs, Set<String> fields) throws SQLException {
         User user = new User();
         user.setCpf(rs.getString("cpf_usuario"));
-        user.setNome(rs.getString("nome_usuario"));
-        user.setTelefone(rs.getString("tel_usuario"));
+        if (fields.contains("nome")) user.setNome(rs.getString("nome_usuario"));
+        if (fields.contains("telefone")) user.setTelefone(rs.getString("tel_usuario"));
         return user;
     }
 }
\ No newline at end of file
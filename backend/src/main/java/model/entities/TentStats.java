@@ -0,0 +1,19 @@
+package model.entities;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Resumo de vendas de uma barraca num intervalo de datas (GET /api/tents/{id}/stats).
+ */
+public record TentStats(int tentCode, LocalDate from, LocalDate to,
+                        int sales, long units, BigDecimal revenue,
+                        List<ProductTotal> products, List<DailyTotal> daily) {
+
+    public record ProductTotal(int productCode, long units, BigDecimal revenue) {
+    }
+
+    public record DailyTotal(LocalDate date, int sales, long units, BigDecimal revenue) {
+    }
+}
@@ -0,0 +1,56 @@
+package util;
+
+import java.time.DateTimeException;
+import java.time.ZoneId;
+
+/**
+ * Leitura de configuração: variável de ambiente (docker-compose) e, se ausente,
+ * propriedade de sistema (-DNOME=valor na JVM do Tomcat).
+ */
+public final class Env {
+
+    private Env() {}
+
+    public static String get(String name, String defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            value = System.getProperty(name);
+        }
+        return (value == null || value.isBlank()) ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String name, int defaultValue) {
+        return (int) getLong(name, defaultValue);
+    }
+
+    public static long getLong(String name, long defaultValue) {
+        String value = get(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Valor inválido para " + name + ": '" + value + "', usando " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        String value = get(name, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    public static ZoneId getZone(String name, ZoneId defaultValue) {
+        String value = get(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return ZoneId.of(value);
+        } catch (DateTimeException e) {
+            System.err.println("Valor inválido para " + name + ": '" + value + "', usando " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package util;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas do backend em memória, expostas em formato Prometheus em /api/metrics.
+ *
+ * - Requisições (MetricsFilter): latência, contagem por classe de status e erros, por
+ *   servlet e método HTTP.
+ * - Consultas dos DAOs (proxy de statement do ConnectionPool): latência, linhas e erros
+ *   por método do DAO (ex.: "ProductDAO.getAll").
+ *
+ * A latência vai para um Recorder do HdrHistogram (gravação sem lock, dezenas de ns).
+ * Os percentis cobrem a janela atual de METRICS_WINDOW_SECONDS (padrão 60): a cada coleta
+ * o intervalo desde a coleta anterior entra na janela, que recomeça quando vence.
+ * Contagens e somas são acumuladas desde a subida, como o Prometheus espera.
+ */
+public final class Metrics {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(Env.getLong("METRICS_WINDOW_SECONDS", 60));
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "OTHER"};
+
+    // Nome do servlet no container → métricas por método (índice de METHODS)
+    private static final Map<String, RequestMetrics> REQUESTS = new ConcurrentHashMap<>();
+    // Operação do DAO → métricas das consultas
+    private static final Map<String, Timer> QUERIES = new ConcurrentHashMap<>();
+
+    private Metrics() {}
+
+    /**
+     * Latência com percentis (janela) e contagem/soma/erros acumulados.
+     */
+    public static final class Timer {
+        private final Recorder recorder = new Recorder(3);
+        private final Histogram window = new Histogram(3);
+        private Histogram interval;
+        private long windowStart = System.nanoTime();
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+
+        public void record(long nanos, long rowCount, boolean error) {
+            recorder.recordValue(Math.max(0, nanos));
+            count.increment();
+            sumNanos.add(nanos);
+            if (rowCount > 0) {
+                rows.add(rowCount);
+            }
+            if (error) {
+                errors.increment();
+            }
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long rows() {
+            return rows.sum();
+        }
+
+        public long errors() {
+            return errors.sum();
+        }
+
+        public long sumNanos() {
+            return sumNanos.sum();
+        }
+
+        /**
+         * Percentis da janela atual, em nanossegundos (0 sem amostras na janela).
+         */
+        public long[] percentiles(double... quantiles) {
+            Histogram histogram = snapshot();
+            long[] values = new long[quantiles.length];
+            for (int i = 0; i < quantiles.length; i++) {
+                values[i] = histogram.getTotalCount() == 0 ? 0 : histogram.getValueAtPercentile(quantiles[i] * 100);
+            }
+            return values;
+        }
+
+        // Junta o que foi gravado desde a última coleta na janela atual
+        private synchronized Histogram snapshot() {
+            interval = recorder.getIntervalHistogram(interval);
+            long now = System.nanoTime();
+            if (now - windowStart > WINDOW_NANOS) {
+                window.reset();
+                windowStart = now;
+            }
+            window.add(interval);
+            return window.copy();
+        }
+    }
+
+    private static final class RequestMetrics {
+        final String servlet;
+        final Timer[] timers = new Timer[METHODS.length];
+        // Contagem por classe de status (1xx..5xx) e método
+        final LongAdder[][] statuses = new LongAdder[METHODS.length][5];
+
+        RequestMetrics(String servlet) {
+            this.servlet = servlet;
+            for (int m = 0; m < METHODS.length; m++) {
+                timers[m] = new Timer();
+                for (int s = 0; s < 5; s++) {
+                    statuses[m][s] = new LongAdder();
+                }
+            }
+        }
+    }
+
+    /**
+     * Registra uma requisição. servletName é o nome no container (ex.: "controller.ProductServlet").
+     */
+    public static void recordRequest(String servletName, String method, int status, long nanos, boolean failed) {
+        RequestMetrics metrics = REQUESTS.get(servletName);
+        if (metrics == null) {
+            metrics = REQUESTS.computeIfAbsent(servletName, name -> new RequestMetrics(simpleName(name)));
+        }
+        int m = methodIndex(method);
+        boolean error = failed || status >= 500;
+        metrics.timers[m].record(nanos, 0, error);
+        int statusClass = failed ? 4 : Math.min(Math.max(status / 100, 1), 5) - 1;
+        metrics.statuses[m][statusClass].increment();
+    }
+
+    /**
+     * Timer de uma operação de DAO (criado na primeira vez).
+     */
+    public static Timer query(String operation) {
+        Timer timer = QUERIES.get(operation);
+        return timer != null ? timer : QUERIES.computeIfAbsent(operation, op -> new Timer());
+    }
+
+    /**
+     * Escreve as métricas de requisições e consultas no formato de texto do Prometheus (versão 0.0.4).
+     */
+    public static void writePrometheus(Writer out) throws IOException {
+        Map<String, RequestMetrics> requests = new TreeMap<>(REQUESTS);
+        Map<String, Timer> queries = new TreeMap<>(QUERIES);
+
+        header(out, "feirinha_http_request_duration_seconds", "summary",
+                "Latência das requisições por servlet e método (percentis da janela atual).");
+        for (RequestMetrics metrics : requests.values()) {
+            for (int m = 0; m < METHODS.length; m++) {
+                Timer timer = metrics.timers[m];
+                if (timer.count.sum() > 0) {
+                    summary(out, "feirinha_http_request_duration_seconds",
+                            "servlet=\"" + metrics.servlet + "\",method=\"" + METHODS[m] + "\"", timer);
+                }
+            }
+        }
+
+        header(out, "feirinha_http_requests_total", "counter", "Requisições por servlet, método e classe de status.");
+        for (RequestMetrics metrics : requests.values()) {
+            for (int m = 0; m < METHODS.length; m++) {
+                for (int s = 0; s < 5; s++) {
+                    long n = metrics.statuses[m][s].sum();
+                    if (n > 0) {
+                        sample(out, "feirinha_http_requests_total", "servlet=\"" + metrics.servlet + "\",method=\""
+                                + METHODS[m] + "\",status=\"" + (s + 1) + "xx\"", n);
+                    }
+                }
+            }
+        }
+
+        header(out, "feirinha_http_request_errors_total", "counter", "Respostas 5xx e exceções por servlet e método.");
+        for (RequestMetrics metrics : requests.values()) {
+            for (int m = 0; m < METHODS.length; m++) {
+                Timer timer = metrics.timers[m];
+                if (timer.count.sum() > 0) {
+                    sample(out, "feirinha_http_request_errors_total",
+                            "servlet=\"" + metrics.servlet + "\",method=\"" + METHODS[m] + "\"", timer.errors.sum());
+                }
+            }
+        }
+
+        header(out, "feirinha_dao_query_duration_seconds", "summary",
+                "Tempo das consultas por método de DAO, da execução ao fim da leitura do ResultSet.");
+        for (Map.Entry<String, Timer> entry : queries.entrySet()) {
+            summary(out, "feirinha_dao_query_duration_seconds", "operation=\"" + entry.getKey() + "\"", entry.getValue());
+        }
+
+        header(out, "feirinha_dao_query_rows_total", "counter", "Linhas lidas ou alteradas por método de DAO.");
+        for (Map.Entry<String, Timer> entry : queries.entrySet()) {
+            sample(out, "feirinha_dao_query_rows_total", "operation=\"" + entry.getKey() + "\"", entry.getValue().rows.sum());
+        }
+
+        header(out, "feirinha_dao_query_errors_total", "counter", "Consultas que lançaram SQLException, por método de DAO.");
+        for (Map.Entry<String, Timer> entry : queries.entrySet()) {
+            sample(out, "feirinha_dao_query_errors_total", "operation=\"" + entry.getKey() + "\"", entry.getValue().errors.sum());
+        }
+    }
+
+    /**
+     * Uma métrica avulsa (gauge ou counter), para quem tem o próprio estado (ex.: pool).
+     */
+    public static void writeSingle(Writer out, String name, String type, String help, double value) throws IOException {
+        header(out, name, type, help);
+        sample(out, name, null, value);
+    }
+
+    // --- MÉTODOS AJUDANTES ---
+
+    private static void summary(Writer out, String name, String labels, Timer timer) throws IOException {
+        Histogram histogram = timer.snapshot();
+        for (double q : QUANTILES) {
+            double seconds = histogram.getTotalCount() == 0
+                    ? Double.NaN
+                    : histogram.getValueAtPercentile(q * 100) / 1e9;
+            sample(out, name, labels + ",quantile=\"" + q + "\"", seconds);
+        }
+        sample(out, name + "_sum", labels, timer.sumNanos.sum() / 1e9);
+        sample(out, name + "_count", labels, timer.count.sum());
+    }
+
+    private static void header(Writer out, String name, String type, String help) throws IOException {
+        out.write("# HELP " + name + " " + help + "\n");
+        out.write("# TYPE " + name + " " + type + "\n");
+    }
+
+    private static void sample(Writer out, String name, String labels, double value) throws IOException {
+        out.write(name);
+        if (labels != null) {
+            out.write("{" + labels + "}");
+        }
+        out.write(" ");
+        if (Double.isNaN(value)) {
+            out.write("NaN");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.write(Long.toString((long) value));
+        } else {
+            out.write(String.format(Locale.ROOT, "%.9g", value));
+        }
+        out.write("\n");
+    }
+
+    private static int methodIndex(String method) {
+        switch (method) {
+            case "GET": return 0;
+            case "POST": return 1;
+            case "PUT": return 2;
+            case "DELETE": return 3;
+            case "HEAD": return 4;
+            case "OPTIONS": return 5;
+            default: return 6;
+        }
+    }
+
+    // "controller.ProductServlet" → "ProductServlet"
+    private static String simpleName(String servletName) {
+        int dot = servletName.lastIndexOf('.');
+        return dot < 0 ? servletName : servletName.substring(dot + 1);
+    }
+}
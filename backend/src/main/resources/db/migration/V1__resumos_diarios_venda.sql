@@ -0,0 +1,39 @@
+-- Resumos diários de venda (mantidos pelo SalesRollupDAO na transação de cada venda)
+
+CREATE TABLE IF NOT EXISTS resumo_diario_venda (
+    cod_barraca INT NOT NULL,
+    data_venda DATE NOT NULL,
+    qntd_vendas INT NOT NULL,
+    qntd_unidades BIGINT NOT NULL,
+    receita NUMERIC(14, 2) NOT NULL,
+    CONSTRAINT pk_resumo_diario_venda PRIMARY KEY (cod_barraca, data_venda)
+);
+
+CREATE TABLE IF NOT EXISTS resumo_diario_produto (
+    cod_barraca INT NOT NULL,
+    data_venda DATE NOT NULL,
+    cod_prod INT NOT NULL,
+    qntd_vendas INT NOT NULL,
+    qntd_unidades BIGINT NOT NULL,
+    receita NUMERIC(14, 2) NOT NULL,
+    CONSTRAINT pk_resumo_diario_produto PRIMARY KEY (cod_barraca, data_venda, cod_prod)
+);
+
+-- Preenche com o histórico (recalcula do zero se as tabelas já existiam)
+DELETE FROM resumo_diario_venda;
+DELETE FROM resumo_diario_produto;
+
+INSERT INTO resumo_diario_venda (cod_barraca, data_venda, qntd_vendas, qntd_unidades, receita)
+SELECT v.cod_barraca, v.data_venda, COUNT(*), COALESCE(SUM(i.unidades), 0), COALESCE(SUM(i.receita), 0)
+FROM venda v
+LEFT JOIN (
+    SELECT id_venda, SUM(qntd_venda) AS unidades, SUM(qntd_venda * preco_venda) AS receita
+    FROM item_venda GROUP BY id_venda
+) i ON i.id_venda = v.id_venda
+GROUP BY v.cod_barraca, v.data_venda;
+
+INSERT INTO resumo_diario_produto (cod_barraca, data_venda, cod_prod, qntd_vendas, qntd_unidades, receita)
+SELECT v.cod_barraca, v.data_venda, iv.cod_prod, COUNT(*), SUM(iv.qntd_venda), SUM(iv.qntd_venda * iv.preco_venda)
+FROM venda v
+JOIN item_venda iv ON iv.id_venda = v.id_venda
+GROUP BY v.cod_barraca, v.data_venda, iv.cod_prod;
@@ -0,0 +1,30 @@
+-- Índices para os filtros e junções dos DAOs que hoje fazem varredura sequencial.
+-- INCLUDE deixa as consultas de histórico (SELECT * por barraca/usuário e itens por venda)
+-- resolvidas só pelo índice (index-only scan), sem visitar a tabela.
+
+-- Histórico de vendas da barraca (SaleDAO.getByTentId) e FK de venda -> barraca
+CREATE INDEX IF NOT EXISTS idx_venda_barraca
+    ON venda (cod_barraca, data_venda) INCLUDE (id_venda, cod_usuario);
+
+-- Histórico de compras do usuário (SaleDAO.getByUserId) e FK de venda -> usuario
+CREATE INDEX IF NOT EXISTS idx_venda_usuario
+    ON venda (cod_usuario, data_venda) INCLUDE (id_venda, cod_barraca);
+
+-- Itens por venda (loadItemsForSale(s), delete/update de venda): id_venda é a 2ª coluna da PK
+CREATE INDEX IF NOT EXISTS idx_item_venda_venda
+    ON item_venda (id_venda) INCLUDE (cod_prod, qntd_venda, preco_venda);
+
+-- FKs de pagamento: apagar uma venda/reserva confere pagamento por essas colunas
+CREATE INDEX IF NOT EXISTS idx_pagamento_venda
+    ON pagamento (id_venda) WHERE id_venda IS NOT NULL;
+CREATE INDEX IF NOT EXISTS idx_pagamento_reserva
+    ON pagamento (cod_reserva) WHERE cod_reserva IS NOT NULL;
+
+-- FK de estoque -> barraca (cod_barraca é a 2ª coluna da PK)
+CREATE INDEX IF NOT EXISTS idx_estoque_barraca
+    ON estoque (cod_barraca);
+
+ANALYZE venda;
+ANALYZE item_venda;
+ANALYZE pagamento;
+ANALYZE estoque;
@@ -0,0 +1,7 @@
+-- Arquivos (licença, imagem, foto) lidos em pedaços com substring(): com STORAGE EXTERNAL
+-- o TOAST guarda o BYTEA sem compressão e o PostgreSQL busca só os blocos da faixa pedida,
+-- em vez de descomprimir o valor inteiro a cada pedaço. Vale para os valores gravados daqui
+-- em diante; os antigos passam a valer no próximo upload.
+ALTER TABLE public.barraca ALTER COLUMN licensa_usuario SET STORAGE EXTERNAL;
+ALTER TABLE public.produto ALTER COLUMN imagem_produto SET STORAGE EXTERNAL;
+ALTER TABLE public.usuario ALTER COLUMN foto_perfil SET STORAGE EXTERNAL;
@@ -0,0 +1,16 @@
+-- Idempotency-Key dos POST de venda, pagamento e reserva (dao/IdempotencyStore).
+-- status NULL = requisição em andamento; preenchido = resposta guardada para as repetições.
+CREATE TABLE IF NOT EXISTS public.idempotencia (
+    rota VARCHAR(50) NOT NULL,
+    chave VARCHAR(255) NOT NULL,
+    hash_requisicao CHAR(64) NOT NULL,
+    status INT,
+    content_type VARCHAR(100),
+    corpo BYTEA,
+    criada_em TIMESTAMP NOT NULL DEFAULT now(),
+    PRIMARY KEY (rota, chave)
+);
+
+-- Limpeza das chaves vencidas (IdempotencyStore.purgeExpired)
+CREATE INDEX IF NOT EXISTS idx_idempotencia_criada_em
+    ON public.idempotencia (criada_em);
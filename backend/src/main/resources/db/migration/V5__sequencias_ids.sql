@@ -0,0 +1,10 @@
+-- Os IDs de venda e pagamento passam a vir das sequências (dao/SequenceBlockAllocator).
+-- Até aqui os clientes mandavam id_venda/id_pagamento e as sequências ficaram para trás:
+-- avança cada uma para depois do maior ID já gravado.
+SELECT setval('public.venda_id_venda_seq',
+              GREATEST((SELECT COALESCE(MAX(id_venda), 0) FROM public.venda),
+                       (SELECT last_value FROM public.venda_id_venda_seq)));
+
+SELECT setval('public.pagamento_id_pagamento_seq',
+              GREATEST((SELECT COALESCE(MAX(id_pagamento), 0) FROM public.pagamento),
+                       (SELECT last_value FROM public.pagamento_id_pagamento_seq)));
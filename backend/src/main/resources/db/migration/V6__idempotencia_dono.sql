@@ -0,0 +1,4 @@
+-- Dono da reserva da Idempotency-Key e marca gravada na transação da própria escrita
+-- (dao/IdempotencyStore.markCommitted): chave efetivada não é liberada nem retomada.
+ALTER TABLE public.idempotencia ADD COLUMN IF NOT EXISTS dono UUID;
+ALTER TABLE public.idempotencia ADD COLUMN IF NOT EXISTS efetivada BOOLEAN NOT NULL DEFAULT false;
@@ -0,0 +1,59 @@
+package controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BlobResponsesTest {
+
+    // Sem faixa (mandar tudo) = null; 416 = array vazio
+    private static final long[] NOT_SATISFIABLE = new long[0];
+
+    @Test
+    void simpleRanges() {
+        assertArrayEquals(new long[] {0, 99}, BlobResponses.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[] {100, 999}, BlobResponses.parseRange("bytes=100-", 1000));
+        assertArrayEquals(new long[] {900, 999}, BlobResponses.parseRange("bytes=-100", 1000));
+    }
+
+    @Test
+    void endPastLengthIsClamped() {
+        assertArrayEquals(new long[] {500, 999}, BlobResponses.parseRange("bytes=500-5000", 1000));
+    }
+
+    @Test
+    void suffixLongerThanFileSendsWholeFile() {
+        assertArrayEquals(new long[] {0, 99}, BlobResponses.parseRange("bytes=-500", 100));
+    }
+
+    @Test
+    void suffixOfEmptyFileIsNotSatisfiable() {
+        assertArrayEquals(NOT_SATISFIABLE, BlobResponses.parseRange("bytes=-10", 0));
+        assertArrayEquals(NOT_SATISFIABLE, BlobResponses.parseRange("bytes=-0", 100));
+    }
+
+    @Test
+    void startAtOrPastLengthIsNotSatisfiable() {
+        assertArrayEquals(NOT_SATISFIABLE, BlobResponses.parseRange("bytes=100-", 100));
+        assertArrayEquals(NOT_SATISFIABLE, BlobResponses.parseRange("bytes=100-200", 100));
+        assertArrayEquals(NOT_SATISFIABLE, BlobResponses.parseRange("bytes=0-", 0));
+    }
+
+    @Test
+    void endBeforeStartIsIgnored() {
+        assertNull(BlobResponses.parseRange("bytes=50-10", 100));
+    }
+
+    @Test
+    void multipleRangesAreIgnored() {
+        assertNull(BlobResponses.parseRange("bytes=0-10,20-30", 100));
+    }
+
+    @Test
+    void unknownSyntaxIsIgnored() {
+        assertNull(BlobResponses.parseRange("items=0-10", 100));
+        assertNull(BlobResponses.parseRange("bytes=10", 100));
+        assertNull(BlobResponses.parseRange("bytes=a-b", 100));
+    }
+}
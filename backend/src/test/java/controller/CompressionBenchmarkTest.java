@@ -0,0 +1,69 @@
+package controller;
+
+import model.entities.Product;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Custo de CPU e bytes economizados na listagem de 10 mil produtos (o corpo do
+ * GET /api/products), nos níveis que o CompressionFilter usa: o padrão, no streaming e nas
+ * respostas sem ETag, e o máximo, pago uma vez por versão da tabela no cache.
+ */
+class CompressionBenchmarkTest {
+
+    private static final int PRODUCTS = 10_000;
+    private static final int ROUNDS = 20;
+
+    @Test
+    void productListingOfTenThousandRows() throws IOException {
+        List<Product> products = new ArrayList<>(PRODUCTS);
+        for (int i = 1; i <= PRODUCTS; i++) {
+            products.add(new Product(i, "Produto " + i, new BigDecimal(i % 500 + ".90"),
+                    "Descrição do produto " + i + ", vendido por unidade"));
+        }
+        byte[] body = JsonCodecs.listWriter(Product.class).writeValueAsBytes(products);
+
+        byte[] standard = measure("gzip", body, Deflater.DEFAULT_COMPRESSION);
+        byte[] best = measure("gzip", body, Deflater.BEST_COMPRESSION);
+        measure("deflate", body, Deflater.DEFAULT_COMPRESSION);
+
+        assertArrayEquals(body, gunzip(standard));
+        assertArrayEquals(body, gunzip(best));
+        assertTrue(standard.length * 4L < body.length, "gzip economizou menos de 75%");
+    }
+
+    private static byte[] measure(String encoding, byte[] body, int level) throws IOException {
+        byte[] zipped = null;
+        for (int i = 0; i < ROUNDS; i++) { // Aquecimento
+            zipped = CompressionFilter.compress(encoding, body, body.length, level);
+        }
+        long began = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            zipped = CompressionFilter.compress(encoding, body, body.length, level);
+        }
+        double millis = (System.nanoTime() - began) / 1e6 / ROUNDS;
+
+        System.out.printf("[compression-bench] %d produtos, %s nível %d: %d -> %d bytes (%.1f%% a menos), "
+                        + "%.2f ms por resposta (%.0f MB/s)%n",
+                PRODUCTS, encoding, level, body.length, zipped.length,
+                100.0 * (body.length - zipped.length) / body.length, millis, body.length / 1e3 / millis);
+        return zipped;
+    }
+
+    private static byte[] gunzip(byte[] zipped) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(zipped))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CompressionFilterTest {
+
+    @Test
+    void noHeaderOrIdentityMeansUncompressed() {
+        assertNull(CompressionFilter.negotiate(null));
+        assertNull(CompressionFilter.negotiate(""));
+        assertNull(CompressionFilter.negotiate("identity"));
+        assertNull(CompressionFilter.negotiate("br"));
+    }
+
+    @Test
+    void gzipIsPreferred() {
+        assertEquals("gzip", CompressionFilter.negotiate("gzip"));
+        assertEquals("gzip", CompressionFilter.negotiate("deflate, gzip"));
+        assertEquals("gzip", CompressionFilter.negotiate("gzip, deflate, br"));
+        assertEquals("gzip", CompressionFilter.negotiate("x-gzip"));
+        assertEquals("gzip", CompressionFilter.negotiate("GZIP"));
+    }
+
+    @Test
+    void deflateWhenGzipIsMissingOrRefused() {
+        assertEquals("deflate", CompressionFilter.negotiate("deflate"));
+        assertEquals("deflate", CompressionFilter.negotiate("gzip;q=0, deflate"));
+    }
+
+    @Test
+    void zeroQualityRefuses() {
+        assertNull(CompressionFilter.negotiate("gzip;q=0"));
+        assertNull(CompressionFilter.negotiate("gzip; q=0.000, deflate;Q=0"));
+        assertNull(CompressionFilter.negotiate("gzip;q=abc"));
+        assertEquals("gzip", CompressionFilter.negotiate("gzip;q=0.5"));
+    }
+
+    @Test
+    void wildcardCoversEncodingsNotNamed() {
+        assertEquals("gzip", CompressionFilter.negotiate("*"));
+        assertEquals("deflate", CompressionFilter.negotiate("gzip;q=0, *"));
+        assertEquals("deflate", CompressionFilter.negotiate("GZIP;q=0, *"));
+        assertNull(CompressionFilter.negotiate("gzip;q=0, deflate;q=0, *"));
+        assertNull(CompressionFilter.negotiate("*;q=0"));
+        assertEquals("gzip", CompressionFilter.negotiate("gzip, *;q=0"));
+    }
+}
@@ -0,0 +1,87 @@
+package dao;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Leitura em pedaços do BlobStore (imagem de produto): faixas inteiras e parciais, de um
+ * pedaço só e de vários, e nenhuma conexão emprestada enquanto os bytes vão para o cliente.
+ */
+@EnabledIfEnvironmentVariable(named = "DB_HOST", matches = ".+")
+class BlobStoreTest {
+
+    private static int product;
+
+    @BeforeAll
+    static void seed() throws SQLException {
+        SchemaMigrator.migrate();
+        product = TestDatabase.createProduct("Imagem (teste)");
+    }
+
+    @AfterAll
+    static void cleanup() throws SQLException {
+        TestDatabase.deleteProduct(product);
+    }
+
+    @Test
+    void smallBlobFromMemory() throws Exception {
+        checkRanges(100);
+    }
+
+    @Test
+    void largeBlobThroughTemporaryFile() throws Exception {
+        checkRanges(1_000_000); // Vários pedaços de BLOB_CHUNK_BYTES
+    }
+
+    @Test
+    void emptyColumnIsNotFound() throws Exception {
+        TestDatabase.execute("UPDATE public.produto SET imagem_produto = NULL WHERE cod_produto = ?", product);
+        assertFalse(BlobStore.read(BlobStore.Blob.PRODUCT_IMAGE, product, info -> null));
+    }
+
+    private static void checkRanges(int length) throws Exception {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        assertTrue(BlobStore.write(BlobStore.Blob.PRODUCT_IMAGE, product, new ByteArrayInputStream(data), length));
+
+        for (int[] range : new int[][] {{0, length - 1}, {10, length / 2}}) {
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            int[] activeWhileSending = {-1};
+            OutputStream client = new OutputStream() {
+                @Override
+                public void write(int b) {
+                    write(new byte[] {(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    if (activeWhileSending[0] < 0) {
+                        activeWhileSending[0] = DatabaseConnection.getPoolStats().active();
+                    }
+                    received.write(b, off, len);
+                }
+            };
+
+            assertTrue(BlobStore.read(BlobStore.Blob.PRODUCT_IMAGE, product, info -> {
+                assertEquals(length, info.length());
+                return new BlobStore.Range(range[0], range[1], client);
+            }));
+            assertArrayEquals(Arrays.copyOfRange(data, range[0], range[1] + 1), received.toByteArray());
+            assertEquals(0, activeWhileSending[0], "conexão presa durante o envio");
+        }
+    }
+}
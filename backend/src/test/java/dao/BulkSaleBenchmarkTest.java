@@ -0,0 +1,108 @@
+package dao;
+
+import model.entities.Sale;
+import model.entities.SaleItem;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Carga em lote (SaleDAO.createBulk, COPY) contra o caminho antigo das barracas offline:
+ * um SaleDAO.create por venda. Mesmas 2000 vendas de 2 itens nos dois; o lote tem que
+ * ser pelo menos 10x mais rápido.
+ */
+@EnabledIfEnvironmentVariable(named = "DB_HOST", matches = ".+")
+class BulkSaleBenchmarkTest {
+
+    private static final int TENT = 990010;
+    private static final int SALES = 2000;
+    private static final int BATCH = 1000; // SALE_BULK_BATCH_SIZE padrão
+    private static final int HISTORY = 20000;
+
+    private static int productA;
+    private static int productB;
+
+    @BeforeAll
+    static void seed() throws SQLException {
+        TestDatabase.prepare(TENT);
+        productA = TestDatabase.createProduct("Pastel (teste)");
+        productB = TestDatabase.createProduct("Caldo (teste)");
+        // Estoque para o create (a carga em lote não dá baixa)
+        TestDatabase.execute("INSERT INTO public.estoque (cod_prod, cod_barraca, qntd_estoque) VALUES (?, ?, 30000), (?, ?, 30000)",
+                productA, TENT, productB, TENT);
+
+        // Histórico da barraca: com venda/item_venda quase vazias o planner escolhe seq scan
+        // nas checagens de chave estrangeira do COPY e o plano fica no cache da conexão
+        TestDatabase.execute("INSERT INTO public.venda (id_venda, data_venda, cod_barraca, cod_usuario) "
+                + "SELECT nextval('public.venda_id_venda_seq'), DATE '2025-01-01' + (g % 150), ?, ? "
+                + "FROM generate_series(1, ?) g", TENT, TestDatabase.CPF, HISTORY);
+        TestDatabase.execute("INSERT INTO public.item_venda (cod_prod, id_venda, qntd_venda, preco_venda) "
+                + "SELECT ?, id_venda, 1, 8.00 FROM public.venda WHERE cod_barraca = ?", productA, TENT);
+        TestDatabase.execute("ANALYZE public.venda, public.item_venda");
+    }
+
+    @AfterAll
+    static void cleanup() throws SQLException {
+        TestDatabase.cleanup(TENT);
+        TestDatabase.deleteProduct(productA);
+        TestDatabase.deleteProduct(productB);
+    }
+
+    @Test
+    void bulkIsAtLeastTenTimesFasterThanLoopingCreate() throws SQLException {
+        SaleDAO dao = new SaleDAO();
+
+        // Aquecimento (JIT, pool, cache de statements) fora da medição
+        for (Sale sale : sales(50)) {
+            dao.create(sale);
+        }
+        dao.createBulk(sales(50));
+
+        long began = System.nanoTime();
+        for (Sale sale : sales(SALES)) {
+            dao.create(sale);
+        }
+        double loopSeconds = (System.nanoTime() - began) / 1e9;
+
+        List<Sale> all = sales(SALES);
+        began = System.nanoTime();
+        int rejected = 0;
+        for (int from = 0; from < all.size(); from += BATCH) {
+            Map<Integer, String> errors = dao.createBulk(all.subList(from, Math.min(all.size(), from + BATCH)));
+            rejected += errors.size();
+        }
+        double bulkSeconds = (System.nanoTime() - began) / 1e9;
+
+        double speedup = loopSeconds / bulkSeconds;
+        System.out.printf("[bulk-bench] %d vendas: create em laço %.2f s (%.0f/s), createBulk %.2f s (%.0f/s), %.1fx%n",
+                SALES, loopSeconds, SALES / loopSeconds, bulkSeconds, SALES / bulkSeconds, speedup);
+
+        assertEquals(0, rejected);
+        assertEquals(HISTORY + 2 * (SALES + 50),
+                TestDatabase.queryInt("SELECT COUNT(*) FROM public.venda WHERE cod_barraca = ?", TENT));
+        assertTrue(speedup >= 10, "createBulk só " + String.format("%.1f", speedup) + "x mais rápido");
+    }
+
+    private static List<Sale> sales(int count) {
+        List<Sale> sales = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Sale sale = new Sale(i + 1, LocalDate.of(2025, 6, 1).plusDays(i % 30), TENT, TestDatabase.CPF);
+            sale.setItems(List.of(
+                    new SaleItem(productA, 0, (short) 1, new BigDecimal("8.00")),
+                    new SaleItem(productB, 0, (short) 2, new BigDecimal("6.50"))));
+            sales.add(sale);
+        }
+        return sales;
+    }
+}
@@ -0,0 +1,81 @@
+package dao;
+
+import model.entities.SaleItem;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChildRowDiffTest {
+
+    // Mesma comparação do SaleDAO.update
+    private static ChildRowDiff<SaleItem> diff(List<SaleItem> previous, List<SaleItem> next) throws SQLException {
+        return ChildRowDiff.of(previous, next, SaleItem::getProductCode,
+                (before, after) -> before.getSaleQuantity() == after.getSaleQuantity()
+                        && ChildRowDiff.sameAmount(before.getSalePrice(), after.getSalePrice()));
+    }
+
+    private static SaleItem item(int productCode, int quantity, String price) {
+        return new SaleItem(productCode, 1, (short) quantity, price == null ? null : new BigDecimal(price));
+    }
+
+    @Test
+    void newProductIsInserted() throws SQLException {
+        SaleItem added = item(2, 1, "5.00");
+        ChildRowDiff<SaleItem> diff = diff(List.of(item(1, 1, "10.00")), List.of(item(1, 1, "10.00"), added));
+
+        assertEquals(List.of(added), diff.inserted());
+        assertTrue(diff.changed().isEmpty());
+        assertTrue(diff.removed().isEmpty());
+    }
+
+    @Test
+    void changedQuantityOrPriceIsUpdated() throws SQLException {
+        SaleItem quantity = item(1, 3, "10.00");
+        SaleItem price = item(2, 1, "6.00");
+        ChildRowDiff<SaleItem> diff = diff(List.of(item(1, 1, "10.00"), item(2, 1, "5.00")), List.of(quantity, price));
+
+        assertTrue(diff.inserted().isEmpty());
+        assertEquals(List.of(quantity, price), diff.changed());
+        assertTrue(diff.removed().isEmpty());
+    }
+
+    @Test
+    void missingProductIsRemoved() throws SQLException {
+        SaleItem gone = item(2, 1, "5.00");
+        ChildRowDiff<SaleItem> diff = diff(List.of(item(1, 1, "10.00"), gone), List.of(item(1, 1, "10.00")));
+
+        assertTrue(diff.inserted().isEmpty());
+        assertTrue(diff.changed().isEmpty());
+        assertEquals(List.of(gone), diff.removed());
+    }
+
+    @Test
+    void duplicateProductIsRejected() {
+        DuplicateItemException e = assertThrows(DuplicateItemException.class,
+                () -> diff(List.of(), List.of(item(7, 1, "1.00"), item(7, 2, "1.00"))));
+        assertEquals(7, e.getProductCode());
+    }
+
+    @Test
+    void priceScaleIsNotAChange() throws SQLException {
+        ChildRowDiff<SaleItem> diff = diff(List.of(item(1, 1, "10.0")), List.of(item(1, 1, "10.00")));
+
+        assertTrue(diff.inserted().isEmpty());
+        assertTrue(diff.changed().isEmpty());
+        assertTrue(diff.removed().isEmpty());
+    }
+
+    @Test
+    void sameAmountHandlesNull() {
+        assertTrue(ChildRowDiff.sameAmount(null, null));
+        assertFalse(ChildRowDiff.sameAmount(null, BigDecimal.ONE));
+        assertFalse(ChildRowDiff.sameAmount(BigDecimal.ONE, null));
+    }
+}
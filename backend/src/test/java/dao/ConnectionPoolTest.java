@@ -0,0 +1,71 @@
+package dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Statements do cache do pool: o próximo DAO recebe o statement com os valores de fábrica,
+ * e nada devolve a conexão física.
+ */
+@EnabledIfEnvironmentVariable(named = "DB_HOST", matches = ".+")
+class ConnectionPoolTest {
+
+    private static final String SQL = "SELECT g FROM generate_series(1, 10) g WHERE g > ?";
+
+    @Test
+    void cachedStatementComesBackWithDefaultSettings() throws SQLException {
+        int fetchSize;
+        int maxRows;
+        int queryTimeout;
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL)) {
+            fetchSize = stmt.getFetchSize();
+            maxRows = stmt.getMaxRows();
+            queryTimeout = stmt.getQueryTimeout();
+            stmt.setFetchSize(fetchSize + 50);
+            stmt.setMaxRows(3);
+            stmt.setQueryTimeout(queryTimeout + 7);
+        }
+
+        // Pool ocioso: volta a mesma conexão física e, com ela, o statement do cache
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL)) {
+            assertEquals(fetchSize, stmt.getFetchSize());
+            assertEquals(maxRows, stmt.getMaxRows());
+            assertEquals(queryTimeout, stmt.getQueryTimeout());
+            stmt.setInt(1, 0);
+            int rows = 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows++;
+                }
+            }
+            assertEquals(10, rows);
+        }
+    }
+
+    @Test
+    void statementsAndResultsPointBackToThePooledConnection() throws SQLException {
+        Connection leaked;
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL)) {
+            assertSame(conn, stmt.getConnection());
+            stmt.setInt(1, 5);
+            try (ResultSet rs = stmt.executeQuery()) {
+                assertSame(stmt, rs.getStatement());
+                assertSame(conn, rs.getStatement().getConnection());
+            }
+            leaked = stmt.getConnection();
+        }
+        assertTrue(leaked.isClosed()); // Devolvida ao pool: quem guardou a referência não a usa mais
+    }
+}
@@ -0,0 +1,170 @@
+package dao;
+
+import model.entities.Sale;
+import model.entities.SaleItem;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Carga de POST /api/sales com Idempotency-Key em que 30% das requisições são repetições
+ * (o Wi-Fi da feira). Faz o caminho do IdempotencyFilter sem o Tomcat: begin, SaleDAO.create
+ * com a chave ligada à thread e complete. Cada chave tem que virar uma venda só, e toda
+ * repetição tem que receber o id da original.
+ */
+@EnabledIfEnvironmentVariable(named = "DB_HOST", matches = ".+")
+class IdempotentRetryLoadTest {
+
+    private static final int TENT = 990023;
+    private static final int THREADS = 32;
+    private static final int KEYS = 700;
+    private static final int RETRIES = 300; // 30% das 1000 requisições
+    private static final String ROUTE = "/api/sales";
+    private static final String KEY_PREFIX = "carga-teste-";
+
+    private static int product;
+
+    @BeforeAll
+    static void seed() throws SQLException {
+        TestDatabase.prepare(TENT);
+        TestDatabase.execute("DELETE FROM public.idempotencia WHERE chave LIKE ?", KEY_PREFIX + "%");
+        product = TestDatabase.createProduct("Pamonha (teste)");
+        TestDatabase.execute("INSERT INTO public.estoque (cod_prod, cod_barraca, qntd_estoque) VALUES (?, ?, 30000)",
+                product, TENT);
+    }
+
+    @AfterAll
+    static void cleanup() throws SQLException {
+        TestDatabase.execute("DELETE FROM public.idempotencia WHERE chave LIKE ?", KEY_PREFIX + "%");
+        TestDatabase.cleanup(TENT);
+        TestDatabase.deleteProduct(product);
+    }
+
+    @Test
+    void retriedKeysCreateOneSaleEach() throws Exception {
+        IdempotencyStore store = IdempotencyStore.getInstance();
+        SaleDAO dao = new SaleDAO();
+        String run = Long.toString(System.nanoTime(), 36) + "-";
+
+        // Cada chave uma vez, mais RETRIES chaves repetidas, embaralhadas: a repetição pode
+        // chegar enquanto a original ainda roda
+        Random random = new Random(42);
+        List<Integer> requests = new ArrayList<>(KEYS + RETRIES);
+        for (int k = 0; k < KEYS; k++) {
+            requests.add(k);
+        }
+        List<Integer> retried = new ArrayList<>(requests);
+        Collections.shuffle(retried, random);
+        requests.addAll(retried.subList(0, RETRIES));
+        Collections.shuffle(requests, random);
+
+        Map<Integer, Set<Integer>> idsByKey = new ConcurrentHashMap<>();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger executed = new AtomicInteger();
+        AtomicInteger replayed = new AtomicInteger();
+        AtomicInteger waited = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+        List<Future<?>> clients = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            clients.add(pool.submit(() -> {
+                start.await();
+                for (int i = next.getAndIncrement(); i < requests.size(); i = next.getAndIncrement()) {
+                    int k = requests.get(i);
+                    String key = KEY_PREFIX + run + k;
+                    String hash = String.format("%064x", k); // No filtro é o SHA-256 do corpo (CHAR(64))
+                    int id;
+                    while (true) {
+                        IdempotencyStore.Begin begin = store.begin(ROUTE, key, hash);
+                        if (begin.state() == IdempotencyStore.State.IN_PROGRESS) {
+                            waited.incrementAndGet();
+                            Thread.sleep(10); // O cliente respeita o Retry-After
+                            continue;
+                        }
+                        if (begin.state() == IdempotencyStore.State.REPLAY) {
+                            replayed.incrementAndGet();
+                            id = Integer.parseInt(new String(begin.response().body(), StandardCharsets.UTF_8));
+                            break;
+                        }
+                        if (begin.state() != IdempotencyStore.State.NEW) {
+                            fail("Estado inesperado para " + key + ": " + begin.state());
+                        }
+                        id = execute(store, dao, begin.claim(), hash);
+                        executed.incrementAndGet();
+                        break;
+                    }
+                    idsByKey.computeIfAbsent(k, x -> ConcurrentHashMap.newKeySet()).add(id);
+                }
+                return null;
+            }));
+        }
+
+        long began = System.nanoTime();
+        start.countDown();
+        try {
+            for (Future<?> client : clients) {
+                client.get();
+            }
+        } finally {
+            pool.shutdownNow(); // Nada mais gravando quando o @AfterAll limpar
+            pool.awaitTermination(30, TimeUnit.SECONDS);
+        }
+        double seconds = (System.nanoTime() - began) / 1e9;
+
+        int stored = TestDatabase.queryInt("SELECT COUNT(*) FROM public.venda WHERE cod_barraca = ?", TENT);
+        System.out.printf("[idempotency-load] %d threads, %d requisições (%d repetidas) em %.2f s (%.0f/s): "
+                        + "executadas %d, respostas guardadas %d, esperas por chave em andamento %d, vendas gravadas %d%n",
+                THREADS, requests.size(), RETRIES, seconds, requests.size() / seconds,
+                executed.get(), replayed.get(), waited.get(), stored);
+
+        assertEquals(KEYS, executed.get());
+        assertEquals(RETRIES, replayed.get());
+        assertEquals(KEYS, stored);
+        assertEquals(KEYS, idsByKey.size());
+        for (Map.Entry<Integer, Set<Integer>> entry : idsByKey.entrySet()) {
+            assertEquals(1, entry.getValue().size(), "chave " + entry.getKey() + " com ids " + entry.getValue());
+        }
+    }
+
+    // O que o IdempotencyFilter e o ApiServlet fazem com uma chave nova
+    private int execute(IdempotencyStore store, SaleDAO dao, IdempotencyStore.Claim claim, String hash)
+            throws SQLException {
+        Sale sale = new Sale(0, LocalDate.now(), TENT, TestDatabase.CPF);
+        sale.setItems(List.of(new SaleItem(product, 0, (short) 1, new BigDecimal("7.00"))));
+        IdempotencyStore.bind(claim);
+        try {
+            dao.create(sale);
+        } catch (SQLException | RuntimeException e) {
+            store.release(claim);
+            throw e;
+        } finally {
+            IdempotencyStore.unbind();
+        }
+        store.complete(claim, hash, new IdempotencyStore.StoredResponse(201, "text/plain",
+                Integer.toString(sale.getId()).getBytes(StandardCharsets.UTF_8)));
+        return sale.getId();
+    }
+}
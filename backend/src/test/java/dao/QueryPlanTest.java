@@ -0,0 +1,209 @@
+package dao;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * EXPLAIN das consultas dos DAOs que filtram ou juntam pelas tabelas grandes, com as
+ * tabelas povoadas (100 barracas, 100 mil vendas, 200 mil itens...): nenhuma pode cair em
+ * varredura sequencial. Ficam de fora as que leem a tabela inteira de propósito (listagens,
+ * StockLedger.load, SalesRollupDAO.rebuild/check).
+ */
+@EnabledIfEnvironmentVariable(named = "DB_HOST", matches = ".+")
+class QueryPlanTest {
+
+    private static final int FIRST_TENT = 991000;
+    private static final int TENTS = 100;
+    private static final int SALES = 100_000;
+    private static final int RESERVATIONS = 20_000;
+    private static final int PRODUCTS = 50;
+    private static final String CPF_PREFIX = "9919"; // + 7 dígitos
+
+    private static final Pattern SEQ_SCAN = Pattern.compile(
+            "Seq Scan on (venda|item_venda|reserva|item_reserva|pagamento|estoque|resumo_diario_venda|resumo_diario_produto)\\b");
+
+    private static int firstProduct;
+    private static int sampleSale;
+    private static int sampleReservation;
+
+    private record Query(String dao, String sql, Object... params) {
+    }
+
+    @BeforeAll
+    static void seed() throws SQLException {
+        SchemaMigrator.migrate();
+        cleanup();
+        try (Connection conn = DatabaseConnection.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO public.usuario (cpf_usuario, nome_usuario, tel_usuario) "
+                    + "SELECT '" + CPF_PREFIX + "' || lpad(g::text, 7, '0'), 'Teste', '0' FROM generate_series(1, " + TENTS + ") g");
+            stmt.execute("INSERT INTO public.barraca (cod_barraca, cpf_dono, nome_barraca, licensa_usuario) "
+                    + "SELECT " + FIRST_TENT + " + g, '" + CPF_PREFIX + "' || lpad((g + 1)::text, 7, '0'), 'Teste', '\\x00'::bytea "
+                    + "FROM generate_series(0, " + (TENTS - 1) + ") g");
+            try (ResultSet rs = stmt.executeQuery("INSERT INTO public.produto (nome_produto, preco_produto) "
+                    + "SELECT 'Plano ' || g, 5.00 FROM generate_series(1, " + PRODUCTS + ") g RETURNING cod_produto")) {
+                firstProduct = Integer.MAX_VALUE;
+                while (rs.next()) {
+                    firstProduct = Math.min(firstProduct, rs.getInt(1));
+                }
+            }
+            String product = firstProduct + " + (g % " + PRODUCTS + ")";
+            String nextProduct = firstProduct + " + ((g + 1) % " + PRODUCTS + ")";
+            String tent = FIRST_TENT + " + (g % " + TENTS + ")";
+            String cpf = "'" + CPF_PREFIX + "' || lpad((g % " + TENTS + " + 1)::text, 7, '0')";
+
+            stmt.execute("CREATE TEMP TABLE plano_venda AS SELECT g, nextval('public.venda_id_venda_seq')::int AS id "
+                    + "FROM generate_series(1, " + SALES + ") g");
+            stmt.execute("INSERT INTO public.venda (id_venda, data_venda, cod_barraca, cod_usuario) "
+                    + "SELECT id, DATE '2025-01-01' + (g % 365), " + tent + ", " + cpf + " FROM plano_venda");
+            stmt.execute("INSERT INTO public.item_venda (cod_prod, id_venda, qntd_venda, preco_venda) "
+                    + "SELECT " + product + ", id, 1, 5.00 FROM plano_venda UNION ALL "
+                    + "SELECT " + nextProduct + ", id, 2, 5.00 FROM plano_venda");
+            stmt.execute("INSERT INTO public.pagamento (id_venda, cpf_comprador, cod_barraca, forma_pagamento, data_pagamento) "
+                    + "SELECT id, " + cpf + ", " + tent + ", 'pix', DATE '2025-01-01' FROM plano_venda WHERE g % 2 = 0");
+
+            stmt.execute("CREATE TEMP TABLE plano_reserva AS SELECT g, nextval('public.reserva_cod_reserva_seq')::int AS id "
+                    + "FROM generate_series(1, " + RESERVATIONS + ") g");
+            stmt.execute("INSERT INTO public.reserva (cod_reserva, cpf_titular, data_reserva, status_reserva) "
+                    + "SELECT id, " + cpf + ", DATE '2025-01-01', 'ATIVA' FROM plano_reserva");
+            stmt.execute("INSERT INTO public.item_reserva (cod_res, cod_prod, qntd_item_reserva, preco_reserva) "
+                    + "SELECT id, " + product + ", 1, 5.00 FROM plano_reserva UNION ALL "
+                    + "SELECT id, " + nextProduct + ", 1, 5.00 FROM plano_reserva");
+            stmt.execute("INSERT INTO public.pagamento (cod_reserva, cpf_comprador, cod_barraca, forma_pagamento, data_pagamento) "
+                    + "SELECT id, " + cpf + ", " + tent + ", 'pix', DATE '2025-01-01' FROM plano_reserva");
+
+            stmt.execute("INSERT INTO public.estoque (cod_prod, cod_barraca, qntd_estoque) "
+                    + "SELECT p, b, 10 FROM generate_series(" + firstProduct + ", " + (firstProduct + PRODUCTS - 1) + ") p, "
+                    + "generate_series(" + FIRST_TENT + ", " + (FIRST_TENT + TENTS - 1) + ") b");
+            stmt.execute("ANALYZE public.venda, public.item_venda");
+            stmt.execute("INSERT INTO public.resumo_diario_venda (cod_barraca, data_venda, qntd_vendas, qntd_unidades, receita) "
+                    + "SELECT cod_barraca, data_venda, COUNT(*), COUNT(*) * 3, COUNT(*) * 15 FROM public.venda "
+                    + "WHERE cod_barraca >= " + FIRST_TENT + " AND cod_barraca < " + (FIRST_TENT + TENTS)
+                    + " GROUP BY cod_barraca, data_venda");
+            stmt.execute("INSERT INTO public.resumo_diario_produto (cod_barraca, data_venda, cod_prod, qntd_vendas, qntd_unidades, receita) "
+                    + "SELECT v.cod_barraca, v.data_venda, i.cod_prod, COUNT(*), SUM(i.qntd_venda), SUM(i.qntd_venda * i.preco_venda) "
+                    + "FROM public.venda v JOIN public.item_venda i ON i.id_venda = v.id_venda "
+                    + "WHERE v.cod_barraca >= " + FIRST_TENT + " AND v.cod_barraca < " + (FIRST_TENT + TENTS)
+                    + " GROUP BY v.cod_barraca, v.data_venda, i.cod_prod");
+
+            try (ResultSet rs = stmt.executeQuery("SELECT MIN(id) FROM plano_venda")) {
+                rs.next();
+                sampleSale = rs.getInt(1);
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT MIN(id) FROM plano_reserva")) {
+                rs.next();
+                sampleReservation = rs.getInt(1);
+            }
+            stmt.execute("DROP TABLE plano_venda");
+            stmt.execute("DROP TABLE plano_reserva");
+            stmt.execute("ANALYZE public.venda, public.item_venda, public.reserva, public.item_reserva, "
+                    + "public.pagamento, public.estoque, public.resumo_diario_venda, public.resumo_diario_produto");
+        }
+    }
+
+    @AfterAll
+    static void cleanup() throws SQLException {
+        String tents = "BETWEEN " + FIRST_TENT + " AND " + (FIRST_TENT + TENTS - 1);
+        String cpfs = "LIKE '" + CPF_PREFIX + "%'";
+        try (Connection conn = DatabaseConnection.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM public.pagamento WHERE cod_barraca " + tents);
+            stmt.execute("DELETE FROM public.item_reserva WHERE cod_res IN "
+                    + "(SELECT cod_reserva FROM public.reserva WHERE cpf_titular " + cpfs + ")");
+            stmt.execute("DELETE FROM public.reserva WHERE cpf_titular " + cpfs);
+            stmt.execute("DELETE FROM public.item_venda WHERE id_venda IN "
+                    + "(SELECT id_venda FROM public.venda WHERE cod_barraca " + tents + ")");
+            stmt.execute("DELETE FROM public.venda WHERE cod_barraca " + tents);
+            stmt.execute("DELETE FROM public.resumo_diario_produto WHERE cod_barraca " + tents);
+            stmt.execute("DELETE FROM public.resumo_diario_venda WHERE cod_barraca " + tents);
+            stmt.execute("DELETE FROM public.estoque WHERE cod_barraca " + tents);
+            stmt.execute("DELETE FROM public.barraca WHERE cod_barraca " + tents);
+            stmt.execute("DELETE FROM public.produto WHERE nome_produto LIKE 'Plano %'");
+            stmt.execute("DELETE FROM public.usuario WHERE cpf_usuario " + cpfs);
+        }
+    }
+
+    @Test
+    void daoQueriesUseIndexes() throws SQLException {
+        int tent = FIRST_TENT + 7;
+        String cpf = CPF_PREFIX + "0000008";
+        Date day = Date.valueOf(LocalDate.of(2025, 3, 1));
+        Date monthEnd = Date.valueOf(LocalDate.of(2025, 3, 31));
+
+        List<String> failures = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            Array saleIds = conn.createArrayOf("integer", new Integer[] {sampleSale, sampleSale + 1, sampleSale + 2});
+            List<Query> queries = List.of(
+                    new Query("SaleDAO.getById", "SELECT * FROM public.venda WHERE id_venda = ?", sampleSale),
+                    new Query("SaleDAO.getByUserId", "SELECT id_venda, data_venda, cod_barraca, cod_usuario "
+                            + "FROM public.venda WHERE cod_usuario = ?", cpf),
+                    new Query("SaleDAO.getByTentId", "SELECT id_venda, data_venda, cod_barraca, cod_usuario "
+                            + "FROM public.venda WHERE cod_barraca = ?", tent),
+                    new Query("SaleDAO.getPage", "SELECT * FROM public.venda WHERE id_venda > ? ORDER BY id_venda LIMIT ?",
+                            sampleSale, 100),
+                    new Query("SaleDAO.loadItemsForSale", "SELECT cod_prod, id_venda, qntd_venda, preco_venda "
+                            + "FROM public.item_venda WHERE id_venda = ?", sampleSale),
+                    new Query("SaleDAO.loadItemsForSales", "SELECT cod_prod, id_venda, qntd_venda, preco_venda "
+                            + "FROM public.item_venda WHERE id_venda = ANY(?)", saleIds),
+                    new Query("SaleDAO.delete (itens)", "DELETE FROM public.item_venda WHERE id_venda = ?", sampleSale),
+                    new Query("SaleDAO.update (item)", "UPDATE public.item_venda SET qntd_venda = ?, preco_venda = ? "
+                            + "WHERE id_venda = ? AND cod_prod = ?", 1, 5, sampleSale, firstProduct),
+                    new Query("FK pagamento -> venda", "SELECT 1 FROM public.pagamento WHERE id_venda = ?", sampleSale),
+                    new Query("FK pagamento -> reserva", "SELECT 1 FROM public.pagamento WHERE cod_reserva = ?", sampleReservation),
+                    new Query("ReservationDAO.getById", "SELECT * FROM public.reserva WHERE cod_reserva = ?", sampleReservation),
+                    new Query("ReservationDAO.getById (itens)", "SELECT * FROM public.item_reserva WHERE cod_res = ?",
+                            sampleReservation),
+                    new Query("ReservationDAO.delete (itens)", "DELETE FROM public.item_reserva WHERE cod_res = ?",
+                            sampleReservation),
+                    new Query("StockDebit (baixa)", "UPDATE public.estoque SET qntd_estoque = qntd_estoque - ? "
+                            + "WHERE cod_barraca = ? AND cod_prod = ? AND qntd_estoque > ?", 1, tent, firstProduct, 1),
+                    new Query("FK estoque -> barraca", "SELECT 1 FROM public.estoque WHERE cod_barraca = ?", tent),
+                    new Query("TentStatsDAO (dia)", "SELECT * FROM public.resumo_diario_venda "
+                            + "WHERE cod_barraca = ? AND data_venda BETWEEN ? AND ?", tent, day, monthEnd),
+                    new Query("TentStatsDAO (produto)", "SELECT * FROM public.resumo_diario_produto "
+                            + "WHERE cod_barraca = ? AND data_venda BETWEEN ? AND ?", tent, day, monthEnd),
+                    new Query("SalesRollupDAO.apply", "DELETE FROM public.resumo_diario_venda "
+                            + "WHERE cod_barraca = ? AND data_venda = ? AND qntd_vendas <= 0", tent, day));
+
+            for (Query query : queries) {
+                String plan = explain(conn, query);
+                Matcher seqScan = SEQ_SCAN.matcher(plan);
+                if (seqScan.find()) {
+                    failures.add(query.dao() + ": " + seqScan.group() + "\n" + plan);
+                }
+            }
+            saleIds.free();
+        }
+        assertTrue(failures.isEmpty(), "Varredura sequencial em tabela grande:\n" + String.join("\n", failures));
+    }
+
+    private static String explain(Connection conn, Query query) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + query.sql())) {
+            for (int i = 0; i < query.params().length; i++) {
+                stmt.setObject(i + 1, query.params()[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    plan.append(rs.getString(1)).append('\n');
+                }
+            }
+        }
+        return plan.toString();
+    }
+}
@@ -0,0 +1,180 @@
+package dao;
+
+import model.entities.Sale;
+import model.entities.SaleItem;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Editar um item de uma venda de 100 itens: SaleDAO.update (só grava o item que mudou)
+ * contra o update antigo, que apagava os 100 itens e inseria tudo de novo (refeito aqui, sem
+ * o resumo diário, que não existia). Imprime o tempo médio dos dois e confere pelo ctid que
+ * os outros 99 itens, e as linhas deles no resumo diário, não foram regravados.
+ */
+@EnabledIfEnvironmentVariable(named = "DB_HOST", matches = ".+")
+class SaleItemEditBenchmarkTest {
+
+    private static final int TENT = 990025;
+    private static final int ITEMS = 100;
+    private static final int ROUNDS = 200;
+
+    private static final String ITEM_CTIDS =
+            "SELECT cod_prod, ctid::text FROM public.item_venda WHERE id_venda = ?";
+    private static final String ROLLUP_CTIDS =
+            "SELECT cod_prod, ctid::text FROM public.resumo_diario_produto WHERE cod_barraca = ?";
+
+    private static final List<Integer> products = new ArrayList<>();
+
+    @BeforeAll
+    static void seed() throws SQLException {
+        TestDatabase.prepare(TENT);
+        for (int i = 0; i < ITEMS; i++) {
+            int product = TestDatabase.createProduct("Item " + i + " (teste)");
+            products.add(product);
+            TestDatabase.execute("INSERT INTO public.estoque (cod_prod, cod_barraca, qntd_estoque) VALUES (?, ?, 30000)",
+                    product, TENT);
+        }
+    }
+
+    @AfterAll
+    static void cleanup() throws SQLException {
+        TestDatabase.cleanup(TENT);
+        for (int product : products) {
+            TestDatabase.deleteProduct(product);
+        }
+    }
+
+    @Test
+    void editingOneItemRewritesOnlyThatRow() throws SQLException {
+        SaleDAO dao = new SaleDAO();
+        Sale sale = new Sale(0, LocalDate.now(), TENT, TestDatabase.CPF);
+        sale.setItems(items(1));
+        dao.create(sale);
+
+        // Aquecimento dos dois caminhos
+        for (int i = 0; i < 20; i++) {
+            edit(sale, i);
+            dao.update(sale);
+            replaceAll(sale);
+        }
+
+        Map<Integer, String> before = ctids(ITEM_CTIDS, sale.getId());
+        Map<Integer, String> rollupBefore = ctids(ROLLUP_CTIDS, TENT);
+        edit(sale, 1000);
+        dao.update(sale);
+        Map<Integer, String> after = ctids(ITEM_CTIDS, sale.getId());
+        Map<Integer, String> rollupAfter = ctids(ROLLUP_CTIDS, TENT);
+        int edited = products.get(0);
+        for (int product : products) {
+            if (product == edited) {
+                assertNotEquals(before.get(product), after.get(product));
+                assertNotEquals(rollupBefore.get(product), rollupAfter.get(product));
+            } else {
+                assertEquals(before.get(product), after.get(product), "item " + product + " regravado");
+                assertEquals(rollupBefore.get(product), rollupAfter.get(product), "resumo do produto " + product + " regravado");
+            }
+        }
+
+        long began = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            edit(sale, i);
+            dao.update(sale);
+        }
+        double diffMillis = (System.nanoTime() - began) / 1e6 / ROUNDS;
+        // O resumo diário continua batendo com o bruto (o caminho antigo, abaixo, não o mantém)
+        assertTrue(new SalesRollupDAO().check().consistent());
+
+        began = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            edit(sale, i);
+            replaceAll(sale);
+        }
+        double replaceMillis = (System.nanoTime() - began) / 1e6 / ROUNDS;
+
+        System.out.printf("[item-edit-bench] venda de %d itens, 1 item editado: update com diferença %.2f ms "
+                        + "(1 linha gravada), apagar e reinserir %.2f ms (%d linhas), %.1fx%n",
+                ITEMS, diffMillis, replaceMillis, 2 * ITEMS, replaceMillis / diffMillis);
+
+        assertEquals(ITEMS, TestDatabase.queryInt("SELECT COUNT(*) FROM public.item_venda WHERE id_venda = ?",
+                sale.getId()));
+    }
+
+    private static List<SaleItem> items(int quantity) {
+        List<SaleItem> items = new ArrayList<>(ITEMS);
+        for (int product : products) {
+            items.add(new SaleItem(product, 0, (short) quantity, new BigDecimal("3.50")));
+        }
+        return items;
+    }
+
+    // Troca a quantidade só do primeiro item
+    private static void edit(Sale sale, int round) {
+        sale.getItems().get(0).setSaleQuantity((short) (2 + round % 50));
+    }
+
+    // O SaleDAO.update de antes: apaga todos os itens e insere de novo
+    private static void replaceAll(Sale sale) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement update = conn.prepareStatement(
+                         "UPDATE public.venda SET data_venda = ?, cod_barraca = ?, cod_usuario = ? WHERE id_venda = ?");
+                 PreparedStatement delete = conn.prepareStatement("DELETE FROM public.item_venda WHERE id_venda = ?");
+                 PreparedStatement insert = conn.prepareStatement(
+                         "INSERT INTO public.item_venda (cod_prod, id_venda, qntd_venda, preco_venda) VALUES (?, ?, ?, ?)")) {
+                update.setObject(1, sale.getSaleDate());
+                update.setInt(2, sale.getTentCode());
+                update.setString(3, sale.getUserCode());
+                update.setInt(4, sale.getId());
+                update.executeUpdate();
+                delete.setInt(1, sale.getId());
+                delete.executeUpdate();
+                for (SaleItem item : sale.getItems()) {
+                    insert.setInt(1, item.getProductCode());
+                    insert.setInt(2, sale.getId());
+                    insert.setShort(3, item.getSaleQuantity());
+                    insert.setBigDecimal(4, item.getSalePrice());
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    // Posição física de cada linha por produto: muda quando a linha é regravada
+    private static Map<Integer, String> ctids(String sql, int key) throws SQLException {
+        Map<Integer, String> ctids = new HashMap<>();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, key);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ctids.put(rs.getInt(1), rs.getString(2));
+                }
+            }
+        }
+        return ctids;
+    }
+}
@@ -0,0 +1,81 @@
+package dao;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SqlProfilerTest {
+
+    // Índice 0 não é usado: o primeiro '?' é a posição 1, como no JDBC
+
+    @Test
+    void comparisonOnSensitiveColumn() {
+        assertArrayEquals(new boolean[] {false, true},
+                SqlProfiler.sensitivePositions("SELECT * FROM usuario WHERE cpf_usuario = ?"));
+        assertArrayEquals(new boolean[] {false, false, true},
+                SqlProfiler.sensitivePositions("SELECT 1 FROM usuario WHERE id = ? AND senha = ?"));
+        assertArrayEquals(new boolean[] {false, true, false},
+                SqlProfiler.sensitivePositions("SELECT * FROM venda v WHERE v.cpf_usuario <> ? AND v.id_venda >= ?"));
+    }
+
+    @Test
+    void everyPlaceholderOfAnInList() {
+        assertArrayEquals(new boolean[] {false, true, true, true},
+                SqlProfiler.sensitivePositions("SELECT * FROM usuario WHERE cpf_usuario IN (?, ?, ?)"));
+        assertArrayEquals(new boolean[] {false, true, false},
+                SqlProfiler.sensitivePositions("SELECT * FROM usuario WHERE cpf IN (?) AND id = ?"));
+        assertArrayEquals(new boolean[] {false, true},
+                SqlProfiler.sensitivePositions("SELECT * FROM usuario WHERE cpf_usuario = ANY(?)"));
+
+        StringBuilder longList = new StringBuilder("SELECT * FROM usuario WHERE cpf_usuario IN (?");
+        boolean[] expected = new boolean[101];
+        expected[1] = true;
+        for (int i = 2; i <= 100; i++) {
+            longList.append(", ?");
+            expected[i] = true;
+        }
+        assertArrayEquals(expected, SqlProfiler.sensitivePositions(longList.append(")").toString()));
+    }
+
+    @Test
+    void insertColumnsDecideValues() {
+        assertArrayEquals(new boolean[] {false, true, false, true},
+                SqlProfiler.sensitivePositions("INSERT INTO usuario (cpf_usuario, nome, senha) VALUES (?, ?, ?)"));
+    }
+
+    @Test
+    void multiRowInsertRepeatsColumns() {
+        assertArrayEquals(new boolean[] {false, false, true, false, true},
+                SqlProfiler.sensitivePositions("INSERT INTO t (id, cpf_dono) VALUES (?, ?), (?, ?)"));
+    }
+
+    @Test
+    void onConflictUsesComparisons() {
+        assertArrayEquals(new boolean[] {false, true, false, true},
+                SqlProfiler.sensitivePositions(
+                        "INSERT INTO usuario (senha, nome) VALUES (?, ?) ON CONFLICT (nome) DO UPDATE SET senha = ?"));
+    }
+
+    @Test
+    void quotedQuestionMarksAreNotParameters() {
+        assertArrayEquals(new boolean[] {false, true},
+                SqlProfiler.sensitivePositions("SELECT * FROM usuario WHERE nome = '?' AND cpf_usuario = ?"));
+    }
+
+    @Test
+    void nothingSensitive() {
+        assertArrayEquals(new boolean[] {false},
+                SqlProfiler.sensitivePositions("SELECT now()"));
+        assertArrayEquals(new boolean[] {false, false, false},
+                SqlProfiler.sensitivePositions("UPDATE produto SET preco = ? WHERE cod_produto = ?"));
+    }
+
+    @Test
+    void cpfKeepsOnlyTheLastTwoDigits() {
+        assertEquals("'*********01'", SqlProfiler.mask("12345678901"));
+        assertEquals("'*********01'", SqlProfiler.mask("123.456.789-01"));
+        assertEquals("'***'", SqlProfiler.mask("segredo"));
+        assertEquals("NULL", SqlProfiler.mask(null));
+    }
+}
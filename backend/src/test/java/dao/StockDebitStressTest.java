@@ -0,0 +1,104 @@
+package dao;
+
+import model.entities.Sale;
+import model.entities.SaleItem;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 64 threads comprando o mesmo produto da mesma barraca pelo SaleDAO.create: nenhuma
+ * venda pode passar do estoque. Imprime vazão e vendas a mais (oversell).
+ */
+@EnabledIfEnvironmentVariable(named = "DB_HOST", matches = ".+")
+class StockDebitStressTest {
+
+    private static final int TENT = 990008;
+    private static final int THREADS = 64;
+    private static final int ATTEMPTS_PER_THREAD = 20;
+    private static final int STOCK = 500;
+
+    private static int product;
+
+    @BeforeAll
+    static void seed() throws SQLException {
+        TestDatabase.prepare(TENT);
+        product = TestDatabase.createProduct("Coxinha (teste)");
+        TestDatabase.execute("INSERT INTO public.estoque (cod_prod, cod_barraca, qntd_estoque) VALUES (?, ?, ?)",
+                product, TENT, STOCK);
+    }
+
+    @AfterAll
+    static void cleanup() throws SQLException {
+        TestDatabase.cleanup(TENT);
+        TestDatabase.deleteProduct(product);
+    }
+
+    @Test
+    void concurrentBuyersNeverOversell() throws Exception {
+        SaleDAO dao = new SaleDAO();
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+        List<Future<?>> buyers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            buyers.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    Sale sale = new Sale(0, LocalDate.now(), TENT, TestDatabase.CPF);
+                    sale.setItems(List.of(new SaleItem(product, 0, (short) 1, new BigDecimal("5.00"))));
+                    try {
+                        dao.create(sale);
+                        sold.incrementAndGet();
+                    } catch (InsufficientStockException e) {
+                        refused.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long began = System.nanoTime();
+        start.countDown();
+        for (Future<?> buyer : buyers) {
+            buyer.get(); // Qualquer outra exceção (deadlock, timeout do pool) falha o teste
+        }
+        double seconds = (System.nanoTime() - began) / 1e9;
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+
+        int left = TestDatabase.queryInt(
+                "SELECT COALESCE(SUM(qntd_estoque), 0) FROM public.estoque WHERE cod_barraca = ? AND cod_prod = ?",
+                TENT, product);
+        int stored = TestDatabase.queryInt("SELECT COUNT(*) FROM public.venda WHERE cod_barraca = ?", TENT);
+        int oversell = Math.max(0, sold.get() - STOCK);
+        int attempts = THREADS * ATTEMPTS_PER_THREAD;
+
+        System.out.printf("[stock-stress] %d threads, %d tentativas em %.2f s (%.0f vendas/s), "
+                        + "vendidas %d, recusadas %d, oversell %d%n",
+                THREADS, attempts, seconds, attempts / seconds, sold.get(), refused.get(), oversell);
+
+        assertEquals(0, oversell);
+        assertEquals(STOCK, sold.get());
+        assertEquals(attempts - STOCK, refused.get());
+        assertEquals(sold.get(), stored);
+        assertEquals(0, left);
+    }
+}
@@ -0,0 +1,42 @@
+package dao;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TableVersionsTest {
+
+    @Test
+    void secondWriteInTheServedSecondIsNotHiddenByIfModifiedSince() {
+        String table = "teste_mesmo_segundo";
+        TableVersions.bump(table);
+        // GET logo depois da primeira escrita: o cliente guarda só o Last-Modified
+        long served = TableVersions.lastModified(table);
+        String servedEtag = TableVersions.etag(table);
+
+        TableVersions.bump(table);
+
+        assertFalse(TableVersions.notModifiedSince(table, served));
+        assertNotEquals(servedEtag, TableVersions.etag(table));
+    }
+
+    @Test
+    void laterDateIsNotModified() {
+        String table = "teste_data_posterior";
+        TableVersions.bump(table);
+        long lastModified = TableVersions.lastModified(table);
+
+        assertTrue(TableVersions.notModifiedSince(table, lastModified + 1000));
+        assertFalse(TableVersions.notModifiedSince(table, lastModified - 1000));
+    }
+
+    @Test
+    void lastModifiedHasSecondResolution() {
+        String table = "teste_resolucao";
+        TableVersions.bump(table);
+        assertEquals(0, TableVersions.lastModified(table) % 1000);
+    }
+}
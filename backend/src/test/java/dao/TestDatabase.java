@@ -0,0 +1,81 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Apoio dos testes que usam o PostgreSQL de verdade (os de classe anotada com
+ * {@code @EnabledIfEnvironmentVariable(named = "DB_HOST", matches = ".+")}).
+ *
+ * Usa a mesma configuração do backend (DB_HOST, DB_PORT, DB_NAME, DB_USER, DB_PASS) e
+ * um banco com o init.sql aplicado. Cada teste cria a própria barraca (código alto, fora
+ * da faixa do init.sql) e apaga tudo o que ficou ligado a ela no fim.
+ */
+final class TestDatabase {
+
+    static final String CPF = "99999999901";
+
+    private TestDatabase() {}
+
+    /**
+     * Migrações do backend + usuário e barraca de teste.
+     */
+    static void prepare(int tentCode) throws SQLException {
+        SchemaMigrator.migrate();
+        cleanup(tentCode);
+        execute("INSERT INTO public.usuario (cpf_usuario, nome_usuario, tel_usuario) VALUES (?, 'Teste', '0') "
+                + "ON CONFLICT DO NOTHING", CPF);
+        execute("INSERT INTO public.barraca (cod_barraca, cpf_dono, nome_barraca, licensa_usuario) "
+                + "VALUES (?, ?, 'Barraca de teste', '\\x00'::bytea)", tentCode, CPF);
+    }
+
+    static int createProduct(String name) throws SQLException {
+        return queryInt("INSERT INTO public.produto (nome_produto, preco_produto) VALUES (?, 5.00) "
+                + "RETURNING cod_produto", name);
+    }
+
+    /**
+     * Apaga vendas, pagamentos, estoque e resumos da barraca, e a própria barraca.
+     * Os produtos criados pelo teste ficam (apague com deleteProduct).
+     */
+    static void cleanup(int tentCode) throws SQLException {
+        execute("DELETE FROM public.pagamento WHERE cod_barraca = ?", tentCode);
+        execute("DELETE FROM public.item_venda WHERE id_venda IN "
+                + "(SELECT id_venda FROM public.venda WHERE cod_barraca = ?)", tentCode);
+        execute("DELETE FROM public.venda WHERE cod_barraca = ?", tentCode);
+        execute("DELETE FROM public.resumo_diario_produto WHERE cod_barraca = ?", tentCode);
+        execute("DELETE FROM public.resumo_diario_venda WHERE cod_barraca = ?", tentCode);
+        execute("DELETE FROM public.estoque WHERE cod_barraca = ?", tentCode);
+        execute("DELETE FROM public.barraca WHERE cod_barraca = ?", tentCode);
+    }
+
+    static void deleteProduct(int productCode) throws SQLException {
+        execute("DELETE FROM public.produto WHERE cod_produto = ?", productCode);
+    }
+
+    static int execute(String sql, Object... params) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bind(stmt, params);
+            return stmt.executeUpdate();
+        }
+    }
+
+    static int queryInt(String sql, Object... params) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bind(stmt, params);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement stmt, Object... params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            stmt.setObject(i + 1, params[i]);
+        }
+    }
+}